@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2012 TH4 SYSTEMS GmbH and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jens Reimann (TH4 SYSTEMS GmbH) - initial API and implementation
+ *******************************************************************************/
+package org.openscada.ui.breadcrumbs;
+
+import org.eclipse.jface.viewers.TreePath;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Tree;
+import org.eclipse.swt.widgets.TreeItem;
+import org.junit.Test;
+
+/**
+ * A benchmark of the size computation of a drop down after an item has been
+ * expanded, for trees showing 100 to 10000 rows. It needs a display and the
+ * plug-in, it is run as a JUnit plug-in test.
+ * <p>
+ * For each number of rows it measures how long it takes to compute the size
+ * after expanding an item with {@value #CHILDREN} children, once with the
+ * incremental computation of the drop down and once by measuring the whole
+ * shell, which is what the drop down did before.
+ * </p>
+ */
+public class BreadcrumbItemDropDownBenchmark {
+
+	private static final int[] ROWS = new int[] { 100, 1000, 10000 };
+
+	private static final int CHILDREN = 10;
+
+	private static final int ITERATIONS = 100;
+
+	/**
+	 * A viewer whose drop downs show a tree with the given number of rows, the
+	 * first of which has children.
+	 */
+	private static final class TreeBenchmarkViewer extends
+			BreadcrumbTestViewer {
+
+		final int fRows;
+		BreadcrumbItemDropDown fDropDown;
+		Tree fTree;
+
+		public TreeBenchmarkViewer(final Composite parent, final int rows) {
+			super(parent, SWT.NONE);
+			this.fRows = rows;
+		}
+
+		@Override
+		protected Control createDropDown(final Composite parent,
+				final IBreadcrumbDropDownSite site, final TreePath path) {
+			this.fDropDown = (BreadcrumbItemDropDown) site;
+			this.fTree = new Tree(parent, SWT.SINGLE);
+			for (int i = 0; i < this.fRows; i++) {
+				final TreeItem item = new TreeItem(this.fTree, SWT.NONE);
+				item.setText("item " + i); //$NON-NLS-1$
+			}
+			final TreeItem item = this.fTree.getItem(0);
+			for (int i = 0; i < CHILDREN; i++) {
+				new TreeItem(item, SWT.NONE).setText("child " + i); //$NON-NLS-1$
+			}
+			return this.fTree;
+		}
+	}
+
+	@Test
+	public void benchmarkExpansion() {
+		System.out.println("rows\tincremental ns/op\tfull ns/op"); //$NON-NLS-1$
+		for (int i = 0; i < ROWS.length; i++) {
+			final Shell shell = new Shell(Display.getDefault());
+			try {
+				shell.setSize(600, 100);
+				final TreeBenchmarkViewer viewer = new TreeBenchmarkViewer(
+						shell, ROWS[i]);
+				viewer.setInput(new String[] { "a", "b" }); //$NON-NLS-1$ //$NON-NLS-2$
+				shell.open();
+				viewer.getItem(0).openDropDownMenu();
+
+				System.out.println(ROWS[i] + "\t" + measure(viewer, true) //$NON-NLS-1$
+						+ "\t" + measure(viewer, false)); //$NON-NLS-1$
+			} finally {
+				shell.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Expands and collapses the first item repeatedly and returns the average
+	 * time of computing the size after the expansion.
+	 */
+	private static long measure(final TreeBenchmarkViewer viewer,
+			final boolean incremental) {
+		final BreadcrumbItemDropDown dropDown = viewer.fDropDown;
+		final Shell shell = viewer.fTree.getShell();
+		final TreeItem item = viewer.fTree.getItem(0);
+		dropDown.computePreferredSize(shell);
+
+		long nanos = 0;
+		for (int i = 0; i < ITERATIONS; i++) {
+			item.setExpanded(true);
+			dropDown.itemExpanded(item);
+
+			final long start = System.nanoTime();
+			if (incremental) {
+				dropDown.computePreferredSize(shell);
+			} else {
+				shell.computeSize(SWT.DEFAULT, SWT.DEFAULT, true);
+			}
+			nanos += System.nanoTime() - start;
+
+			item.setExpanded(false);
+			dropDown.itemCollapsed(item);
+			dropDown.computePreferredSize(shell);
+		}
+		return nanos / ITERATIONS;
+	}
+}
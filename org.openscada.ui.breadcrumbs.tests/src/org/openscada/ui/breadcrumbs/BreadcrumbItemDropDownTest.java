@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Copyright (c) 2012 TH4 SYSTEMS GmbH and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jens Reimann (TH4 SYSTEMS GmbH) - initial API and implementation
+ *******************************************************************************/
+package org.openscada.ui.breadcrumbs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.eclipse.jface.viewers.TreePath;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Text;
+import org.eclipse.swt.widgets.Tree;
+import org.eclipse.swt.widgets.TreeItem;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the drop down computes the preferred size of its shell from the
+ * rows of its tree, without drifting when rows are added later or subtrees
+ * are collapsed.
+ */
+public class BreadcrumbItemDropDownTest {
+
+	private static final String[] CHAIN = new String[] { "a", "b" }; //$NON-NLS-1$ //$NON-NLS-2$
+
+	/**
+	 * A viewer whose drop downs show a text above a tree with a few collapsed
+	 * items.
+	 */
+	private static final class TreeTestViewer extends BreadcrumbTestViewer {
+
+		String fHeader = ""; //$NON-NLS-1$
+		BreadcrumbItemDropDown fDropDown;
+		Tree fTree;
+
+		public TreeTestViewer(final Composite parent) {
+			super(parent, SWT.NONE);
+		}
+
+		@Override
+		protected Control createDropDown(final Composite parent,
+				final IBreadcrumbDropDownSite site, final TreePath path) {
+			this.fDropDown = (BreadcrumbItemDropDown) site;
+
+			final Composite composite = new Composite(parent, SWT.NONE);
+			composite.setLayout(new GridLayout(1, false));
+			final Text text = new Text(composite, SWT.SINGLE);
+			text.setText(this.fHeader);
+
+			this.fTree = new Tree(composite, SWT.SINGLE);
+			this.fTree.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true,
+					true));
+			for (int i = 0; i < 5; i++) {
+				final TreeItem item = new TreeItem(this.fTree, SWT.NONE);
+				item.setText("item " + i); //$NON-NLS-1$
+				for (int j = 0; j < 3; j++) {
+					new TreeItem(item, SWT.NONE).setText("child " + j); //$NON-NLS-1$
+				}
+			}
+			return composite;
+		}
+	}
+
+	private Shell fShell;
+	private TreeTestViewer fViewer;
+
+	@Before
+	public void setUp() {
+		this.fShell = new Shell(Display.getDefault());
+		this.fShell.setSize(600, 100);
+		this.fViewer = new TreeTestViewer(this.fShell);
+		this.fViewer.setInput(CHAIN);
+		this.fShell.open();
+	}
+
+	@After
+	public void tearDown() {
+		this.fShell.dispose();
+	}
+
+	@Test
+	public void testRowsAddedLaterAreCounted() {
+		final Shell shell = openDropDown();
+		final TreeItem item = this.fViewer.fTree.getItem(0);
+		item.setExpanded(true);
+		assertHeight(shell);
+
+		// rows added without an expand event, as deferred loading does
+		for (int i = 0; i < 10; i++) {
+			new TreeItem(item, SWT.NONE).setText("late " + i); //$NON-NLS-1$
+		}
+		assertHeight(shell);
+	}
+
+	@Test
+	public void testCollapseDoesNotDrift() {
+		final Shell shell = openDropDown();
+		final TreeItem item = this.fViewer.fTree.getItem(1);
+
+		for (int i = 0; i < 3; i++) {
+			item.setExpanded(true);
+			assertHeight(shell);
+			item.setExpanded(false);
+			assertHeight(shell);
+		}
+	}
+
+	@Test
+	public void testReportedExpansionMeasuresNewRows() {
+		final Shell shell = openDropDown();
+		final int measured = this.fViewer.fDropDown.getMeasuredRowCount();
+		final TreeItem item = this.fViewer.fTree.getItem(2);
+
+		item.setExpanded(true);
+		this.fViewer.fDropDown.itemExpanded(item);
+		assertHeight(shell);
+		// only the three rows just shown are measured
+		assertEquals(measured + 3,
+				this.fViewer.fDropDown.getMeasuredRowCount());
+
+		item.setExpanded(false);
+		this.fViewer.fDropDown.itemCollapsed(item);
+		assertHeight(shell);
+
+		item.setExpanded(true);
+		this.fViewer.fDropDown.itemExpanded(item);
+		assertHeight(shell);
+		assertEquals(measured + 3,
+				this.fViewer.fDropDown.getMeasuredRowCount());
+	}
+
+	@Test
+	public void testDisposedRowsAreForgotten() {
+		final Shell shell = openDropDown();
+		final TreeItem item = this.fViewer.fTree.getItem(3);
+		item.setExpanded(true);
+		this.fViewer.fDropDown.itemExpanded(item);
+		this.fViewer.fDropDown.computePreferredSize(shell);
+		final int measured = this.fViewer.fDropDown.getMeasuredRowCount();
+
+		item.removeAll();
+		assertHeight(shell);
+		assertEquals(measured - 3,
+				this.fViewer.fDropDown.getMeasuredRowCount());
+	}
+
+	@Test
+	public void testHeaderWiderThanRows() {
+		this.fViewer.fHeader = "a header which is much wider than the rows of the tree below it"; //$NON-NLS-1$
+		final Shell shell = openDropDown();
+		final int headerWidth = shell.computeSize(SWT.DEFAULT, SWT.DEFAULT,
+				true).x;
+
+		this.fViewer.fTree.getItem(0).setExpanded(true);
+
+		assertTrue(this.fViewer.fDropDown.computePreferredSize(shell).x >= headerWidth);
+	}
+
+	/**
+	 * Opens the drop down of the first item and measures its shell once.
+	 */
+	private Shell openDropDown() {
+		this.fViewer.getItem(0).openDropDownMenu();
+		final Shell shell = this.fViewer.fTree.getShell();
+		this.fViewer.fDropDown.computePreferredSize(shell);
+		return shell;
+	}
+
+	private void assertHeight(final Shell shell) {
+		final Point expected = shell.computeSize(SWT.DEFAULT, SWT.DEFAULT,
+				true);
+		assertEquals(expected.y,
+				this.fViewer.fDropDown.computePreferredSize(shell).y);
+	}
+}
@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (c) 2012 TH4 SYSTEMS GmbH and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jens Reimann (TH4 SYSTEMS GmbH) - initial API and implementation
+ *******************************************************************************/
+package org.openscada.ui.breadcrumbs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jface.viewers.TreePath;
+
+/**
+ * A benchmark of the {@link BreadcrumbLayoutModel} for chains of 10 to
+ * {@value #MAX_DEPTH} levels. It needs no display and is run as a plain Java
+ * application.
+ * <p>
+ * For each depth it measures replacing the last level of the chain, which is
+ * what selecting a sibling in the last drop down does, and fitting the chain
+ * into a width which hides half of the texts.
+ * </p>
+ */
+public final class BreadcrumbLayoutModelBenchmark {
+
+	/**
+	 * The deepest chain which is measured.
+	 */
+	static final int MAX_DEPTH = 10000;
+
+	private static final int[] DEPTHS = new int[] { 10, 100, 1000, MAX_DEPTH };
+
+	private static final long WARMUP_NANOS = 500L * 1000 * 1000;
+	private static final long MEASURE_NANOS = 1000L * 1000 * 1000;
+
+	/**
+	 * An operation on a model, run repeatedly.
+	 */
+	private interface Operation {
+		void run(int iteration);
+	}
+
+	private BreadcrumbLayoutModelBenchmark() {
+	}
+
+	public static void main(final String[] args) {
+		System.out.println("depth\tsuffix ns/op\tfit ns/op"); //$NON-NLS-1$
+		for (int i = 0; i < DEPTHS.length; i++) {
+			final int depth = DEPTHS[i];
+			System.out.println(depth + "\t" + measure(createSuffixOperation(depth)) //$NON-NLS-1$
+					+ "\t" + measure(createFitOperation(depth))); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Replaces the last level of the chain by one of two siblings.
+	 */
+	private static Operation createSuffixOperation(final int depth) {
+		final List chain = createChain(depth);
+		final BreadcrumbLayoutModel model = createModel(chain);
+
+		final TreePath parent = ((TreePath) chain.get(depth - 1))
+				.getParentPath();
+		final List sibling = new ArrayList(chain.subList(0, depth - 1));
+		sibling.add(parent.createChildPath("sibling")); //$NON-NLS-1$
+		final List[] chains = new List[] { chain, sibling };
+
+		return new Operation() {
+			@Override
+			public void run(final int iteration) {
+				final List paths = chains[iteration & 1];
+				final int index = model.getSharedPrefixLength(paths);
+				for (int j = index, size = paths.size(); j < size; j++) {
+					model.setPath(j, (TreePath) paths.get(j));
+				}
+				model.setSize(paths.size());
+			}
+		};
+	}
+
+	/**
+	 * Fits the chain into a width which shows the texts of half the levels.
+	 */
+	private static Operation createFitOperation(final int depth) {
+		final BreadcrumbLayoutModel model = createModel(createChain(depth));
+		for (int j = 0; j < depth; j++) {
+			model.setWidths(j, 100, 20);
+		}
+		final int width = depth / 2 * 100 + depth / 2 * 20;
+
+		return new Operation() {
+			@Override
+			public void run(final int iteration) {
+				model.fit(width + (iteration & 1));
+			}
+		};
+	}
+
+	private static List createChain(final int depth) {
+		final Object[] elements = new Object[depth];
+		for (int j = 0; j < depth; j++) {
+			elements[j] = "level " + j; //$NON-NLS-1$
+		}
+		return createChain(elements);
+	}
+
+	/**
+	 * Returns the paths of a chain of the given elements.
+	 */
+	static List createChain(final Object[] elements) {
+		final List paths = new ArrayList(elements.length);
+		TreePath path = TreePath.EMPTY;
+		for (int i = 0; i < elements.length; i++) {
+			path = path.createChildPath(elements[i]);
+			paths.add(path);
+		}
+		return paths;
+	}
+
+	static BreadcrumbLayoutModel createModel(final List paths) {
+		final BreadcrumbLayoutModel model = new BreadcrumbLayoutModel(false);
+		for (int i = 0, size = paths.size(); i < size; i++) {
+			model.setPath(i, (TreePath) paths.get(i));
+		}
+		return model;
+	}
+
+	/**
+	 * Runs the operation for the warm up time, then returns the average time
+	 * of one run during the measure time.
+	 */
+	private static long measure(final Operation operation) {
+		run(operation, WARMUP_NANOS);
+		return run(operation, MEASURE_NANOS);
+	}
+
+	private static long run(final Operation operation, final long nanos) {
+		final long start = System.nanoTime();
+		long now = start;
+		int iterations = 0;
+		while (now - start < nanos) {
+			for (int j = 0; j < 100; j++) {
+				operation.run(iterations++);
+			}
+			now = System.nanoTime();
+		}
+		return (now - start) / iterations;
+	}
+}
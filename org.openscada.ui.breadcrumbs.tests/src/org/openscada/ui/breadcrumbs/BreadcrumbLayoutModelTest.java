@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2012 TH4 SYSTEMS GmbH and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jens Reimann (TH4 SYSTEMS GmbH) - initial API and implementation
+ *******************************************************************************/
+package org.openscada.ui.breadcrumbs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.openscada.ui.breadcrumbs.BreadcrumbLayoutModelBenchmark.createChain;
+import static org.openscada.ui.breadcrumbs.BreadcrumbLayoutModelBenchmark.createModel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jface.viewers.IElementComparer;
+import org.eclipse.jface.viewers.TreePath;
+import org.junit.Test;
+
+/**
+ * Tests of the headless {@link BreadcrumbLayoutModel}.
+ */
+public class BreadcrumbLayoutModelTest {
+
+	@Test
+	public void testSharedPrefix() {
+		final BreadcrumbLayoutModel model = createModel(createChain(new Object[] {
+				"a", "b", "c", "d" })); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+
+		assertEquals(2, model.getSharedPrefixLength(createChain(new Object[] {
+				"a", "b", "x" }))); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		assertEquals(4, model.getSharedPrefixLength(createChain(new Object[] {
+				"a", "b", "c", "d", "e" }))); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+		assertEquals(0, model.getSharedPrefixLength(createChain(new Object[] {
+				"x", "b" }))); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	@Test
+	public void testSharedPrefixWithComparer() {
+		final BreadcrumbLayoutModel model = createModel(createChain(new Object[] {
+				"a", "b" })); //$NON-NLS-1$ //$NON-NLS-2$
+		model.setComparer(new IElementComparer() {
+			@Override
+			public boolean equals(final Object a, final Object b) {
+				return ((String) a).equalsIgnoreCase((String) b);
+			}
+
+			@Override
+			public int hashCode(final Object element) {
+				return ((String) element).toLowerCase().hashCode();
+			}
+		});
+
+		assertEquals(2, model.getSharedPrefixLength(createChain(new Object[] {
+				"A", "B" }))); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	@Test
+	public void testSharedPrefixBehindElidedLevels() {
+		final List chain = createChain(new Object[] { "a", "b", "c", "d" }); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		final List other = createChain(new Object[] { "a", "x", "c", "d" }); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		final BreadcrumbLayoutModel model = createModel(elide(chain));
+
+		assertEquals(4, model.getSharedPrefixLength(elide(chain)));
+		// only the elided ancestor differs, the items behind it show stale
+		// paths
+		assertEquals(2, model.getSharedPrefixLength(elide(other)));
+	}
+
+	/**
+	 * Returns the visible paths of a chain of four levels whose second level
+	 * is elided.
+	 */
+	private static List elide(final List chain) {
+		final List paths = new ArrayList(chain);
+		paths.set(1, TreePath.EMPTY);
+		return paths;
+	}
+
+	@Test
+	public void testItemWithoutPathIsNotShared() {
+		final BreadcrumbLayoutModel model = createModel(createChain(new Object[] {
+				"a", "b" })); //$NON-NLS-1$ //$NON-NLS-2$
+		model.setPath(1, null);
+
+		assertNull(model.getPath(1));
+		assertEquals(1, model.getSharedPrefixLength(createChain(new Object[] {
+				"a", "b" }))); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	@Test
+	public void testSetSize() {
+		final BreadcrumbLayoutModel model = createModel(createChain(new Object[] {
+				"a", "b", "c" })); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		model.setSize(1);
+
+		assertEquals(1, model.getSize());
+		model.setPath(1, (TreePath) createChain(new Object[] { "a", "x" }).get(1)); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(2, model.getSize());
+	}
+
+	@Test
+	public void testFitShowsAllTexts() {
+		final BreadcrumbLayoutModel model = createModel(createChain(new Object[] {
+				"a", "b", "c" })); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		for (int i = 0; i < 3; i++) {
+			model.setWidths(i, 100, 20);
+		}
+
+		assertEquals(0, model.fit(300));
+		assertTrue(model.isShowText(0));
+	}
+
+	@Test
+	public void testFitHidesTextsFromTheLeft() {
+		final BreadcrumbLayoutModel model = createModel(createChain(new Object[] {
+				"a", "b", "c", "d" })); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		for (int i = 0; i < 4; i++) {
+			model.setWidths(i, 100, 20);
+		}
+
+		// 20 + 20 + 100 + 100 fits into 250, 20 + 100 + 100 + 100 does not
+		assertEquals(2, model.fit(250));
+		assertFalse(model.isShowText(1));
+		assertTrue(model.isShowText(2));
+	}
+
+	@Test
+	public void testFitKeepsLastText() {
+		final BreadcrumbLayoutModel model = createModel(createChain(new Object[] {
+				"a", "b" })); //$NON-NLS-1$ //$NON-NLS-2$
+		model.setWidths(0, 100, 20);
+		model.setWidths(1, 100, 20);
+
+		assertEquals(1, model.fit(10));
+		assertTrue(model.isShowText(1));
+	}
+
+	@Test
+	public void testLongChain() {
+		final Object[] elements = new Object[BreadcrumbLayoutModelBenchmark.MAX_DEPTH];
+		for (int i = 0; i < elements.length; i++) {
+			elements[i] = Integer.valueOf(i);
+		}
+		final List paths = createChain(elements);
+		final BreadcrumbLayoutModel model = createModel(paths);
+		for (int i = 0; i < elements.length; i++) {
+			model.setWidths(i, 10, 1);
+		}
+
+		assertEquals(elements.length, model.getSharedPrefixLength(paths));
+		assertEquals(elements.length - 1, model.fit(10));
+	}
+}
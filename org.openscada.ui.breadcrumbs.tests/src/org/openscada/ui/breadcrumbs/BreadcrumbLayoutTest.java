@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2012 TH4 SYSTEMS GmbH and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jens Reimann (TH4 SYSTEMS GmbH) - initial API and implementation
+ *******************************************************************************/
+package org.openscada.ui.breadcrumbs;
+
+import static org.junit.Assert.assertEquals;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.graphics.Rectangle;
+import org.eclipse.swt.widgets.Canvas;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the {@link BreadcrumbLayout} measures each child once and only
+ * measures changed children again.
+ */
+public class BreadcrumbLayoutTest {
+
+	private static final int CHILD_COUNT = 5;
+
+	/**
+	 * A child with a fixed preferred size, counting how often it is measured.
+	 */
+	private static final class CountingCanvas extends Canvas {
+
+		private final Point fSize;
+		int fComputeCount;
+
+		public CountingCanvas(final Composite parent, final int width) {
+			super(parent, SWT.NONE);
+			this.fSize = new Point(width, 20);
+		}
+
+		@Override
+		public Point computeSize(final int wHint, final int hHint,
+				final boolean changed) {
+			this.fComputeCount++;
+			return new Point(this.fSize.x, this.fSize.y);
+		}
+	}
+
+	private Shell fShell;
+	private Composite fComposite;
+	private CountingCanvas[] fChildren;
+
+	@Before
+	public void setUp() {
+		this.fShell = new Shell(Display.getDefault());
+		this.fComposite = new Composite(this.fShell, SWT.NONE);
+		this.fComposite.setLayout(new BreadcrumbLayout(
+				BreadcrumbLayout.SINGLE_ROW));
+		this.fComposite.setBounds(0, 0, 500, 40);
+
+		this.fChildren = new CountingCanvas[CHILD_COUNT];
+		for (int i = 0; i < CHILD_COUNT; i++) {
+			this.fChildren[i] = new CountingCanvas(this.fComposite, 10 * (i + 1));
+		}
+	}
+
+	@After
+	public void tearDown() {
+		this.fShell.dispose();
+	}
+
+	@Test
+	public void testEachChildMeasuredOnce() {
+		this.fComposite.layout(true);
+
+		for (int i = 0; i < CHILD_COUNT; i++) {
+			assertEquals(1, this.fChildren[i].fComputeCount);
+		}
+	}
+
+	@Test
+	public void testCachedSizesAreReused() {
+		this.fComposite.layout(true);
+		resetCounts();
+
+		this.fComposite.layout(false);
+		this.fComposite.computeSize(SWT.DEFAULT, SWT.DEFAULT, false);
+
+		for (int i = 0; i < CHILD_COUNT; i++) {
+			assertEquals(0, this.fChildren[i].fComputeCount);
+		}
+	}
+
+	@Test
+	public void testOnlyChangedChildIsMeasured() {
+		this.fComposite.layout(true);
+		resetCounts();
+
+		this.fComposite.layout(new Control[] { this.fChildren[2] });
+
+		for (int i = 0; i < CHILD_COUNT; i++) {
+			assertEquals(i == 2 ? 1 : 0, this.fChildren[i].fComputeCount);
+		}
+	}
+
+	@Test
+	public void testChildrenInOneRow() {
+		final BreadcrumbLayoutData data = new BreadcrumbLayoutData();
+		data.grabExcessHorizontalSpace = true;
+		this.fChildren[CHILD_COUNT - 1].setLayoutData(data);
+
+		this.fComposite.layout(true);
+
+		int x = 0;
+		for (int i = 0; i < CHILD_COUNT - 1; i++) {
+			final Rectangle bounds = this.fChildren[i].getBounds();
+			assertEquals(x, bounds.x);
+			assertEquals(10 * (i + 1), bounds.width);
+			x += bounds.width;
+		}
+
+		// the last child takes the remaining width
+		assertEquals(500 - x, this.fChildren[CHILD_COUNT - 1].getBounds().width);
+	}
+
+	private void resetCounts() {
+		for (int i = 0; i < CHILD_COUNT; i++) {
+			this.fChildren[i].fComputeCount = 0;
+		}
+	}
+}
@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2012 TH4 SYSTEMS GmbH and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jens Reimann (TH4 SYSTEMS GmbH) - initial API and implementation
+ *******************************************************************************/
+package org.openscada.ui.breadcrumbs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the {@link BreadcrumbPathIndex} survives reopening, and that its
+ * file is replaced when it cannot be used.
+ */
+public class BreadcrumbPathIndexTest {
+
+	private static final String[] PATH = new String[] { "a", "b" }; //$NON-NLS-1$ //$NON-NLS-2$
+
+	private File fFile;
+
+	@Before
+	public void setUp() throws IOException {
+		this.fFile = File.createTempFile("breadcrumb", ".index"); //$NON-NLS-1$ //$NON-NLS-2$
+		this.fFile.delete();
+	}
+
+	@After
+	public void tearDown() {
+		this.fFile.delete();
+	}
+
+	@Test
+	public void testReopen() {
+		final BreadcrumbPathIndex index = new BreadcrumbPathIndex(this.fFile,
+				"token"); //$NON-NLS-1$
+		index.put(PATH, "Pump"); //$NON-NLS-1$
+		index.close();
+
+		assertEquals("Pump", new BreadcrumbPathIndex(this.fFile, "token") //$NON-NLS-1$ //$NON-NLS-2$
+				.getLabel(PATH));
+	}
+
+	@Test
+	public void testOtherTokenReplacesFile() {
+		final BreadcrumbPathIndex index = new BreadcrumbPathIndex(this.fFile,
+				"old"); //$NON-NLS-1$
+		index.put(PATH, "Pump"); //$NON-NLS-1$
+		index.close();
+
+		final BreadcrumbPathIndex other = new BreadcrumbPathIndex(this.fFile,
+				"new"); //$NON-NLS-1$
+		assertEquals(0, other.size());
+		other.put(new String[] { "c" }, "Valve"); //$NON-NLS-1$ //$NON-NLS-2$
+		other.close();
+
+		// the record is not appended behind the old header
+		final BreadcrumbPathIndex reopened = new BreadcrumbPathIndex(
+				this.fFile, "new"); //$NON-NLS-1$
+		assertEquals(1, reopened.size());
+		assertEquals("Valve", reopened.getLabel(new String[] { "c" })); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	@Test
+	public void testCutOffRecordIsDropped() throws IOException {
+		final BreadcrumbPathIndex index = new BreadcrumbPathIndex(this.fFile,
+				"token"); //$NON-NLS-1$
+		index.put(PATH, "Pump"); //$NON-NLS-1$
+		index.close();
+
+		final FileOutputStream output = new FileOutputStream(this.fFile, true);
+		try {
+			output.write(new byte[] { 1, 0, 0 });
+		} finally {
+			output.close();
+		}
+
+		final BreadcrumbPathIndex reopened = new BreadcrumbPathIndex(
+				this.fFile, "token"); //$NON-NLS-1$
+		assertEquals(1, reopened.size());
+		assertEquals("Pump", reopened.getLabel(PATH)); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testSetValidityTokenClearsInPlace() {
+		final BreadcrumbPathIndex index = new BreadcrumbPathIndex(this.fFile,
+				null);
+		index.put(PATH, "Pump"); //$NON-NLS-1$
+
+		// null and the empty token are the same
+		index.setValidityToken(""); //$NON-NLS-1$
+		assertEquals(1, index.size());
+
+		index.setValidityToken("other"); //$NON-NLS-1$
+		assertEquals(0, index.size());
+		assertEquals("other", index.getValidityToken()); //$NON-NLS-1$
+		index.close();
+
+		assertEquals(0, new BreadcrumbPathIndex(this.fFile, "other").size()); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testFind() {
+		final BreadcrumbPathIndex index = new BreadcrumbPathIndex(this.fFile,
+				"token"); //$NON-NLS-1$
+		index.put(PATH, "Pump"); //$NON-NLS-1$
+		index.put(new String[] { "c" }, "Valve"); //$NON-NLS-1$ //$NON-NLS-2$
+
+		final List matches = index.find("UMP"); //$NON-NLS-1$
+		assertEquals(1, matches.size());
+		assertEquals("b", ((String[]) matches.get(0))[1]); //$NON-NLS-1$
+
+		index.remove(new String[] { "a" }); //$NON-NLS-1$
+		assertEquals(0, index.find("ump").size()); //$NON-NLS-1$
+		assertNull(index.getLabel(PATH));
+		index.close();
+	}
+
+	@Test
+	public void testRetainChildren() {
+		final BreadcrumbPathIndex index = new BreadcrumbPathIndex(this.fFile,
+				"token"); //$NON-NLS-1$
+		index.put(new String[] { "a" }, "Plant"); //$NON-NLS-1$ //$NON-NLS-2$
+		index.put(PATH, "Pump"); //$NON-NLS-1$
+		index.put(new String[] { "a", "c" }, "Valve"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		index.put(new String[] { "a", "c", "d" }, "Seal"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+
+		index.retainChildren(new String[] { "a" }, new HashSet(Arrays //$NON-NLS-1$
+				.asList(new String[] { "b" }))); //$NON-NLS-1$
+		index.close();
+
+		// the parent and the kept child stay, the gone child and its subtree
+		// are removed from the file as well
+		final BreadcrumbPathIndex reopened = new BreadcrumbPathIndex(
+				this.fFile, "token"); //$NON-NLS-1$
+		assertEquals(2, reopened.size());
+		assertEquals("Plant", reopened.getLabel(new String[] { "a" })); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("Pump", reopened.getLabel(PATH)); //$NON-NLS-1$
+		assertEquals(0, reopened.find("seal").size()); //$NON-NLS-1$
+	}
+}
@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (c) 2012 TH4 SYSTEMS GmbH and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jens Reimann (TH4 SYSTEMS GmbH) - initial API and implementation
+ *******************************************************************************/
+package org.openscada.ui.breadcrumbs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.eclipse.jface.viewers.ITreePathContentProvider;
+import org.eclipse.jface.viewers.TreePath;
+import org.eclipse.jface.viewers.Viewer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the {@link BreadcrumbPrefetcher} fetches the children of an
+ * element once and counts one hit or miss per consumed element.
+ */
+public class BreadcrumbPrefetcherTest {
+
+	private static final Object[] CHILDREN = new Object[] { "x", "y" }; //$NON-NLS-1$ //$NON-NLS-2$
+
+	/**
+	 * A content provider which takes a while to fetch children and counts how
+	 * often it is asked. It fails while {@link #fFail} is set.
+	 */
+	private static final class SlowContentProvider implements
+			ITreePathContentProvider {
+
+		int fChildrenCount;
+		volatile boolean fFail;
+
+		@Override
+		public Object[] getChildren(final TreePath parentPath) {
+			synchronized (this) {
+				this.fChildrenCount++;
+			}
+			try {
+				Thread.sleep(200);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if (this.fFail) {
+				throw new IllegalStateException("expected failure"); //$NON-NLS-1$
+			}
+			return CHILDREN;
+		}
+
+		@Override
+		public Object[] getElements(final Object inputElement) {
+			return new Object[0];
+		}
+
+		@Override
+		public boolean hasChildren(final TreePath path) {
+			return true;
+		}
+
+		@Override
+		public TreePath[] getParents(final Object element) {
+			return new TreePath[0];
+		}
+
+		@Override
+		public void inputChanged(final Viewer viewer, final Object oldInput,
+				final Object newInput) {
+		}
+
+		@Override
+		public void dispose() {
+		}
+	}
+
+	private SlowContentProvider fContentProvider;
+	private BreadcrumbPrefetcher fPrefetcher;
+
+	@Before
+	public void setUp() {
+		this.fContentProvider = new SlowContentProvider();
+		this.fPrefetcher = new BreadcrumbPrefetcher(this.fContentProvider);
+	}
+
+	@After
+	public void tearDown() {
+		this.fPrefetcher.dispose();
+	}
+
+	@Test
+	public void testConsumeWaitsForRunningFetch() {
+		this.fPrefetcher.prefetch(new TreePath(new Object[] { "a" })); //$NON-NLS-1$
+
+		assertArrayEquals(CHILDREN, this.fPrefetcher.consume("a")); //$NON-NLS-1$
+		assertEquals(1, this.fContentProvider.fChildrenCount);
+		assertEquals(1, this.fPrefetcher.getHitCount());
+		assertEquals(0, this.fPrefetcher.getMissCount());
+	}
+
+	@Test
+	public void testConsumeTakesChildrenOnce() {
+		this.fPrefetcher.prefetch(new TreePath(new Object[] { "a" })); //$NON-NLS-1$
+		this.fPrefetcher.consume("a"); //$NON-NLS-1$
+
+		assertNull(this.fPrefetcher.consume("a")); //$NON-NLS-1$
+		assertEquals(1, this.fPrefetcher.getHitCount());
+		assertEquals(1, this.fPrefetcher.getMissCount());
+	}
+
+	@Test
+	public void testRepeatedPrefetchFetchesOnce() {
+		final TreePath path = new TreePath(new Object[] { "a" }); //$NON-NLS-1$
+		this.fPrefetcher.prefetch(path);
+		this.fPrefetcher.prefetch(path);
+		this.fPrefetcher.consume("a"); //$NON-NLS-1$
+
+		assertEquals(1, this.fPrefetcher.getPrefetchCount());
+		assertEquals(1, this.fContentProvider.fChildrenCount);
+	}
+
+	@Test
+	public void testFailedFetchIsRetried() {
+		final TreePath path = new TreePath(new Object[] { "a" }); //$NON-NLS-1$
+		this.fContentProvider.fFail = true;
+		this.fPrefetcher.prefetch(path);
+
+		assertNull(this.fPrefetcher.consume("a")); //$NON-NLS-1$
+		assertEquals(1, this.fPrefetcher.getMissCount());
+
+		this.fContentProvider.fFail = false;
+		this.fPrefetcher.prefetch(path);
+
+		assertArrayEquals(CHILDREN, this.fPrefetcher.consume("a")); //$NON-NLS-1$
+		assertEquals(2, this.fPrefetcher.getPrefetchCount());
+		assertEquals(2, this.fContentProvider.fChildrenCount);
+	}
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 2012 TH4 SYSTEMS GmbH and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jens Reimann (TH4 SYSTEMS GmbH) - initial API and implementation
+ *******************************************************************************/
+package org.openscada.ui.breadcrumbs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.viewers.TreePath;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the search index of a viewer follows the labels of its items and
+ * the refreshes of its content.
+ */
+public class BreadcrumbSearchIndexUpdaterTest {
+
+	private static final long TIMEOUT = 2000;
+
+	/**
+	 * Uses the strings of the chain as their ids.
+	 */
+	private static final class StringCodec implements IBreadcrumbPathCodec {
+
+		@Override
+		public String getId(final Object element) {
+			return (String) element;
+		}
+
+		@Override
+		public Object getElement(final TreePath parentPath, final String id) {
+			return id;
+		}
+	}
+
+	private File fFile;
+	private BreadcrumbPathIndex fIndex;
+	private Shell fShell;
+	private BreadcrumbTestViewer fViewer;
+
+	@Before
+	public void setUp() throws IOException {
+		this.fFile = File.createTempFile("breadcrumb", ".index"); //$NON-NLS-1$ //$NON-NLS-2$
+		this.fFile.delete();
+		this.fIndex = new BreadcrumbPathIndex(this.fFile, "token"); //$NON-NLS-1$
+
+		this.fShell = new Shell(Display.getDefault());
+		this.fShell.setSize(600, 100);
+		this.fViewer = new BreadcrumbTestViewer(this.fShell, SWT.NONE);
+		this.fViewer.setSearchIndex(this.fIndex, new StringCodec());
+		this.fViewer.setInput(new String[] { "a", "b", "c" }); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		this.fShell.open();
+		waitForUpdates();
+	}
+
+	@After
+	public void tearDown() {
+		this.fShell.dispose();
+		this.fIndex.close();
+		this.fFile.delete();
+	}
+
+	@Test
+	public void testItemsAreIndexed() {
+		assertEquals("c", this.fIndex.getLabel(new String[] { "a", "b", "c" })); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	}
+
+	@Test
+	public void testNewLabelIsIndexed() {
+		this.fViewer.fLabelProvider.fSuffix = " renamed"; //$NON-NLS-1$
+		this.fViewer.update("b", null); //$NON-NLS-1$
+		waitForUpdates();
+
+		assertEquals("b renamed", this.fIndex.getLabel(new String[] { "a", "b" })); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	@Test
+	public void testRefreshRemovesGoneChildren() {
+		this.fIndex.put(new String[] { "a", "x" }, "x"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		this.fIndex.put(new String[] { "a", "x", "y" }, "y"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+
+		// the content of "a" only has "b" as its child
+		this.fViewer.refresh("a"); //$NON-NLS-1$
+		waitForUpdates();
+
+		assertNull(this.fIndex.getLabel(new String[] { "a", "x" })); //$NON-NLS-1$ //$NON-NLS-2$
+		assertNull(this.fIndex.getLabel(new String[] { "a", "x", "y" })); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		assertEquals("b", this.fIndex.getLabel(new String[] { "a", "b" })); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	/**
+	 * Processes events until the update jobs are done and their results have
+	 * been labeled on the UI thread.
+	 */
+	private static void waitForUpdates() {
+		final Display display = Display.getDefault();
+		final long end = System.currentTimeMillis() + TIMEOUT;
+		while (System.currentTimeMillis() < end) {
+			if (display.readAndDispatch()) {
+				continue;
+			}
+			if (Job.getJobManager().isIdle()) {
+				// the last job may have posted a runnable before it ended
+				if (!display.readAndDispatch() && Job.getJobManager().isIdle()) {
+					return;
+				}
+				continue;
+			}
+			try {
+				Thread.sleep(10);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+}
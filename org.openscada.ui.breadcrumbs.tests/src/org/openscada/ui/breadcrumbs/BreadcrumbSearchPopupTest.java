@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2012 TH4 SYSTEMS GmbH and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jens Reimann (TH4 SYSTEMS GmbH) - initial API and implementation
+ *******************************************************************************/
+package org.openscada.ui.breadcrumbs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the search popup tells the user when it stopped at the search
+ * limit of the viewer, and only then.
+ */
+public class BreadcrumbSearchPopupTest {
+
+	private static final long TIMEOUT = 2000;
+
+	private Shell fShell;
+	private BreadcrumbTestViewer fViewer;
+
+	@Before
+	public void setUp() {
+		this.fShell = new Shell(Display.getDefault());
+		this.fShell.setSize(600, 100);
+		this.fViewer = new BreadcrumbTestViewer(this.fShell, SWT.NONE);
+		this.fViewer.setInput(new String[] { "a", "b", "c", "d" }); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		this.fShell.open();
+	}
+
+	@After
+	public void tearDown() {
+		this.fShell.dispose();
+	}
+
+	@Test
+	public void testDefaultLimit() {
+		assertEquals(100000, this.fViewer.getSearchLimit());
+		this.fViewer.setSearchLimit(0);
+		assertEquals(1, this.fViewer.getSearchLimit());
+	}
+
+	@Test
+	public void testSearchStoppedAtLimit() {
+		this.fViewer.setSearchLimit(2);
+		this.fViewer.openSearchPopup();
+
+		assertTrue(waitForTruncation(this.fViewer.getSearchPopup()));
+	}
+
+	@Test
+	public void testWholeTreeWithinLimit() {
+		// the chain has exactly as many elements as the limit
+		this.fViewer.setSearchLimit(4);
+		this.fViewer.openSearchPopup();
+
+		assertFalse(waitForTruncation(this.fViewer.getSearchPopup()));
+	}
+
+	/**
+	 * Processes events until the popup tells that the search was truncated,
+	 * or the timeout passed.
+	 */
+	private static boolean waitForTruncation(final BreadcrumbSearchPopup popup) {
+		final Display display = Display.getDefault();
+		final long end = System.currentTimeMillis() + TIMEOUT;
+		while (!popup.isTruncated() && System.currentTimeMillis() < end) {
+			if (!display.readAndDispatch()) {
+				try {
+					Thread.sleep(10);
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+		}
+		return popup.isTruncated();
+	}
+}
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2012 TH4 SYSTEMS GmbH and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jens Reimann (TH4 SYSTEMS GmbH) - initial API and implementation
+ *******************************************************************************/
+package org.openscada.ui.breadcrumbs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jface.viewers.ITreePathContentProvider;
+import org.eclipse.jface.viewers.ITreePathLabelProvider;
+import org.eclipse.jface.viewers.LabelProvider;
+import org.eclipse.jface.viewers.TreePath;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.jface.viewers.ViewerLabel;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Label;
+
+/**
+ * A breadcrumb viewer for tests. Its input is an array of strings, the
+ * content is the chain of these strings. The content and the label provider
+ * count how often they are asked, the label provider also keeps the paths it
+ * is given.
+ */
+class BreadcrumbTestViewer extends BreadcrumbViewer {
+
+	/**
+	 * Serves the chain of the input, one string per level.
+	 */
+	static final class ChainContentProvider implements
+			ITreePathContentProvider {
+
+		private String[] fChain = new String[0];
+		int fChildrenCount;
+		int fParentsCount;
+
+		@Override
+		public Object[] getElements(final Object inputElement) {
+			return this.fChain.length > 0 ? new Object[] { this.fChain[0] }
+					: new Object[0];
+		}
+
+		@Override
+		public Object[] getChildren(final TreePath parentPath) {
+			this.fChildrenCount++;
+			final int level = parentPath.getSegmentCount();
+			return level < this.fChain.length ? new Object[] { this.fChain[level] }
+					: new Object[0];
+		}
+
+		@Override
+		public boolean hasChildren(final TreePath path) {
+			return path.getSegmentCount() < this.fChain.length;
+		}
+
+		@Override
+		public TreePath[] getParents(final Object element) {
+			this.fParentsCount++;
+			return new TreePath[0];
+		}
+
+		@Override
+		public void inputChanged(final Viewer viewer, final Object oldInput,
+				final Object newInput) {
+			this.fChain = newInput != null ? (String[]) newInput
+					: new String[0];
+		}
+
+		@Override
+		public void dispose() {
+		}
+	}
+
+	/**
+	 * Labels an element with its string, optionally with a suffix.
+	 */
+	static final class CountingLabelProvider extends LabelProvider implements
+			ITreePathLabelProvider {
+
+		int fLabelCount;
+		final List fLabeledPaths = new ArrayList();
+		String fSuffix = ""; //$NON-NLS-1$
+
+		@Override
+		public void updateLabel(final ViewerLabel label, final TreePath path) {
+			this.fLabelCount++;
+			this.fLabeledPaths.add(path);
+			label.setText(path.getLastSegment() + this.fSuffix);
+		}
+	}
+
+	final ChainContentProvider fContentProvider = new ChainContentProvider();
+	final CountingLabelProvider fLabelProvider = new CountingLabelProvider();
+
+	public BreadcrumbTestViewer(final Composite parent, final int style) {
+		super(parent, style);
+		setContentProvider(this.fContentProvider);
+		setLabelProvider(this.fLabelProvider);
+	}
+
+	@Override
+	protected Control createDropDown(final Composite parent,
+			final IBreadcrumbDropDownSite site, final TreePath path) {
+		return new Label(parent, SWT.NONE);
+	}
+
+	/**
+	 * Resets the counters of the content and the label provider.
+	 */
+	void resetCounters() {
+		this.fContentProvider.fChildrenCount = 0;
+		this.fContentProvider.fParentsCount = 0;
+		this.fLabelProvider.fLabelCount = 0;
+		this.fLabelProvider.fLabeledPaths.clear();
+		resetItemPoolCounters();
+		resetSavedLayoutCount();
+	}
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2012 TH4 SYSTEMS GmbH and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jens Reimann (TH4 SYSTEMS GmbH) - initial API and implementation
+ *******************************************************************************/
+package org.openscada.ui.breadcrumbs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Rectangle;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that label changes are laid out once per batch, and only when they
+ * change the size of an item.
+ */
+public class BreadcrumbViewerBatchTest {
+
+	private static final String[] CHAIN = new String[] { "a", "b", "c", "d" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+
+	private Shell fShell;
+	private BreadcrumbTestViewer fViewer;
+
+	@Before
+	public void setUp() {
+		this.fShell = new Shell(Display.getDefault());
+		this.fShell.setSize(600, 100);
+		this.fViewer = new BreadcrumbTestViewer(this.fShell, SWT.NONE);
+		this.fViewer.setInput(CHAIN);
+		this.fViewer.resetCounters();
+	}
+
+	@After
+	public void tearDown() {
+		this.fShell.dispose();
+	}
+
+	@Test
+	public void testRefreshBatchLaysOutOnce() {
+		this.fViewer.fLabelProvider.fSuffix = " grown"; //$NON-NLS-1$
+
+		this.fViewer.refresh(new Object[] { "a", "b", "c" }); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+		// three items changed their width, two of the layouts were merged
+		assertEquals(2, this.fViewer.getSavedLayoutCount());
+		assertFalse(this.fViewer.isUpdating());
+		assertEquals("c grown", this.fViewer.getItem(2).getText()); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testNestedBatches() {
+		this.fViewer.fLabelProvider.fSuffix = " grown"; //$NON-NLS-1$
+
+		this.fViewer.beginUpdate();
+		this.fViewer.refresh("a"); //$NON-NLS-1$
+		this.fViewer.beginUpdate();
+		this.fViewer.refresh("b"); //$NON-NLS-1$
+		this.fViewer.endUpdate();
+		assertTrue(this.fViewer.isUpdating());
+		this.fViewer.update(new Object[] { "c", "d" }, null); //$NON-NLS-1$ //$NON-NLS-2$
+		this.fViewer.endUpdate();
+
+		assertEquals(3, this.fViewer.getSavedLayoutCount());
+		assertFalse(this.fViewer.isUpdating());
+	}
+
+	@Test
+	public void testUnchangedLabelsKeepLayout() {
+		final Rectangle bounds = this.fViewer.getItem(1).getBounds();
+
+		this.fViewer.refresh(new Object[] { "a", "b", "c" }); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+		assertEquals(3, this.fViewer.fLabelProvider.fLabelCount);
+		assertEquals(0, this.fViewer.getSavedLayoutCount());
+		assertEquals(bounds, this.fViewer.getItem(1).getBounds());
+	}
+}
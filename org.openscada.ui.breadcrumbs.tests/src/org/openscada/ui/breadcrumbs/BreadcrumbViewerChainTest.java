@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (c) 2012 TH4 SYSTEMS GmbH and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jens Reimann (TH4 SYSTEMS GmbH) - initial API and implementation
+ *******************************************************************************/
+package org.openscada.ui.breadcrumbs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that a new input only rebuilds the changed suffix of the chain.
+ */
+public class BreadcrumbViewerChainTest {
+
+	private static final int[] DEPTHS = new int[] { 4, 32, 256 };
+
+	private Shell fShell;
+	private BreadcrumbTestViewer fViewer;
+
+	@Before
+	public void setUp() {
+		this.fShell = new Shell(Display.getDefault());
+		this.fShell.setSize(600, 100);
+		this.fViewer = new BreadcrumbTestViewer(this.fShell, SWT.NONE);
+	}
+
+	@After
+	public void tearDown() {
+		this.fShell.dispose();
+	}
+
+	@Test
+	public void testSharedPrefixIsKept() {
+		this.fViewer.setInput(new String[] { "a", "b", "c", "d" }); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		final BreadcrumbItem a = this.fViewer.getItem(0);
+		final BreadcrumbItem b = this.fViewer.getItem(1);
+		this.fViewer.resetCounters();
+
+		this.fViewer.setInput(new String[] { "a", "b", "x", "y" }); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+
+		assertEquals(4, this.fViewer.getItemCount());
+		assertSame(a, this.fViewer.getItem(0));
+		assertSame(b, this.fViewer.getItem(1));
+		assertEquals("x", this.fViewer.getItem(2).getText()); //$NON-NLS-1$
+		assertEquals("y", this.fViewer.getItem(3).getText()); //$NON-NLS-1$
+
+		// only the changed suffix is labeled, no item is created
+		assertEquals(2, this.fViewer.fLabelProvider.fLabelCount);
+		assertEquals(0, this.fViewer.getItemPoolMissCount());
+	}
+
+	@Test
+	public void testSameInputLabelsNothing() {
+		this.fViewer.setInput(new String[] { "a", "b", "c" }); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		this.fViewer.resetCounters();
+
+		this.fViewer.setInput(new String[] { "a", "b", "c" }); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+		assertEquals(0, this.fViewer.fLabelProvider.fLabelCount);
+		assertEquals(0, this.fViewer.getItemPoolMissCount());
+	}
+
+	@Test
+	public void testShorterChainDropsSuffix() {
+		this.fViewer.setInput(new String[] { "a", "b", "c", "d" }); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		final BreadcrumbItem a = this.fViewer.getItem(0);
+		this.fViewer.resetCounters();
+
+		this.fViewer.setInput(new String[] { "a", "b" }); //$NON-NLS-1$ //$NON-NLS-2$
+
+		assertEquals(2, this.fViewer.getItemCount());
+		assertSame(a, this.fViewer.getItem(0));
+		assertEquals(0, this.fViewer.fLabelProvider.fLabelCount);
+	}
+
+	@Test
+	public void testLeafChangeCostIsFlat() {
+		for (int i = 0; i < DEPTHS.length; i++) {
+			this.fViewer.setInput(createChain(DEPTHS[i], "leaf")); //$NON-NLS-1$
+			this.fViewer.resetCounters();
+
+			this.fViewer.setInput(createChain(DEPTHS[i], "sibling")); //$NON-NLS-1$
+
+			// the same work at every depth: one label, no new item
+			assertEquals(DEPTHS[i], this.fViewer.getItemCount());
+			assertEquals(1, this.fViewer.fLabelProvider.fLabelCount);
+			assertEquals(0, this.fViewer.getItemPoolMissCount());
+			assertEquals("sibling", this.fViewer.getItem(DEPTHS[i] - 1) //$NON-NLS-1$
+					.getText());
+		}
+	}
+
+	/**
+	 * Returns a chain of the given depth ending with the given leaf.
+	 */
+	private static String[] createChain(final int depth, final String leaf) {
+		final String[] chain = new String[depth];
+		for (int i = 0; i < depth - 1; i++) {
+			chain[i] = "level " + i; //$NON-NLS-1$
+		}
+		chain[depth - 1] = leaf;
+		return chain;
+	}
+}
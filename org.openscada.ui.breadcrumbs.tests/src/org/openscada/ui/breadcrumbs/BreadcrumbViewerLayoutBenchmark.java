@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2012 TH4 SYSTEMS GmbH and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jens Reimann (TH4 SYSTEMS GmbH) - initial API and implementation
+ *******************************************************************************/
+package org.openscada.ui.breadcrumbs;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+import org.junit.Test;
+
+/**
+ * A benchmark of laying out a {@link BreadcrumbViewer} for chains of 10 to
+ * 1000 levels. It needs a display and is run as a JUnit plug-in test.
+ * <p>
+ * For each depth it measures changing the label of the last item between two
+ * widths, which lays out only that item. It also measures laying out the
+ * whole breadcrumb with flushed caches, as a resize of the workbench window
+ * does, and computing its preferred size, which are the passes of the
+ * {@link BreadcrumbLayout}.
+ * </p>
+ */
+public class BreadcrumbViewerLayoutBenchmark {
+
+	private static final int[] DEPTHS = new int[] { 10, 100, 1000 };
+
+	private static final int ITERATIONS = 200;
+
+	@Test
+	public void benchmarkLayout() {
+		System.out.println("depth\tleaf label ns/op\tlayout ns/op\tcompute size ns/op"); //$NON-NLS-1$
+		for (int i = 0; i < DEPTHS.length; i++) {
+			final String[] chain = createChain(DEPTHS[i]);
+			final Shell shell = new Shell(Display.getDefault());
+			try {
+				shell.setSize(800, 100);
+				final BreadcrumbTestViewer viewer = new BreadcrumbTestViewer(
+						shell, SWT.NONE);
+				viewer.setInput(chain);
+				shell.open();
+
+				System.out.println(DEPTHS[i] + "\t" //$NON-NLS-1$
+						+ measureLeafLabel(viewer, chain) + "\t" //$NON-NLS-1$
+						+ measureLayout(viewer) + "\t" //$NON-NLS-1$
+						+ measureComputeSize(viewer));
+			} finally {
+				shell.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Changes the label of the last item between two widths and returns the
+	 * average time of one change.
+	 */
+	private static long measureLeafLabel(final BreadcrumbTestViewer viewer,
+			final String[] chain) {
+		final String leaf = chain[chain.length - 1];
+		final long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			viewer.fLabelProvider.fSuffix = (i & 1) == 0 ? " grown" : ""; //$NON-NLS-1$ //$NON-NLS-2$
+			viewer.update(leaf, null);
+		}
+		return (System.nanoTime() - start) / ITERATIONS;
+	}
+
+	/**
+	 * Lays out the whole breadcrumb, flushing all cached sizes, and returns the
+	 * average time of one layout.
+	 */
+	private static long measureLayout(final BreadcrumbTestViewer viewer) {
+		final Composite container = (Composite) viewer.getControl();
+		final long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			container.layout(true, true);
+		}
+		return (System.nanoTime() - start) / ITERATIONS;
+	}
+
+	/**
+	 * Computes the preferred size of the breadcrumb, flushing all cached
+	 * sizes, and returns the average time of one computation.
+	 */
+	private static long measureComputeSize(final BreadcrumbTestViewer viewer) {
+		final Composite container = (Composite) viewer.getControl();
+		final long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			container.computeSize(SWT.DEFAULT, SWT.DEFAULT, true);
+		}
+		return (System.nanoTime() - start) / ITERATIONS;
+	}
+
+	private static String[] createChain(final int depth) {
+		final String[] chain = new String[depth];
+		for (int i = 0; i < depth; i++) {
+			chain[i] = "level " + i; //$NON-NLS-1$
+		}
+		return chain;
+	}
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (c) 2012 TH4 SYSTEMS GmbH and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jens Reimann (TH4 SYSTEMS GmbH) - initial API and implementation
+ *******************************************************************************/
+package org.openscada.ui.breadcrumbs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import org.eclipse.jface.viewers.ITreeSelection;
+import org.eclipse.jface.viewers.StructuredSelection;
+import org.eclipse.jface.viewers.TreePath;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the paths of the items are assigned when the chain is built and
+ * are not computed again from the content.
+ */
+public class BreadcrumbViewerPathTest {
+
+	private static final int[] DEPTHS = new int[] { 4, 32, 256 };
+
+	private Shell fShell;
+	private BreadcrumbTestViewer fViewer;
+
+	@Before
+	public void setUp() {
+		this.fShell = new Shell(Display.getDefault());
+		this.fShell.setSize(600, 100);
+		this.fViewer = new BreadcrumbTestViewer(this.fShell, SWT.NONE);
+		this.fViewer.setInput(new String[] { "a", "b", "c", "d" }); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	}
+
+	@After
+	public void tearDown() {
+		this.fShell.dispose();
+	}
+
+	@Test
+	public void testItemPaths() {
+		final TreePath path = new TreePath(new Object[] { "a", "b", "c" }); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		final BreadcrumbItem item = this.fViewer.getItem(2);
+		assertEquals(path, item.getPath());
+		assertSame(item.getPath(), this.fViewer.getTreePathFromItem(item));
+	}
+
+	@Test
+	public void testSelectionUsesCachedPath() {
+		this.fViewer.setSelection(new StructuredSelection("c")); //$NON-NLS-1$
+		this.fViewer.resetCounters();
+
+		final ITreeSelection selection = (ITreeSelection) this.fViewer
+				.getSelection();
+
+		assertEquals(1, selection.getPaths().length);
+		assertSame(this.fViewer.getItem(2).getPath(), selection.getPaths()[0]);
+		assertEquals(0, this.fViewer.fContentProvider.fChildrenCount);
+	}
+
+	@Test
+	public void testRefreshUsesCachedPaths() {
+		this.fViewer.resetCounters();
+
+		this.fViewer.refresh();
+
+		// every item is labeled again, the content is not asked
+		assertEquals(4, this.fViewer.fLabelProvider.fLabelCount);
+		assertEquals(0, this.fViewer.fContentProvider.fChildrenCount);
+		assertEquals(0, this.fViewer.fContentProvider.fParentsCount);
+		assertLabeledWithItemPaths();
+	}
+
+	@Test
+	public void testRefreshBuildsNoPaths() {
+		for (int i = 0; i < DEPTHS.length; i++) {
+			final String[] chain = new String[DEPTHS[i]];
+			for (int j = 0; j < chain.length; j++) {
+				chain[j] = "level " + j; //$NON-NLS-1$
+			}
+			this.fViewer.setInput(chain);
+			this.fViewer.resetCounters();
+
+			this.fViewer.refresh();
+
+			/*
+			 * A path built for an item copies all of its segments, which would
+			 * make a refresh allocate quadratically in the depth. With the
+			 * paths of the items reused it only allocates a label per item.
+			 */
+			assertEquals(DEPTHS[i], this.fViewer.fLabelProvider.fLabelCount);
+			assertEquals(0, this.fViewer.fContentProvider.fParentsCount);
+			assertLabeledWithItemPaths();
+		}
+	}
+
+	@Test
+	public void testPathsFollowInput() {
+		this.fViewer.setInput(new String[] { "a", "x", "y" }); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+		assertEquals(new TreePath(new Object[] { "a", "x", "y" }), this.fViewer //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				.getItem(2).getPath());
+	}
+
+	/**
+	 * Asserts that the label provider was given the path stored in each item
+	 * and not a newly built one.
+	 */
+	private void assertLabeledWithItemPaths() {
+		final List paths = this.fViewer.fLabelProvider.fLabeledPaths;
+		assertEquals(this.fViewer.getItemCount(), paths.size());
+		for (int i = 0; i < paths.size(); i++) {
+			assertSame(this.fViewer.getItem(i).getPath(), paths.get(i));
+		}
+	}
+}
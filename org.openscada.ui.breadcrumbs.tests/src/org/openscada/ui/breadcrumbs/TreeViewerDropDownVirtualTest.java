@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Copyright (c) 2012 TH4 SYSTEMS GmbH and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jens Reimann (TH4 SYSTEMS GmbH) - initial API and implementation
+ *******************************************************************************/
+package org.openscada.ui.breadcrumbs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.eclipse.jface.viewers.ITreePathContentProvider;
+import org.eclipse.jface.viewers.LabelProvider;
+import org.eclipse.jface.viewers.TreePath;
+import org.eclipse.jface.viewers.TreeViewer;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Tree;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that a virtual {@link TreeViewerDropDown} with a
+ * {@link LazyTreePathContentProvider} only creates the rows it shows, however
+ * many siblings they have.
+ */
+public class TreeViewerDropDownVirtualTest {
+
+	private static final int SIBLINGS = 100000;
+
+	/**
+	 * Serves {@value TreeViewerDropDownVirtualTest#SIBLINGS} top-level
+	 * elements, the first of which has two children, and counts how often the
+	 * children are fetched.
+	 */
+	private static final class SiblingContentProvider implements
+			ITreePathContentProvider {
+
+		int fFetchCount;
+
+		@Override
+		public Object[] getElements(final Object inputElement) {
+			this.fFetchCount++;
+			final Object[] elements = new Object[SIBLINGS];
+			for (int i = 0; i < elements.length; i++) {
+				elements[i] = "sibling " + i; //$NON-NLS-1$
+			}
+			return elements;
+		}
+
+		@Override
+		public Object[] getChildren(final TreePath parentPath) {
+			this.fFetchCount++;
+			return new Object[] { "x", "y" }; //$NON-NLS-1$ //$NON-NLS-2$
+		}
+
+		@Override
+		public boolean hasChildren(final TreePath path) {
+			return "sibling 0".equals(path.getLastSegment()); //$NON-NLS-1$
+		}
+
+		@Override
+		public TreePath[] getParents(final Object element) {
+			return new TreePath[0];
+		}
+
+		@Override
+		public void inputChanged(final Viewer viewer, final Object oldInput,
+				final Object newInput) {
+		}
+
+		@Override
+		public void dispose() {
+		}
+	}
+
+	/**
+	 * Counts how often a row is labeled.
+	 */
+	private static final class CountingLabelProvider extends LabelProvider {
+
+		int fLabelCount;
+
+		@Override
+		public String getText(final Object element) {
+			this.fLabelCount++;
+			return super.getText(element);
+		}
+	}
+
+	/**
+	 * A viewer whose drop downs show the siblings in a virtual tree.
+	 */
+	private static final class VirtualTestViewer extends BreadcrumbTestViewer {
+
+		final SiblingContentProvider fSiblings = new SiblingContentProvider();
+		final CountingLabelProvider fLabels = new CountingLabelProvider();
+		TreeViewer fTreeViewer;
+
+		public VirtualTestViewer(final Composite parent) {
+			super(parent, SWT.NONE);
+		}
+
+		@Override
+		protected Control createDropDown(final Composite parent,
+				final IBreadcrumbDropDownSite site, final TreePath path) {
+			final TreeViewerDropDown dropDown = new TreeViewerDropDown() {
+				@Override
+				protected TreeViewer createTreeViewer(
+						final Composite composite, final int style,
+						final TreePath path) {
+					final TreeViewer viewer = new TreeViewer(composite, style);
+					viewer.setUseHashlookup(true);
+					viewer.setContentProvider(wrapLazyContentProvider(VirtualTestViewer.this.fSiblings));
+					viewer.setLabelProvider(VirtualTestViewer.this.fLabels);
+					viewer.setInput(path);
+					VirtualTestViewer.this.fTreeViewer = viewer;
+					return viewer;
+				}
+			};
+			dropDown.setVirtual(true);
+			return dropDown.createDropDown(parent, site, path);
+		}
+	}
+
+	private Shell fShell;
+	private VirtualTestViewer fViewer;
+
+	@Before
+	public void setUp() {
+		this.fShell = new Shell(Display.getDefault());
+		this.fShell.setSize(600, 100);
+		this.fViewer = new VirtualTestViewer(this.fShell);
+		this.fViewer.setInput(new String[] { "a", "b" }); //$NON-NLS-1$ //$NON-NLS-2$
+		this.fShell.open();
+	}
+
+	@After
+	public void tearDown() {
+		this.fShell.dispose();
+	}
+
+	@Test
+	public void testOnlyVisibleRowsAreCreated() {
+		this.fViewer.getItem(0).openDropDownMenu();
+		final Tree tree = this.fViewer.fTreeViewer.getTree();
+		flushEvents();
+
+		assertTrue((tree.getStyle() & SWT.VIRTUAL) != 0);
+		assertEquals(SIBLINGS, tree.getItemCount());
+		assertEquals(1, this.fViewer.fSiblings.fFetchCount);
+		// only the rows fitting into the drop down are labeled
+		assertTrue(this.fViewer.fLabels.fLabelCount < 1000);
+	}
+
+	@Test
+	public void testRowIsCreatedWhenShown() {
+		this.fViewer.getItem(0).openDropDownMenu();
+		final Tree tree = this.fViewer.fTreeViewer.getTree();
+		flushEvents();
+		final int labelCount = this.fViewer.fLabels.fLabelCount;
+
+		final int index = SIBLINGS / 2;
+		tree.setTopItem(tree.getItem(index));
+		flushEvents();
+
+		assertEquals("sibling " + index, tree.getItem(index).getText()); //$NON-NLS-1$
+		assertTrue(this.fViewer.fLabels.fLabelCount - labelCount < 1000);
+		// the siblings are not fetched again
+		assertEquals(1, this.fViewer.fSiblings.fFetchCount);
+	}
+
+	@Test
+	public void testExpandFetchesChildren() {
+		this.fViewer.getItem(0).openDropDownMenu();
+		final TreeViewer viewer = this.fViewer.fTreeViewer;
+		flushEvents();
+
+		viewer.expandToLevel(new TreePath(new Object[] { "sibling 0" }), 1); //$NON-NLS-1$
+		flushEvents();
+
+		assertEquals(2, viewer.getTree().getItem(0).getItemCount());
+		assertEquals(2, this.fViewer.fSiblings.fFetchCount);
+	}
+
+	private static void flushEvents() {
+		final Display display = Display.getDefault();
+		while (display.readAndDispatch()) {
+			// process the paint and set data events of the tree
+		}
+	}
+}
@@ -52,6 +52,14 @@ public abstract class AbstractBreadcrumb {
 	private Listener fDisplayFocusListener;
 	private Listener fDisplayKeyListener;
 
+	private boolean fCoalesceInput;
+	private int fMinimumInputInterval;
+	private Object fPendingInput;
+	private Runnable fInputUpdate;
+	private long fLastInputUpdate;
+	private long fAppliedInputCount;
+	private long fDroppedInputCount;
+
 	public AbstractBreadcrumb() {
 	}
 
@@ -103,6 +111,9 @@ public abstract class AbstractBreadcrumb {
 
 	/**
 	 * Set the input of the breadcrumb to the given element
+	 * <p>
+	 * If input coalescing is enabled the input is applied later.
+	 * </p>
 	 * 
 	 * @param element
 	 *            the input element can be <code>null</code>
@@ -113,6 +124,172 @@ public abstract class AbstractBreadcrumb {
 			return;
 		}
 
+		if (!this.fCoalesceInput) {
+			doSetInput(element);
+			return;
+		}
+
+		if (this.fPendingInput != null) {
+			this.fDroppedInputCount++;
+		}
+		this.fPendingInput = element;
+
+		if (this.fInputUpdate == null) {
+			scheduleInputUpdate();
+		}
+	}
+
+	/**
+	 * Sets whether calls to {@link #setInput(Object)} are coalesced.
+	 * <p>
+	 * When enabled, the input is applied asynchronously and only the latest
+	 * input passed since the last update is shown. Updates are at least
+	 * {@link #setMinimumInputInterval(int) the minimum input interval} apart.
+	 * When disabled, an input which is still pending is applied right away.
+	 * </p>
+	 * 
+	 * @param coalesce
+	 *            <code>true</code> to coalesce input changes
+	 */
+	public void setCoalesceInput(final boolean coalesce) {
+		this.fCoalesceInput = coalesce;
+		if (!coalesce && this.fInputUpdate != null) {
+			cancelInputUpdate();
+			applyPendingInput();
+		}
+	}
+
+	/**
+	 * Tells whether calls to {@link #setInput(Object)} are coalesced.
+	 * 
+	 * @return <code>true</code> if input changes are coalesced
+	 */
+	public boolean isCoalesceInput() {
+		return this.fCoalesceInput;
+	}
+
+	/**
+	 * Sets the minimum time between two input updates while input coalescing
+	 * is enabled.
+	 * 
+	 * @param milliseconds
+	 *            the minimum interval, <code>0</code> applies the input with
+	 *            the next run of the event loop
+	 */
+	public void setMinimumInputInterval(final int milliseconds) {
+		this.fMinimumInputInterval = Math.max(0, milliseconds);
+	}
+
+	/**
+	 * Returns the minimum time between two input updates while input
+	 * coalescing is enabled.
+	 * 
+	 * @return the minimum interval in milliseconds
+	 */
+	public int getMinimumInputInterval() {
+		return this.fMinimumInputInterval;
+	}
+
+	/**
+	 * Returns the number of coalesced input updates which have been applied.
+	 * 
+	 * @return the number of applied input updates
+	 */
+	public long getAppliedInputCount() {
+		return this.fAppliedInputCount;
+	}
+
+	/**
+	 * Returns the number of inputs which have been replaced by a newer input
+	 * before they could be applied.
+	 * 
+	 * @return the number of dropped input updates
+	 */
+	public long getDroppedInputCount() {
+		return this.fDroppedInputCount;
+	}
+
+	/**
+	 * Resets the applied and dropped input counters.
+	 */
+	public void resetInputCounters() {
+		this.fAppliedInputCount = 0;
+		this.fDroppedInputCount = 0;
+	}
+
+	/**
+	 * Schedules the update of the coalesced input, honoring the minimum input
+	 * interval.
+	 */
+	private void scheduleInputUpdate() {
+		final Runnable update = new Runnable() {
+			@Override
+			public void run() {
+				if (AbstractBreadcrumb.this.fInputUpdate != this) {
+					// the update has been canceled
+					return;
+				}
+
+				AbstractBreadcrumb.this.fInputUpdate = null;
+				applyPendingInput();
+			}
+		};
+		this.fInputUpdate = update;
+
+		final Display display = this.fBreadcrumbViewer.getControl()
+				.getDisplay();
+		final long delay = this.fLastInputUpdate + this.fMinimumInputInterval
+				- System.currentTimeMillis();
+		if (delay > 0) {
+			display.timerExec((int) delay, update);
+		} else {
+			display.asyncExec(update);
+		}
+	}
+
+	/**
+	 * Cancels the scheduled update of the coalesced input. The pending input
+	 * is kept.
+	 * <p>
+	 * A runnable queued with <code>asyncExec()</code> cannot be removed from
+	 * the queue, it does nothing when it runs because it is no longer the
+	 * current update.
+	 * </p>
+	 */
+	private void cancelInputUpdate() {
+		if (this.fInputUpdate == null) {
+			return;
+		}
+
+		Display.getDefault().timerExec(-1, this.fInputUpdate);
+		this.fInputUpdate = null;
+	}
+
+	/**
+	 * Applies the latest input which was passed to {@link #setInput(Object)}
+	 * while input coalescing was enabled.
+	 */
+	private void applyPendingInput() {
+		final Object element = this.fPendingInput;
+		this.fPendingInput = null;
+		if (element == null || this.fBreadcrumbViewer == null
+				|| this.fBreadcrumbViewer.getControl().isDisposed()) {
+			return;
+		}
+
+		this.fLastInputUpdate = System.currentTimeMillis();
+		this.fAppliedInputCount++;
+		doSetInput(element);
+	}
+
+	/**
+	 * Shows the given element, or refreshes the viewer if it is the current
+	 * input already.
+	 * 
+	 * @param element
+	 *            the input element, not <code>null</code>
+	 */
+	private void doSetInput(final Object element) {
 		final Object input = this.fBreadcrumbViewer.getInput();
 		if (input == element || element.equals(input)) {
 			refresh();
@@ -235,6 +412,9 @@ public abstract class AbstractBreadcrumb {
 	 * Dispose all resources hold by this breadcrumb.
 	 */
 	public void dispose() {
+		cancelInputUpdate();
+		this.fPendingInput = null;
+
 		if (this.fDisplayFocusListener != null) {
 			Display.getDefault().removeFilter(SWT.FocusIn,
 					this.fDisplayFocusListener);
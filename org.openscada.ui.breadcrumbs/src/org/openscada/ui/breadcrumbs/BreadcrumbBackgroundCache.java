@@ -0,0 +1,253 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *     Pawel Piech (Wind River) - adapted breadcrumb for use in Debug view (Bug 252677)
+ *     Jens Reimann (TH4 SYSTEMS GmbH) - extracted to standalone bundle
+ *******************************************************************************/
+package org.openscada.ui.breadcrumbs;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.RGB;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * A per display cache of the gradient images used as breadcrumb background.
+ * <p>
+ * Images are shared by all breadcrumb viewers of the same height and are
+ * reference counted. The key of an image contains the blended system colors,
+ * so viewers acquiring an image after a change of the system colors get a new
+ * image, while the old one is disposed when its last user releases it.
+ * </p>
+ */
+final class BreadcrumbBackgroundCache {
+
+	private static final String DATA_KEY = BreadcrumbBackgroundCache.class
+			.getName();
+
+	private static final int WIDTH = 50;
+
+	/**
+	 * The cache key, the image height and the colors used to draw the
+	 * gradient.
+	 */
+	private static final class Key {
+
+		private final int fHeight;
+		private final RGB[] fColors;
+
+		public Key(final int height, final RGB[] colors) {
+			this.fHeight = height;
+			this.fColors = colors;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * this.fHeight + Arrays.hashCode(this.fColors);
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+
+			final Key other = (Key) obj;
+			return this.fHeight == other.fHeight
+					&& Arrays.equals(this.fColors, other.fColors);
+		}
+	}
+
+	private static final class Entry {
+
+		private final Key fKey;
+		private final Image fImage;
+		private int fCount;
+
+		public Entry(final Key key, final Image image) {
+			this.fKey = key;
+			this.fImage = image;
+		}
+	}
+
+	private final Display fDisplay;
+
+	private final Map fEntries = new HashMap();
+	private final Map fImages = new HashMap();
+
+	/**
+	 * Returns the cache of the given display.
+	 * 
+	 * @param display
+	 *            the display
+	 * @return the cache, never <code>null</code>
+	 */
+	public static BreadcrumbBackgroundCache getInstance(final Display display) {
+		BreadcrumbBackgroundCache cache = (BreadcrumbBackgroundCache) display
+				.getData(DATA_KEY);
+		if (cache == null) {
+			final BreadcrumbBackgroundCache newCache = new BreadcrumbBackgroundCache(
+					display);
+			display.setData(DATA_KEY, newCache);
+			display.disposeExec(new Runnable() {
+				@Override
+				public void run() {
+					newCache.dispose();
+				}
+			});
+			cache = newCache;
+		}
+		return cache;
+	}
+
+	private BreadcrumbBackgroundCache(final Display display) {
+		this.fDisplay = display;
+	}
+
+	/**
+	 * Returns the background image for the given height and the current system
+	 * colors. Each call must be balanced by a call to {@link #release(Image)}.
+	 * 
+	 * @param height
+	 *            the height of the image, must be greater than zero
+	 * @return the shared image
+	 */
+	public Image acquire(final int height) {
+		final Key key = new Key(height, getColors());
+
+		Entry entry = (Entry) this.fEntries.get(key);
+		if (entry == null) {
+			entry = new Entry(key, createGradientImage(height, key.fColors));
+			this.fEntries.put(key, entry);
+			this.fImages.put(entry.fImage, entry);
+		}
+
+		entry.fCount++;
+		return entry.fImage;
+	}
+
+	/**
+	 * Releases an image returned by {@link #acquire(int)}. The image is
+	 * disposed when it is not used anymore.
+	 * 
+	 * @param image
+	 *            the image to release
+	 */
+	public void release(final Image image) {
+		final Entry entry = (Entry) this.fImages.get(image);
+		if (entry == null) {
+			return;
+		}
+
+		entry.fCount--;
+		if (entry.fCount <= 0) {
+			this.fImages.remove(image);
+			this.fEntries.remove(entry.fKey);
+			image.dispose();
+		}
+	}
+
+	private void dispose() {
+		for (final Iterator i = this.fImages.keySet().iterator(); i.hasNext();) {
+			((Image) i.next()).dispose();
+		}
+		this.fImages.clear();
+		this.fEntries.clear();
+	}
+
+	/**
+	 * Returns the blended colors of the gradient, based on the current system
+	 * colors.
+	 * 
+	 * @return the gradient colors C to H
+	 */
+	private RGB[] getColors() {
+		return new RGB[] {
+				blend(SWT.COLOR_WIDGET_BACKGROUND, SWT.COLOR_LIST_BACKGROUND, 35),
+				blend(SWT.COLOR_WIDGET_BACKGROUND, SWT.COLOR_LIST_BACKGROUND, 45),
+				blend(SWT.COLOR_WIDGET_BACKGROUND, SWT.COLOR_LIST_BACKGROUND, 80),
+				blend(SWT.COLOR_WIDGET_BACKGROUND, SWT.COLOR_LIST_BACKGROUND, 70),
+				blend(SWT.COLOR_WIDGET_BACKGROUND, SWT.COLOR_WHITE, 45),
+				blend(SWT.COLOR_WIDGET_NORMAL_SHADOW, SWT.COLOR_LIST_BACKGROUND,
+						35) };
+	}
+
+	private RGB blend(final int color1, final int color2, final int ratio) {
+		final RGB rgb1 = this.fDisplay.getSystemColor(color1).getRGB();
+		final RGB rgb2 = this.fDisplay.getSystemColor(color2).getRGB();
+
+		return BreadcrumbViewer.blend(rgb2, rgb1, ratio);
+	}
+
+	/**
+	 * The image to use for the breadcrumb background as specified in
+	 * https://bugs.eclipse.org/bugs/show_bug.cgi?id=221477
+	 * 
+	 * @param height
+	 *            the height of the image to create
+	 * @param colors
+	 *            the colors as returned by {@link #getColors()}
+	 * @return the image for the breadcrumb background
+	 */
+	private Image createGradientImage(final int height, final RGB[] colors) {
+		final Image result = new Image(this.fDisplay, WIDTH, height);
+
+		final GC gc = new GC(result);
+
+		final Color colorC = new Color(this.fDisplay, colors[0]);
+		final Color colorD = new Color(this.fDisplay, colors[1]);
+		final Color colorE = new Color(this.fDisplay, colors[2]);
+		final Color colorF = new Color(this.fDisplay, colors[3]);
+		final Color colorG = new Color(this.fDisplay, colors[4]);
+		final Color colorH = new Color(this.fDisplay, colors[5]);
+
+		try {
+			drawLine(0, colorC, gc);
+			drawLine(1, colorC, gc);
+
+			gc.setForeground(colorD);
+			gc.setBackground(colorE);
+			gc.fillGradientRectangle(0, 2, WIDTH, 2 + 8, true);
+
+			gc.setBackground(colorE);
+			gc.fillRectangle(0, 2 + 9, WIDTH, height - 4);
+
+			drawLine(height - 3, colorF, gc);
+			drawLine(height - 2, colorG, gc);
+			drawLine(height - 1, colorH, gc);
+
+		} finally {
+			gc.dispose();
+
+			colorC.dispose();
+			colorD.dispose();
+			colorE.dispose();
+			colorF.dispose();
+			colorG.dispose();
+			colorH.dispose();
+		}
+
+		return result;
+	}
+
+	private void drawLine(final int position, final Color color, final GC gc) {
+		gc.setForeground(color);
+		gc.drawLine(0, position, WIDTH, position);
+	}
+}
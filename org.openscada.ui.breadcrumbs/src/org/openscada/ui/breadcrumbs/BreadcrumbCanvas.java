@@ -0,0 +1,547 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *     Pawel Piech (Wind River) - adapted breadcrumb for use in Debug view (Bug 252677)
+ *     Jens Reimann (TH4 SYSTEMS GmbH) - extracted to standalone bundle
+ *******************************************************************************/
+package org.openscada.ui.breadcrumbs;
+
+import org.eclipse.jface.resource.ImageDescriptor;
+import org.eclipse.jface.resource.JFaceResources;
+import org.eclipse.jface.resource.ResourceManager;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.accessibility.AccessibleAdapter;
+import org.eclipse.swt.accessibility.AccessibleEvent;
+import org.eclipse.swt.events.DisposeEvent;
+import org.eclipse.swt.events.DisposeListener;
+import org.eclipse.swt.events.FocusEvent;
+import org.eclipse.swt.events.FocusListener;
+import org.eclipse.swt.events.KeyEvent;
+import org.eclipse.swt.events.KeyListener;
+import org.eclipse.swt.events.MenuDetectEvent;
+import org.eclipse.swt.events.MenuDetectListener;
+import org.eclipse.swt.events.MouseAdapter;
+import org.eclipse.swt.events.MouseEvent;
+import org.eclipse.swt.events.MouseMoveListener;
+import org.eclipse.swt.events.MouseTrackAdapter;
+import org.eclipse.swt.events.PaintEvent;
+import org.eclipse.swt.events.PaintListener;
+import org.eclipse.swt.events.TraverseEvent;
+import org.eclipse.swt.events.TraverseListener;
+import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.graphics.Rectangle;
+import org.eclipse.swt.widgets.Canvas;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Shell;
+
+/**
+ * The single control of an owner drawn breadcrumb viewer, see
+ * {@link BreadcrumbViewer#BreadcrumbViewer(Composite, int, boolean)}.
+ * <p>
+ * The canvas paints the items, their drop down arrows, the selection and the
+ * focus itself and does its own hit-testing. The items do not create any
+ * widgets in this mode.
+ * </p>
+ */
+class BreadcrumbCanvas extends Canvas {
+
+	/**
+	 * The width of the drop down arrow area of an item.
+	 */
+	static final int ARROW_WIDTH = 16;
+
+	private static final int IMAGE_MARGIN = 2;
+	private static final int TEXT_MARGIN = 2;
+	private static final int MIN_HEIGHT = 22;
+
+	private final BreadcrumbViewer fViewer;
+	private final ResourceManager fResources;
+	private final ImageDescriptor fArrowDescriptor;
+	private final Image fArrowImage;
+
+	private BreadcrumbItem fFocusItem;
+	private BreadcrumbItem fToolTipItem;
+
+	public BreadcrumbCanvas(final BreadcrumbViewer viewer,
+			final Composite parent, final int style) {
+		super(parent, style | SWT.DOUBLE_BUFFERED);
+
+		this.fViewer = viewer;
+
+		final boolean ltr = (getStyle() & SWT.RIGHT_TO_LEFT) == 0
+				&& (viewer.getStyle() & SWT.RIGHT) == 0;
+		this.fResources = JFaceResources.getResources(getDisplay());
+		this.fArrowDescriptor = BreadcrumbItemDropDown
+				.createArrowImageDescriptor(ltr, getDisplay());
+		this.fArrowImage = this.fResources.createImage(this.fArrowDescriptor);
+
+		addPaintListener(new PaintListener() {
+			@Override
+			public void paintControl(final PaintEvent e) {
+				paint(e.gc);
+			}
+		});
+		addDisposeListener(new DisposeListener() {
+			@Override
+			public void widgetDisposed(final DisposeEvent e) {
+				BreadcrumbCanvas.this.fResources
+						.destroyImage(BreadcrumbCanvas.this.fArrowDescriptor);
+			}
+		});
+
+		installMouseListeners();
+		installKeyListeners();
+
+		getAccessible().addAccessibleListener(new AccessibleAdapter() {
+			@Override
+			public void getName(final AccessibleEvent e) {
+				final BreadcrumbItem item = BreadcrumbCanvas.this.fFocusItem;
+				e.result = item == null ? null : item.getText();
+			}
+		});
+	}
+
+	/*
+	 * @see org.eclipse.swt.widgets.Composite#computeSize(int, int, boolean)
+	 */
+	@Override
+	public Point computeSize(final int wHint, final int hHint,
+			final boolean changed) {
+		int width = 0;
+		for (int i = 0, size = this.fViewer.getItemCount(); i < size; i++) {
+			width += this.fViewer.getItem(i).getWidth();
+		}
+
+		final Rectangle trim = computeTrim(0, 0, wHint == SWT.DEFAULT ? width
+				: wHint, hHint == SWT.DEFAULT ? getItemHeight() : hHint);
+		return new Point(trim.width, trim.height);
+	}
+
+	/**
+	 * Assigns the bounds of all items and repaints the canvas.
+	 */
+	void layoutItems() {
+		final Rectangle area = getClientArea();
+
+		int x = area.x;
+		for (int i = 0, size = this.fViewer.getItemCount(); i < size; i++) {
+			final BreadcrumbItem item = this.fViewer.getItem(i);
+
+			int width = item.getWidth();
+			if (item.isLastItem()) {
+				width = Math.max(width, area.x + area.width - x);
+			}
+
+			item.setBounds(new Rectangle(x, area.y, width, area.height));
+			x += width;
+		}
+
+		redraw();
+	}
+
+	/**
+	 * Returns the width of the image area for the given image.
+	 * 
+	 * @param image
+	 *            the image, may be <code>null</code>
+	 * @return the width of the image area
+	 */
+	int getImageAreaWidth(final Image image) {
+		if (image == null) {
+			return 0;
+		}
+		return image.getBounds().width + 2 * IMAGE_MARGIN;
+	}
+
+	/**
+	 * Returns the width of the text area for the given text.
+	 * 
+	 * @param text
+	 *            the text, may be <code>null</code>
+	 * @return the width of the text area
+	 */
+	int getTextAreaWidth(final String text) {
+		if (text == null || text.length() == 0) {
+			return 0;
+		}
+
+		final GC gc = new GC(this);
+		try {
+			return gc.textExtent(text).x + 2 * TEXT_MARGIN;
+		} finally {
+			gc.dispose();
+		}
+	}
+
+	/**
+	 * Returns the height required by the items.
+	 * 
+	 * @return the height of an item
+	 */
+	private int getItemHeight() {
+		int height = MIN_HEIGHT;
+
+		final GC gc = new GC(this);
+		try {
+			height = Math.max(height, gc.getFontMetrics().getHeight() + 2
+					* TEXT_MARGIN + 1);
+		} finally {
+			gc.dispose();
+		}
+
+		for (int i = 0, size = this.fViewer.getItemCount(); i < size; i++) {
+			final Image image = this.fViewer.getItem(i).getImage();
+			if (image != null) {
+				height = Math.max(height, image.getBounds().height + 2
+						* IMAGE_MARGIN + 1);
+			}
+		}
+
+		return height;
+	}
+
+	/**
+	 * Returns the item which has the keyboard focus inside the canvas.
+	 * 
+	 * @return the focus item or <code>null</code>
+	 */
+	BreadcrumbItem getFocusItem() {
+		return this.fFocusItem;
+	}
+
+	/**
+	 * Sets or clears the keyboard focus of the given item.
+	 * 
+	 * @param item
+	 *            the item
+	 * @param state
+	 *            <code>true</code> if the item gets the focus
+	 */
+	void setFocusItem(final BreadcrumbItem item, final boolean state) {
+		if (state) {
+			if (this.fFocusItem != item) {
+				final BreadcrumbItem old = this.fFocusItem;
+				this.fFocusItem = item;
+				if (old != null) {
+					old.redraw();
+				}
+				item.redraw();
+			}
+			if (!isFocusControl()) {
+				setFocus();
+			}
+		} else if (this.fFocusItem == item) {
+			this.fFocusItem = null;
+			item.redraw();
+		}
+	}
+
+	/**
+	 * The given item has been disposed.
+	 * 
+	 * @param item
+	 *            the disposed item
+	 */
+	void itemDisposed(final BreadcrumbItem item) {
+		if (this.fFocusItem == item) {
+			this.fFocusItem = null;
+		}
+		if (this.fToolTipItem == item) {
+			this.fToolTipItem = null;
+			if (!isDisposed()) {
+				setToolTipText(null);
+			}
+		}
+	}
+
+	/**
+	 * Returns the item at the given point.
+	 * 
+	 * @param x
+	 *            the x coordinate inside the canvas
+	 * @param y
+	 *            the y coordinate inside the canvas
+	 * @return the item or <code>null</code>
+	 */
+	private BreadcrumbItem getItem(final int x, final int y) {
+		for (int i = 0, size = this.fViewer.getItemCount(); i < size; i++) {
+			final BreadcrumbItem item = this.fViewer.getItem(i);
+			if (item.getBounds().contains(x, y)) {
+				return item;
+			}
+		}
+		return null;
+	}
+
+	private void paint(final GC gc) {
+		final Rectangle clipping = gc.getClipping();
+		for (int i = 0, size = this.fViewer.getItemCount(); i < size; i++) {
+			final BreadcrumbItem item = this.fViewer.getItem(i);
+			final Rectangle bounds = item.getBounds();
+			if (bounds.intersects(clipping)) {
+				paintItem(gc, item, bounds);
+			}
+		}
+	}
+
+	private void paintItem(final GC gc, final BreadcrumbItem item,
+			final Rectangle bounds) {
+		if (item.isDropDownEnabled()) {
+			final Rectangle arrow = this.fArrowImage.getBounds();
+			gc.drawImage(this.fArrowImage, bounds.x + (ARROW_WIDTH - arrow.width)
+					/ 2, bounds.y + (bounds.height - arrow.height) / 2);
+		}
+
+		final int imageX = bounds.x + ARROW_WIDTH;
+		final int imageWidth = item.getImageWidth();
+		final int textX = imageX + imageWidth;
+		final boolean showText = item.isShowText()
+				&& item.getText().length() > 0;
+
+		// selection and focus mark the text, or the image if there is no text
+		final Rectangle marked;
+		if (showText) {
+			marked = new Rectangle(textX, bounds.y + 1, item.getTextWidth(),
+					bounds.height - 2);
+		} else {
+			marked = new Rectangle(imageX, bounds.y + 1, imageWidth,
+					bounds.height - 2);
+		}
+
+		Color foreground = getForeground();
+		if (item.isSelected()) {
+			gc.setBackground(getDisplay().getSystemColor(
+					SWT.COLOR_LIST_SELECTION));
+			gc.fillRectangle(marked);
+			foreground = getDisplay().getSystemColor(
+					SWT.COLOR_LIST_SELECTION_TEXT);
+		}
+
+		final Image image = item.getImage();
+		if (image != null) {
+			final Rectangle imageBounds = image.getBounds();
+			gc.drawImage(image, imageX + IMAGE_MARGIN, bounds.y
+					+ (bounds.height - imageBounds.height) / 2);
+		}
+
+		if (showText) {
+			gc.setForeground(foreground);
+			final int textHeight = gc.getFontMetrics().getHeight();
+			gc.drawText(item.getText(), textX + TEXT_MARGIN, bounds.y
+					+ (bounds.height - textHeight) / 2, true);
+		}
+
+		if (item == this.fFocusItem && isFocusControl()) {
+			gc.drawFocus(marked.x, marked.y, marked.width, marked.height);
+		}
+	}
+
+	private void installMouseListeners() {
+		addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseDown(final MouseEvent e) {
+				final BreadcrumbItem item = getItem(e.x, e.y);
+				if (item == null) {
+					return;
+				}
+
+				if (item.getArrowBounds().contains(e.x, e.y)) {
+					if (e.button == 1) {
+						item.activateDropDownMenu();
+					}
+					return;
+				}
+
+				// see also BreadcrumbItemDetails#addElementListener(Control)
+				final Shell shell = item.getDropDownShell();
+				BreadcrumbCanvas.this.fViewer.selectItem(item);
+				if (shell == null && e.button == 1 && e.stateMask == 0) {
+					BreadcrumbCanvas.this.fViewer.fireDoubleClick();
+				}
+			}
+		});
+
+		addMenuDetectListener(new MenuDetectListener() {
+			@Override
+			public void menuDetected(final MenuDetectEvent e) {
+				final Point point = toControl(e.x, e.y);
+				final BreadcrumbItem item = getItem(point.x, point.y);
+				if (item == null) {
+					return;
+				}
+
+				BreadcrumbCanvas.this.fViewer.selectItem(item);
+				BreadcrumbCanvas.this.fViewer.fireMenuDetect(e);
+			}
+		});
+
+		addMouseMoveListener(new MouseMoveListener() {
+			@Override
+			public void mouseMove(final MouseEvent e) {
+				final BreadcrumbItem item = getItem(e.x, e.y);
+				updateToolTip(item);
+				if (item != null && item.getArrowBounds().contains(e.x, e.y)) {
+					BreadcrumbCanvas.this.fViewer.prefetchDropDown(item);
+				}
+			}
+		});
+
+		addMouseTrackListener(new MouseTrackAdapter() {
+			@Override
+			public void mouseExit(final MouseEvent e) {
+				updateToolTip(null);
+			}
+		});
+	}
+
+	private void updateToolTip(final BreadcrumbItem item) {
+		if (item == this.fToolTipItem) {
+			return;
+		}
+
+		this.fToolTipItem = item;
+		setToolTipText(item == null ? null : item.getToolTip());
+	}
+
+	private void installKeyListeners() {
+		addTraverseListener(new TraverseListener() {
+			@Override
+			public void keyTraversed(final TraverseEvent e) {
+				switch (e.detail) {
+				case SWT.TRAVERSE_ARROW_NEXT:
+				case SWT.TRAVERSE_ARROW_PREVIOUS:
+					// handled by the key listener
+					e.doit = false;
+					break;
+				case SWT.TRAVERSE_TAB_NEXT:
+				case SWT.TRAVERSE_TAB_PREVIOUS:
+					final BreadcrumbItem item = BreadcrumbCanvas.this.fFocusItem;
+					if (item != null) {
+						int index = BreadcrumbCanvas.this.fViewer
+								.getIndexOfItem(item);
+						if (e.detail == SWT.TRAVERSE_TAB_NEXT) {
+							index++;
+						} else {
+							index--;
+						}
+
+						if (index > 0
+								&& index < BreadcrumbCanvas.this.fViewer
+										.getItemCount()) {
+							BreadcrumbCanvas.this.fViewer
+									.selectItem(BreadcrumbCanvas.this.fViewer
+											.getItem(index));
+						}
+					}
+					e.doit = true;
+					break;
+				default:
+					break;
+				}
+			}
+		});
+
+		addKeyListener(new KeyListener() {
+			@Override
+			public void keyPressed(final KeyEvent e) {
+				final BreadcrumbItem item = BreadcrumbCanvas.this.fFocusItem;
+				if (item == null) {
+					return;
+				}
+
+				// see also BreadcrumbItemDetails#installFocusComposite(Composite)
+				final BreadcrumbViewer viewer = BreadcrumbCanvas.this.fViewer;
+				switch (e.keyCode) {
+				case SWT.ARROW_LEFT:
+					if (item.isSelected()) {
+						viewer.doTraverse(false);
+						e.doit = false;
+					} else {
+						viewer.selectItem(item);
+					}
+					break;
+				case SWT.ARROW_RIGHT:
+					if (item.isSelected()) {
+						viewer.doTraverse(true);
+						e.doit = false;
+					} else {
+						viewer.selectItem(item);
+					}
+					break;
+				case SWT.ARROW_DOWN:
+				case SWT.ARROW_UP:
+				case SWT.KEYPAD_ADD:
+					if (!item.isSelected()) {
+						viewer.selectItem(item);
+					}
+					openDropDown(item);
+					e.doit = false;
+					break;
+				case SWT.CR:
+					if (!item.isSelected()) {
+						viewer.selectItem(item);
+					}
+					viewer.fireOpen();
+					break;
+				default:
+					if (e.character == ' ') {
+						if (!item.isSelected()) {
+							viewer.selectItem(item);
+						}
+						openDropDown(item);
+						e.doit = false;
+					}
+					break;
+				}
+			}
+
+			private void openDropDown(final BreadcrumbItem item) {
+				Shell shell = item.getDropDownShell();
+				if (shell == null) {
+					item.openDropDownMenu();
+					shell = item.getDropDownShell();
+				}
+				if (shell != null) {
+					shell.setFocus();
+				}
+			}
+
+			@Override
+			public void keyReleased(final KeyEvent e) {
+			}
+		});
+
+		addFocusListener(new FocusListener() {
+			@Override
+			public void focusGained(final FocusEvent e) {
+				if (BreadcrumbCanvas.this.fFocusItem == null) {
+					final int count = BreadcrumbCanvas.this.fViewer
+							.getItemCount();
+					if (count > 0) {
+						BreadcrumbCanvas.this.fFocusItem = BreadcrumbCanvas.this.fViewer
+								.getItem(count - 1);
+					}
+				}
+				if (BreadcrumbCanvas.this.fFocusItem != null) {
+					BreadcrumbCanvas.this.fFocusItem.redraw();
+				}
+			}
+
+			@Override
+			public void focusLost(final FocusEvent e) {
+				if (BreadcrumbCanvas.this.fFocusItem != null) {
+					BreadcrumbCanvas.this.fFocusItem.redraw();
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,303 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *     Pawel Piech (Wind River) - adapted breadcrumb for use in Debug view (Bug 252677)
+ *     Jens Reimann (TH4 SYSTEMS GmbH) - extracted to standalone bundle
+ *******************************************************************************/
+package org.openscada.ui.breadcrumbs;
+
+import org.eclipse.core.runtime.Assert;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.ControlAdapter;
+import org.eclipse.swt.events.ControlEvent;
+import org.eclipse.swt.events.ControlListener;
+import org.eclipse.swt.events.DisposeEvent;
+import org.eclipse.swt.events.DisposeListener;
+import org.eclipse.swt.events.ShellAdapter;
+import org.eclipse.swt.events.ShellEvent;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Listener;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Widget;
+import org.openscada.ui.breadcrumbs.internal.BreadcrumbsPlugin;
+
+/**
+ * The shell of a drop down menu together with the listeners closing it.
+ * <p>
+ * A shell which is not reusable is disposed when it is closed, like any other
+ * shell. A reusable shell is only hidden when it is closed, its content is
+ * disposed and the next drop down of the viewer creates new content inside
+ * it. The closer listeners are installed once for the lifetime of the shell.
+ * </p>
+ * 
+ * @see BreadcrumbViewer#setReuseDropDownShell(boolean)
+ */
+final class BreadcrumbDropDownShell {
+
+	/**
+	 * Tells whether this class is in debug mode.
+	 */
+	private static boolean DEBUG = BreadcrumbsPlugin.DEBUG
+			&& "true".equalsIgnoreCase(Platform.getDebugOption("org.eclipse.debug.ui/debug/breadcrumb")); //$NON-NLS-1$//$NON-NLS-2$
+
+	private final Shell fShell;
+	private final Composite fComposite;
+	private final boolean fReusable;
+
+	private BreadcrumbItemDropDown fOwner;
+	private boolean fIsResizingProgrammatically;
+
+	/**
+	 * Creates the shell of a drop down.
+	 * 
+	 * @param parent
+	 *            the shell of the breadcrumb
+	 * @param reusable
+	 *            <code>true</code> if the shell is hidden instead of disposed
+	 *            when it is closed
+	 */
+	public BreadcrumbDropDownShell(final Shell parent, final boolean reusable) {
+		this.fReusable = reusable;
+
+		this.fShell = new Shell(parent, SWT.RESIZE | SWT.TOOL | SWT.ON_TOP);
+		if (DEBUG) {
+			System.out.println("	creating new shell"); //$NON-NLS-1$
+		}
+
+		this.fShell.addControlListener(new ControlAdapter() {
+			@Override
+			public void controlResized(final ControlEvent e) {
+				final BreadcrumbItemDropDown owner = BreadcrumbDropDownShell.this.fOwner;
+				if (BreadcrumbDropDownShell.this.fIsResizingProgrammatically
+						|| owner == null) {
+					return;
+				}
+
+				owner.rememberHeight(BreadcrumbDropDownShell.this.fShell
+						.getSize().y);
+			}
+		});
+
+		final GridLayout layout = new GridLayout(1, false);
+		layout.marginHeight = 0;
+		layout.marginWidth = 0;
+		this.fShell.setLayout(layout);
+
+		this.fComposite = new Composite(this.fShell, SWT.NONE);
+		this.fComposite.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true,
+				true));
+		final GridLayout gridLayout = new GridLayout(1, false);
+		gridLayout.marginHeight = 0;
+		gridLayout.marginWidth = 0;
+		this.fComposite.setLayout(gridLayout);
+
+		installCloser(parent);
+	}
+
+	/**
+	 * Returns the shell.
+	 * 
+	 * @return the shell
+	 */
+	public Shell getShell() {
+		return this.fShell;
+	}
+
+	/**
+	 * Returns the composite the content of the drop down is created in.
+	 * 
+	 * @return the content composite
+	 */
+	public Composite getComposite() {
+		return this.fComposite;
+	}
+
+	/**
+	 * Tells whether the shell is hidden instead of disposed when it is closed.
+	 * 
+	 * @return <code>true</code> if the shell is reused
+	 */
+	public boolean isReusable() {
+		return this.fReusable;
+	}
+
+	/**
+	 * Tells whether the shell is disposed.
+	 * 
+	 * @return <code>true</code> if the shell is disposed
+	 */
+	public boolean isDisposed() {
+		return this.fShell.isDisposed();
+	}
+
+	/**
+	 * Sets the drop down which shows its content in the shell. The shell must
+	 * be closed.
+	 * 
+	 * @param owner
+	 *            the drop down opening the shell
+	 */
+	public void open(final BreadcrumbItemDropDown owner) {
+		this.fOwner = owner;
+	}
+
+	/**
+	 * Sets whether the shell is resized by the drop down, so that the size is
+	 * not remembered as the preferred size of the user.
+	 * 
+	 * @param resizing
+	 *            <code>true</code> while the size is set programmatically
+	 */
+	public void setResizingProgrammatically(final boolean resizing) {
+		this.fIsResizingProgrammatically = resizing;
+	}
+
+	/**
+	 * Disposes the shell, whether it is reusable or not.
+	 */
+	public void dispose() {
+		if (!this.fShell.isDisposed()) {
+			this.fShell.dispose();
+		}
+	}
+
+	/**
+	 * Hides a reusable shell and disposes its content.
+	 */
+	private void hide() {
+		this.fShell.setVisible(false);
+
+		final Control[] children = this.fComposite.getChildren();
+		for (int i = 0; i < children.length; i++) {
+			children[i].dispose();
+		}
+	}
+
+	/**
+	 * The closer closes the shell when the focus is lost or the parent shell
+	 * is moved or resized.
+	 */
+	private void installCloser(final Shell parent) {
+		final Shell shell = this.fShell;
+		final Listener focusListener = new Listener() {
+			@Override
+			public void handleEvent(final Event event) {
+				if (!shell.isVisible()) {
+					return;
+				}
+
+				final Widget focusElement = event.widget;
+				final boolean isFocusBreadcrumbTreeFocusWidget = focusElement == shell
+						|| focusElement instanceof Control
+						&& ((Control) focusElement).getShell() == shell;
+				final boolean isFocusWidgetParentShell = focusElement instanceof Control
+						&& ((Control) focusElement).getShell().getParent() == shell;
+
+				switch (event.type) {
+				case SWT.FocusIn:
+					if (DEBUG) {
+						System.out
+								.println("focusIn - is breadcrumb tree: " + isFocusBreadcrumbTreeFocusWidget); //$NON-NLS-1$
+					}
+
+					if (!isFocusBreadcrumbTreeFocusWidget
+							&& !isFocusWidgetParentShell) {
+						if (DEBUG) {
+							System.out
+									.println("==> closing shell since focus in other widget"); //$NON-NLS-1$
+						}
+						shell.close();
+					}
+					break;
+
+				case SWT.FocusOut:
+					if (DEBUG) {
+						System.out
+								.println("focusOut - is breadcrumb tree: " + isFocusBreadcrumbTreeFocusWidget); //$NON-NLS-1$
+					}
+
+					if (event.display.getActiveShell() == null) {
+						if (DEBUG) {
+							System.out
+									.println("==> closing shell since event.display.getActiveShell() != shell"); //$NON-NLS-1$
+						}
+						shell.close();
+					}
+					break;
+
+				default:
+					Assert.isTrue(false);
+				}
+			}
+		};
+
+		final Display display = shell.getDisplay();
+		display.addFilter(SWT.FocusIn, focusListener);
+		display.addFilter(SWT.FocusOut, focusListener);
+
+		final ControlListener controlListener = new ControlListener() {
+			@Override
+			public void controlMoved(final ControlEvent e) {
+				if (!shell.isDisposed() && shell.isVisible()) {
+					shell.close();
+				}
+			}
+
+			@Override
+			public void controlResized(final ControlEvent e) {
+				if (!shell.isDisposed() && shell.isVisible()) {
+					shell.close();
+				}
+			}
+		};
+		parent.addControlListener(controlListener);
+
+		shell.addDisposeListener(new DisposeListener() {
+			@Override
+			public void widgetDisposed(final DisposeEvent e) {
+				if (DEBUG) {
+					System.out.println("==> shell disposed"); //$NON-NLS-1$
+				}
+
+				display.removeFilter(SWT.FocusIn, focusListener);
+				display.removeFilter(SWT.FocusOut, focusListener);
+
+				if (!parent.isDisposed()) {
+					parent.removeControlListener(controlListener);
+				}
+			}
+		});
+		shell.addShellListener(new ShellAdapter() {
+			@Override
+			public void shellClosed(final ShellEvent e) {
+				if (DEBUG) {
+					System.out.println("==> shellClosed"); //$NON-NLS-1$
+				}
+
+				final BreadcrumbItemDropDown owner = BreadcrumbDropDownShell.this.fOwner;
+				BreadcrumbDropDownShell.this.fOwner = null;
+				if (owner != null) {
+					owner.menuClosed();
+				}
+
+				if (BreadcrumbDropDownShell.this.fReusable
+						&& !parent.isDisposed()) {
+					e.doit = false;
+					hide();
+				}
+			}
+		});
+	}
+}
@@ -16,9 +16,8 @@ import org.eclipse.jface.viewers.TreePath;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.graphics.Rectangle;
-import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Item;
 import org.eclipse.swt.widgets.Shell;
 
@@ -41,12 +40,21 @@ class BreadcrumbItem extends Item {
 
 	private final BreadcrumbViewer fParent;
 	private final Composite fContainer;
+	private final BreadcrumbCanvas fCanvas;
 
 	private final BreadcrumbItemDropDown fExpandBlock;
 	private final BreadcrumbItemDetails fDetailsBlock;
 
 	private boolean fIsLast;
 
+	// state of an owner drawn item, see BreadcrumbViewer#isOwnerDrawn()
+	private boolean fShowText = true;
+	private boolean fSelected;
+	private String fToolTip;
+	private Rectangle fBounds = new Rectangle(0, 0, 0, 0);
+	private int fImageWidth = -1;
+	private int fTextWidth = -1;
+
 	/**
 	 * A new breadcrumb item which is shown inside the given viewer.
 	 * 
@@ -60,14 +68,21 @@ class BreadcrumbItem extends Item {
 
 		this.fParent = viewer;
 
+		if (parent instanceof BreadcrumbCanvas) {
+			// the canvas paints the item, no widgets are required
+			this.fCanvas = (BreadcrumbCanvas) parent;
+			this.fContainer = null;
+			this.fExpandBlock = new BreadcrumbItemDropDown(this, this.fCanvas);
+			this.fDetailsBlock = null;
+			return;
+		}
+
+		this.fCanvas = null;
 		this.fContainer = new Composite(parent, SWT.NONE);
-		this.fContainer.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, false,
-				false));
-		final GridLayout layout = new GridLayout(2, false);
+		this.fContainer.setLayoutData(new BreadcrumbLayoutData());
+		final BreadcrumbLayout layout = new BreadcrumbLayout(
+				BreadcrumbLayout.SINGLE_ROW);
 		layout.marginBottom = 1;
-		layout.marginHeight = 0;
-		layout.marginWidth = 0;
-		layout.horizontalSpacing = 0;
 		this.fContainer.setLayout(layout);
 
 		this.fExpandBlock = new BreadcrumbItemDropDown(this, this.fContainer);
@@ -83,15 +98,76 @@ class BreadcrumbItem extends Item {
 		return this.fParent;
 	}
 
+	/**
+	 * Tells whether this item is painted by a {@link BreadcrumbCanvas}
+	 * instead of using its own widgets.
+	 * 
+	 * @return <code>true</code> if the item is owner drawn
+	 */
+	boolean isOwnerDrawn() {
+		return this.fCanvas != null;
+	}
+
 	/*
 	 * @see org.eclipse.swt.widgets.Widget#dispose()
 	 */
 	@Override
 	public void dispose() {
-		this.fContainer.dispose();
+		if (this.fCanvas != null) {
+			this.fCanvas.itemDisposed(this);
+		} else {
+			this.fContainer.dispose();
+		}
 		super.dispose();
 	}
 
+	/**
+	 * Hides this item and resets its state, so that it can be kept in the item
+	 * pool of the viewer and reused later.
+	 * 
+	 * @see #reuse()
+	 */
+	void recycle() {
+		final Shell shell = getDropDownShell();
+		if (shell != null && !shell.isDisposed()) {
+			shell.close();
+		}
+
+		setFocus(false);
+		setSelected(false);
+		setIsLastItem(false);
+		setDropDownEnabled(true);
+		setShowText(true);
+		setToolTip(null);
+		setData(null);
+		setPath(null);
+		setText(""); //$NON-NLS-1$
+		setImage(null);
+
+		if (this.fCanvas != null) {
+			this.fBounds = new Rectangle(0, 0, 0, 0);
+			return;
+		}
+
+		((BreadcrumbLayoutData) this.fContainer.getLayoutData()).exclude = true;
+		this.fContainer.setVisible(false);
+	}
+
+	/**
+	 * Shows a recycled item again as the last item of its container.
+	 * 
+	 * @see #recycle()
+	 */
+	void reuse() {
+		if (this.fCanvas != null) {
+			return;
+		}
+
+		this.fContainer.moveBelow(null);
+		((BreadcrumbLayoutData) this.fContainer.getLayoutData()).exclude = false;
+		this.fContainer.setVisible(true);
+	}
+
 	public TreePath getPath() {
 		return this.fPath;
 	}
@@ -107,6 +183,10 @@ class BreadcrumbItem extends Item {
 	 *            true if it should
 	 */
 	void setShowText(final boolean enabled) {
+		if (this.fCanvas != null) {
+			this.fShowText = enabled;
+			return;
+		}
 		this.fDetailsBlock.setTextVisible(enabled);
 	}
 
@@ -116,6 +196,9 @@ class BreadcrumbItem extends Item {
 	 * @return true if it does.
 	 */
 	boolean isShowText() {
+		if (this.fCanvas != null) {
+			return this.fShowText;
+		}
 		return this.fDetailsBlock.isTextVisible();
 	}
 
@@ -125,7 +208,75 @@ class BreadcrumbItem extends Item {
 	 * @return the width of this item
 	 */
 	int getWidth() {
-		return this.fDetailsBlock.getWidth() + this.fExpandBlock.getWidth() + 2;
+		return getWidth(isShowText());
+	}
+
+	/**
+	 * Returns the width this item has with or without its text label.
+	 * 
+	 * @param showText
+	 *            <code>true</code> for the width including the text label
+	 * @return the width of this item
+	 */
+	int getWidth(final boolean showText) {
+		if (this.fCanvas != null) {
+			return BreadcrumbCanvas.ARROW_WIDTH + getImageWidth()
+					+ (showText ? getTextWidth() : 0) + 2;
+		}
+		return this.fDetailsBlock.getWidth(showText)
+				+ this.fExpandBlock.getWidth() + 2;
+	}
+
+	/**
+	 * Returns the controls which need to be laid out when the size of this
+	 * item has changed.
+	 * 
+	 * @return the innermost controls of this item, an empty array if the
+	 *         item is owner drawn
+	 */
+	Control[] getLayoutControls() {
+		if (this.fCanvas != null) {
+			return new Control[0];
+		}
+		return this.fDetailsBlock.getLayoutControls();
+	}
+
+	/**
+	 * Returns the width of the image area of an owner drawn item.
+	 * 
+	 * @return the width of the image area
+	 */
+	int getImageWidth() {
+		if (this.fImageWidth < 0) {
+			this.fImageWidth = this.fCanvas.getImageAreaWidth(getImage());
+		}
+		return this.fImageWidth;
+	}
+
+	/**
+	 * Returns the width of the text area of an owner drawn item.
+	 * 
+	 * @return the width of the text area
+	 */
+	int getTextWidth() {
+		if (this.fTextWidth < 0) {
+			this.fTextWidth = this.fCanvas.getTextAreaWidth(getText());
+		}
+		return this.fTextWidth;
+	}
+
+	/**
+	 * Discards the cached widths of this item, e.g. after the font has
+	 * changed.
+	 */
+	void invalidateWidth() {
+		if (this.fCanvas != null) {
+			this.fImageWidth = -1;
+			this.fTextWidth = -1;
+			return;
+		}
+		this.fDetailsBlock.invalidateWidth();
+		this.fExpandBlock.invalidateWidth();
 	}
 
 	/**
@@ -135,9 +286,25 @@ class BreadcrumbItem extends Item {
 	 *            true if marked as selected
 	 */
 	void setSelected(final boolean selected) {
+		if (this.fCanvas != null) {
+			if (this.fSelected != selected) {
+				this.fSelected = selected;
+				redraw();
+			}
+			return;
+		}
 		this.fDetailsBlock.setSelected(selected);
 	}
 
+	/**
+	 * Tells whether this item is marked as selected.
+	 * 
+	 * @return <code>true</code> if the item is marked as selected
+	 */
+	boolean isSelected() {
+		return this.fSelected;
+	}
+
 	/**
 	 * Sets whether this item has the keyboard focus.
 	 * 
@@ -146,6 +313,13 @@ class BreadcrumbItem extends Item {
 	 *            otherwise
 	 */
 	void setFocus(final boolean state) {
+		if (state) {
+			this.fParent.prefetchDropDown(this);
+		}
+		if (this.fCanvas != null) {
+			this.fCanvas.setFocusItem(this, state);
+			return;
+		}
 		this.fDetailsBlock.setFocus(state);
 	}
 
@@ -155,6 +329,9 @@ class BreadcrumbItem extends Item {
 	 * @return <code>true</code> if this item has the keyboard focus
 	 */
 	boolean hasFocus() {
+		if (this.fCanvas != null) {
+			return this.fCanvas.getFocusItem() == this;
+		}
 		return this.fDetailsBlock.hasFocus();
 	}
 
@@ -168,10 +345,43 @@ class BreadcrumbItem extends Item {
 	void setIsLastItem(final boolean isLast) {
 		this.fIsLast = isLast;
 
-		final GridData data = (GridData) this.fContainer.getLayoutData();
+		if (this.fCanvas != null) {
+			return;
+		}
+
+		final BreadcrumbLayoutData data = (BreadcrumbLayoutData) this.fContainer
+				.getLayoutData();
 		data.grabExcessHorizontalSpace = isLast;
 	}
 
+	/**
+	 * Tells whether this is the last item in the breadcrumb item chain.
+	 * 
+	 * @return <code>true</code> if this is the last item
+	 */
+	boolean isLastItem() {
+		return this.fIsLast;
+	}
+
+	/**
+	 * Sets whether the drop down menu of this item is available.
+	 * 
+	 * @param enabled
+	 *            <code>true</code> if the drop down menu can be opened
+	 */
+	void setDropDownEnabled(final boolean enabled) {
+		this.fExpandBlock.setEnabled(enabled);
+	}
+
+	/**
+	 * Tells whether the drop down menu of this item is available.
+	 * 
+	 * @return <code>true</code> if the drop down menu can be opened
+	 */
+	boolean isDropDownEnabled() {
+		return this.fExpandBlock.isEnabled();
+	}
+
 	/**
 	 * Expand this item, shows the drop down menu.
 	 */
@@ -179,6 +389,14 @@ class BreadcrumbItem extends Item {
 		this.fExpandBlock.showMenu();
 	}
 
+	/**
+	 * Opens the drop down menu as if its arrow has been clicked and transfers
+	 * the keyboard focus into it.
+	 */
+	void activateDropDownMenu() {
+		this.fExpandBlock.activate();
+	}
+
 	/**
 	 * @return true if this item is expanded
 	 */
@@ -201,9 +419,33 @@ class BreadcrumbItem extends Item {
 	 * @return the bounds of this item
 	 */
 	public Rectangle getBounds() {
+		if (this.fCanvas != null) {
+			return new Rectangle(this.fBounds.x, this.fBounds.y,
+					this.fBounds.width, this.fBounds.height);
+		}
 		return this.fContainer.getBounds();
 	}
 
+	/**
+	 * Sets the bounds of an owner drawn item.
+	 * 
+	 * @param bounds
+	 *            the bounds inside the canvas
+	 */
+	void setBounds(final Rectangle bounds) {
+		this.fBounds = bounds;
+	}
+
+	/**
+	 * Returns the bounds of the drop down arrow of an owner drawn item.
+	 * 
+	 * @return the arrow bounds inside the canvas
+	 */
+	Rectangle getArrowBounds() {
+		return new Rectangle(this.fBounds.x, this.fBounds.y,
+				BreadcrumbCanvas.ARROW_WIDTH, this.fBounds.height);
+	}
+
 	/**
 	 * Set the tool tip of the item to the given text.
 	 * 
@@ -211,21 +453,46 @@ class BreadcrumbItem extends Item {
 	 *            the tool tip for the item
 	 */
 	public void setToolTip(final String text) {
+		if (this.fCanvas != null) {
+			this.fToolTip = text;
+			return;
+		}
 		this.fDetailsBlock.setToolTip(text);
 	}
 
+	/**
+	 * Returns the tool tip of an owner drawn item.
+	 * 
+	 * @return the tool tip or <code>null</code>
+	 */
+	String getToolTip() {
+		return this.fToolTip;
+	}
+
+	/**
+	 * Redraws an owner drawn item.
+	 */
+	void redraw() {
+		if (this.fCanvas != null && !this.fCanvas.isDisposed()) {
+			this.fCanvas.redraw(this.fBounds.x, this.fBounds.y,
+					this.fBounds.width, this.fBounds.height, false);
+		}
+	}
+
 	/*
 	 * @see org.eclipse.swt.widgets.Item#setText(java.lang.String)
 	 */
 	@Override
 	public void setText(final String string) {
 		super.setText(string);
-		this.fDetailsBlock.setText(string);
 
-		// more or less space might be required for the label
-		if (this.fIsLast) {
-			this.fContainer.layout(true, true);
+		if (this.fCanvas != null) {
+			this.fTextWidth = -1;
+			redraw();
+			return;
 		}
+
+		this.fDetailsBlock.setText(string);
 	}
 
 	/*
@@ -235,6 +502,13 @@ class BreadcrumbItem extends Item {
 	@Override
 	public void setImage(final Image image) {
 		super.setImage(image);
+
+		if (this.fCanvas != null) {
+			this.fImageWidth = -1;
+			redraw();
+			return;
+		}
+
 		this.fDetailsBlock.setImage(image);
 	}
 }
@@ -29,8 +29,6 @@ import org.eclipse.swt.events.TraverseEvent;
 import org.eclipse.swt.events.TraverseListener;
 import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Display;
@@ -55,25 +53,24 @@ class BreadcrumbItemDetails {
 	private boolean fSelected;
 	private boolean fHasFocus;
 
+	private int fImageWidth = -1;
+	private int fTextWidth = -1;
+
 	public BreadcrumbItemDetails(final BreadcrumbItem parent,
 			final Composite parentContainer) {
 		this.fParent = parent;
 		this.fTextVisible = true;
 
 		this.fDetailComposite = new Composite(parentContainer, SWT.NONE);
-		this.fDetailComposite.setLayoutData(new GridData(SWT.BEGINNING,
-				SWT.CENTER, false, false));
-		GridLayout layout = new GridLayout(2, false);
-		layout.marginHeight = 0;
-		layout.marginWidth = 0;
-		layout.horizontalSpacing = 0;
+		this.fDetailComposite.setLayoutData(new BreadcrumbLayoutData());
+		BreadcrumbLayout layout = new BreadcrumbLayout(
+				BreadcrumbLayout.SINGLE_ROW);
 		this.fDetailComposite.setLayout(layout);
 		addElementListener(this.fDetailComposite);
 
 		this.fImageComposite = new Composite(this.fDetailComposite, SWT.NONE);
-		this.fImageComposite.setLayoutData(new GridData(SWT.BEGINNING,
-				SWT.CENTER, false, false));
-		layout = new GridLayout(1, false);
+		this.fImageComposite.setLayoutData(new BreadcrumbLayoutData());
+		layout = new BreadcrumbLayout(1);
 		layout.marginHeight = 1;
 		layout.marginWidth = 2;
 		this.fImageComposite.setLayout(layout);
@@ -89,15 +86,12 @@ class BreadcrumbItemDetails {
 		addElementListener(this.fImageComposite);
 
 		this.fElementImage = new Label(this.fImageComposite, SWT.NONE);
-		GridData layoutData = new GridData(SWT.BEGINNING, SWT.CENTER, false,
-				false);
-		this.fElementImage.setLayoutData(layoutData);
+		this.fElementImage.setLayoutData(new BreadcrumbLayoutData());
 		addElementListener(this.fElementImage);
 
 		this.fTextComposite = new Composite(this.fDetailComposite, SWT.NONE);
-		this.fTextComposite.setLayoutData(new GridData(SWT.BEGINNING,
-				SWT.CENTER, false, false));
-		layout = new GridLayout(1, false);
+		this.fTextComposite.setLayoutData(new BreadcrumbLayoutData());
+		layout = new BreadcrumbLayout(1);
 		layout.marginHeight = 2;
 		layout.marginWidth = 2;
 		this.fTextComposite.setLayout(layout);
@@ -114,9 +108,7 @@ class BreadcrumbItemDetails {
 		addElementListener(this.fTextComposite);
 
 		this.fElementText = new Label(this.fTextComposite, SWT.NONE);
-
-		layoutData = new GridData(SWT.BEGINNING, SWT.CENTER, false, false);
-		this.fElementText.setLayoutData(layoutData);
+		this.fElementText.setLayoutData(new BreadcrumbLayoutData());
 		addElementListener(this.fElementText);
 
 		this.fTextComposite.getAccessible().addAccessibleListener(
@@ -177,6 +169,7 @@ class BreadcrumbItemDetails {
 	public void setImage(final Image image) {
 		if (image != this.fElementImage.getImage()) {
 			this.fElementImage.setImage(image);
+			this.fImageWidth = -1;
 		}
 	}
 
@@ -192,6 +185,7 @@ class BreadcrumbItemDetails {
 		}
 		if (!text.equals(this.fElementText.getText())) {
 			this.fElementText.setText(text);
+			this.fTextWidth = -1;
 		}
 	}
 
@@ -201,19 +195,58 @@ class BreadcrumbItemDetails {
 	 * @return current width of this element
 	 */
 	public int getWidth() {
+		return getWidth(this.fTextVisible);
+	}
+
+	/**
+	 * Returns the width this element has with or without its text label. The
+	 * measured sizes are cached until the text, the image or the font
+	 * changes.
+	 * 
+	 * @param textVisible
+	 *            <code>true</code> for the width including the text label
+	 * @return the width of this element
+	 */
+	public int getWidth(final boolean textVisible) {
 		int result = 2;
 
 		if (this.fElementImage.getImage() != null) {
-			result += this.fElementImage.computeSize(SWT.DEFAULT, SWT.DEFAULT).x;
+			if (this.fImageWidth < 0) {
+				this.fImageWidth = this.fElementImage.computeSize(SWT.DEFAULT,
+						SWT.DEFAULT).x;
+			}
+			result += this.fImageWidth;
 		}
 
-		if (this.fTextVisible && this.fElementText.getText().length() > 0) {
-			result += this.fElementText.computeSize(SWT.DEFAULT, SWT.DEFAULT).x;
+		if (textVisible && this.fElementText.getText().length() > 0) {
+			if (this.fTextWidth < 0) {
+				this.fTextWidth = this.fElementText.computeSize(SWT.DEFAULT,
+						SWT.DEFAULT).x;
+			}
+			result += this.fTextWidth;
 		}
 
 		return result;
 	}
 
+	/**
+	 * Returns the innermost controls of this element, laying out these
+	 * controls updates the whole element.
+	 * 
+	 * @return the image and the text label
+	 */
+	public Control[] getLayoutControls() {
+		return new Control[] { this.fElementImage, this.fElementText };
+	}
+
+	/**
+	 * Discards the cached sizes, e.g. after the font has changed.
+	 */
+	public void invalidateWidth() {
+		this.fImageWidth = -1;
+		this.fTextWidth = -1;
+	}
+
 	public void setTextVisible(final boolean enabled) {
 		if (this.fTextVisible == enabled) {
 			return;
@@ -221,7 +254,8 @@ class BreadcrumbItemDetails {
 
 		this.fTextVisible = enabled;
 
-		final GridData data = (GridData) this.fTextComposite.getLayoutData();
+		final BreadcrumbLayoutData data = (BreadcrumbLayoutData) this.fTextComposite
+				.getLayoutData();
 		data.exclude = !enabled;
 		this.fTextComposite.setVisible(enabled);
 
@@ -418,6 +452,8 @@ class BreadcrumbItemDetails {
 				if (!BreadcrumbItemDetails.this.fHasFocus) {
 					BreadcrumbItemDetails.this.fHasFocus = true;
 					updateSelection();
+					BreadcrumbItemDetails.this.fParent.getViewer()
+							.prefetchDropDown(BreadcrumbItemDetails.this.fParent);
 				}
 			}
 
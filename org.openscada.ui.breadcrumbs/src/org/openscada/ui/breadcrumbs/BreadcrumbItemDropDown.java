@@ -12,27 +12,28 @@
  *******************************************************************************/
 package org.openscada.ui.breadcrumbs;
 
-import org.eclipse.core.runtime.Assert;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.jface.action.Action;
 import org.eclipse.jface.action.ToolBarManager;
 import org.eclipse.jface.dialogs.IDialogSettings;
 import org.eclipse.jface.resource.CompositeImageDescriptor;
+import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.jface.util.Geometry;
 import org.eclipse.jface.viewers.ISelection;
-import org.eclipse.jface.viewers.TreePath;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.accessibility.AccessibleAdapter;
 import org.eclipse.swt.accessibility.AccessibleEvent;
-import org.eclipse.swt.events.ControlAdapter;
-import org.eclipse.swt.events.ControlEvent;
-import org.eclipse.swt.events.ControlListener;
-import org.eclipse.swt.events.DisposeEvent;
-import org.eclipse.swt.events.DisposeListener;
 import org.eclipse.swt.events.MouseAdapter;
 import org.eclipse.swt.events.MouseEvent;
-import org.eclipse.swt.events.ShellEvent;
-import org.eclipse.swt.events.ShellListener;
+import org.eclipse.swt.events.MouseTrackAdapter;
 import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.graphics.GC;
 import org.eclipse.swt.graphics.Image;
@@ -41,7 +42,6 @@ import org.eclipse.swt.graphics.Point;
 import org.eclipse.swt.graphics.RGB;
 import org.eclipse.swt.graphics.Rectangle;
 import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Display;
@@ -50,7 +50,8 @@ import org.eclipse.swt.widgets.Listener;
 import org.eclipse.swt.widgets.Monitor;
 import org.eclipse.swt.widgets.Shell;
 import org.eclipse.swt.widgets.ToolBar;
-import org.eclipse.swt.widgets.Widget;
+import org.eclipse.swt.widgets.Tree;
+import org.eclipse.swt.widgets.TreeItem;
 import org.openscada.ui.breadcrumbs.internal.BreadcrumbsPlugin;
 
 /**
@@ -73,15 +74,27 @@ class BreadcrumbItemDropDown implements IBreadcrumbDropDownSite {
 	 * and background color. This makes the arrow visible even in high contrast
 	 * mode. If <code>ltr</code> is true the arrow points to the right,
 	 * otherwise it points to the left.
+	 * <p>
+	 * Descriptors are equal if they have the same direction and colors. The
+	 * shared resource manager of the display therefore renders each arrow only
+	 * once and hands out the same image to all breadcrumb items.
+	 * </p>
 	 */
-	private final class AccessibelArrowImage extends CompositeImageDescriptor {
+	private static final class AccessibelArrowImage extends
+			CompositeImageDescriptor {
 
 		private final static int ARROW_SIZE = 5;
 
 		private final boolean fLTR;
+		private final RGB fTriangle;
+		private final RGB fAliasing;
 
-		public AccessibelArrowImage(final boolean ltr) {
+		public AccessibelArrowImage(final boolean ltr, final Display display) {
 			this.fLTR = ltr;
+			this.fTriangle = blend(SWT.COLOR_LIST_FOREGROUND,
+					SWT.COLOR_LIST_BACKGROUND, 20, display);
+			this.fAliasing = blend(SWT.COLOR_LIST_FOREGROUND,
+					SWT.COLOR_LIST_BACKGROUND, 30, display);
 		}
 
 		/*
@@ -91,17 +104,17 @@ class BreadcrumbItemDropDown implements IBreadcrumbDropDownSite {
 		 */
 		@Override
 		protected void drawCompositeImage(final int width, final int height) {
-			final Display display = BreadcrumbItemDropDown.this.fParentComposite
-					.getDisplay();
+			Display display = Display.getCurrent();
+			if (display == null) {
+				display = Display.getDefault();
+			}
 
 			final Image image = new Image(display, ARROW_SIZE, ARROW_SIZE * 2);
 
 			final GC gc = new GC(image);
 
-			final Color triangle = createColor(SWT.COLOR_LIST_FOREGROUND,
-					SWT.COLOR_LIST_BACKGROUND, 20, display);
-			final Color aliasing = createColor(SWT.COLOR_LIST_FOREGROUND,
-					SWT.COLOR_LIST_BACKGROUND, 30, display);
+			final Color triangle = new Color(display, this.fTriangle);
+			final Color aliasing = new Color(display, this.fAliasing);
 			gc.setBackground(triangle);
 
 			if (this.fLTR) {
@@ -156,14 +169,35 @@ class BreadcrumbItemDropDown implements IBreadcrumbDropDownSite {
 			return new Point(10, 16);
 		}
 
-		private Color createColor(final int color1, final int color2,
+		@Override
+		public int hashCode() {
+			int result = this.fLTR ? 1 : 0;
+			result = 31 * result + this.fTriangle.hashCode();
+			result = 31 * result + this.fAliasing.hashCode();
+			return result;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof AccessibelArrowImage)) {
+				return false;
+			}
+
+			final AccessibelArrowImage other = (AccessibelArrowImage) obj;
+			return this.fLTR == other.fLTR
+					&& this.fTriangle.equals(other.fTriangle)
+					&& this.fAliasing.equals(other.fAliasing);
+		}
+
+		private static RGB blend(final int color1, final int color2,
 				final int ratio, final Display display) {
 			final RGB rgb1 = display.getSystemColor(color1).getRGB();
 			final RGB rgb2 = display.getSystemColor(color2).getRGB();
 
-			final RGB blend = BreadcrumbViewer.blend(rgb2, rgb1, ratio);
-
-			return new Color(display, blend);
+			return BreadcrumbViewer.blend(rgb2, rgb1, ratio);
 		}
 	}
 
@@ -184,8 +218,38 @@ class BreadcrumbItemDropDown implements IBreadcrumbDropDownSite {
 
 	private boolean fMenuIsShown;
 	private boolean fEnabled;
+	private int fWidth = -1;
 	private Shell fShell;
-	private boolean fIsResizingProgrammatically;
+	private BreadcrumbDropDownShell fDropDownShell;
+
+	/**
+	 * The tree of the drop down whose rows are tracked to compute the
+	 * preferred size of the shell incrementally, if any.
+	 */
+	private Tree fTree;
+	private final Set fMeasuredItems = new HashSet();
+
+	/**
+	 * The tree and the expanded items whose children are counted, mapped to
+	 * the number of children counted.
+	 */
+	private final Map fCountedChildren = new HashMap();
+
+	/**
+	 * The items which have been expanded since the last measurement.
+	 */
+	private final List fExpandedItems = new ArrayList();
+
+	/**
+	 * Whether only expansion changes have been reported since the last
+	 * measurement. Otherwise the content of the tree may have changed.
+	 */
+	private boolean fExpansionReported;
+	private Point fBaseSize;
+	private int fHeaderWidth;
+	private int fTreeTrimWidth;
+	private int fRowCount;
+	private int fRowWidth;
 
 	public BreadcrumbItemDropDown(final BreadcrumbItem parent,
 			final Composite composite) {
@@ -194,9 +258,14 @@ class BreadcrumbItemDropDown implements IBreadcrumbDropDownSite {
 		this.fMenuIsShown = false;
 		this.fEnabled = true;
 
+		if (parent.isOwnerDrawn()) {
+			// the arrow is painted and hit-tested by the breadcrumb canvas
+			this.fToolBar = null;
+			return;
+		}
+
 		this.fToolBar = new ToolBar(composite, SWT.FLAT);
-		this.fToolBar.setLayoutData(new GridData(SWT.END, SWT.CENTER, false,
-				false));
+		this.fToolBar.setLayoutData(new BreadcrumbLayoutData());
 		this.fToolBar.getAccessible().addAccessibleListener(
 				new AccessibleAdapter() {
 					@Override
@@ -204,31 +273,24 @@ class BreadcrumbItemDropDown implements IBreadcrumbDropDownSite {
 						e.result = BreadcrumbMessages.BreadcrumbItemDropDown_showDropDownMenu_action_toolTip;
 					}
 				});
+		this.fToolBar.addMouseTrackListener(new MouseTrackAdapter() {
+			@Override
+			public void mouseEnter(final MouseEvent e) {
+				BreadcrumbItemDropDown.this.fParent.getViewer()
+						.prefetchDropDown(BreadcrumbItemDropDown.this.fParent);
+			}
+		});
 		final ToolBarManager manager = new ToolBarManager(this.fToolBar);
 
 		final Action showDropDownMenuAction = new Action(null, SWT.NONE) {
 			@Override
 			public void run() {
-				Shell shell = BreadcrumbItemDropDown.this.fParent
-						.getDropDownShell();
-				if (shell != null) {
-					return;
-				}
-
-				shell = BreadcrumbItemDropDown.this.fParent.getViewer()
-						.getDropDownShell();
-				if (shell != null && !shell.isDisposed()) {
-					shell.close();
-				}
-
-				showMenu();
-
-				BreadcrumbItemDropDown.this.fShell.setFocus();
+				activate();
 			}
 		};
 
-		showDropDownMenuAction.setImageDescriptor(new AccessibelArrowImage(
-				isLeft()));
+		showDropDownMenuAction.setImageDescriptor(createArrowImageDescriptor(
+				isLeft(), composite.getDisplay()));
 		showDropDownMenuAction
 				.setToolTipText(BreadcrumbMessages.BreadcrumbItemDropDown_showDropDownMenu_action_toolTip);
 		manager.add(showDropDownMenuAction);
@@ -245,13 +307,62 @@ class BreadcrumbItemDropDown implements IBreadcrumbDropDownSite {
 		}
 	}
 
+	/**
+	 * Creates the descriptor of the drop down arrow image.
+	 * 
+	 * @param ltr
+	 *            <code>true</code> if the arrow points to the right
+	 * @param display
+	 *            the display providing the system colors
+	 * @return the image descriptor
+	 */
+	static ImageDescriptor createArrowImageDescriptor(final boolean ltr,
+			final Display display) {
+		return new AccessibelArrowImage(ltr, display);
+	}
+
+	/**
+	 * Opens the drop down menu, closing the drop down of any other item of the
+	 * viewer first, and sets the focus into it.
+	 */
+	public void activate() {
+		Shell shell = this.fParent.getDropDownShell();
+		if (shell != null) {
+			return;
+		}
+
+		shell = this.fParent.getViewer().getDropDownShell();
+		if (shell != null && !shell.isDisposed()) {
+			shell.close();
+		}
+
+		showMenu();
+
+		if (this.fShell != null && !this.fShell.isDisposed()) {
+			this.fShell.setFocus();
+		}
+	}
+
 	/**
 	 * Return the width of this element.
 	 * 
 	 * @return the width of this element
 	 */
 	public int getWidth() {
-		return this.fToolBar.computeSize(SWT.DEFAULT, SWT.DEFAULT).x;
+		if (this.fToolBar == null) {
+			return BreadcrumbCanvas.ARROW_WIDTH;
+		}
+		if (this.fWidth < 0) {
+			this.fWidth = this.fToolBar.computeSize(SWT.DEFAULT, SWT.DEFAULT).x;
+		}
+		return this.fWidth;
+	}
+
+	/**
+	 * Discards the cached width, e.g. after the font has changed.
+	 */
+	public void invalidateWidth() {
+		this.fWidth = -1;
 	}
 
 	/**
@@ -263,7 +374,20 @@ class BreadcrumbItemDropDown implements IBreadcrumbDropDownSite {
 	public void setEnabled(final boolean enabled) {
 		this.fEnabled = enabled;
 
-		this.fToolBar.setVisible(enabled);
+		if (this.fToolBar != null) {
+			this.fToolBar.setVisible(enabled);
+		} else {
+			this.fParent.redraw();
+		}
+	}
+
+	/**
+	 * Tells whether the drop down menu is available.
+	 * 
+	 * @return true if available
+	 */
+	public boolean isEnabled() {
+		return this.fEnabled;
 	}
 
 	/**
@@ -302,175 +426,49 @@ class BreadcrumbItemDropDown implements IBreadcrumbDropDownSite {
 
 		this.fMenuIsShown = true;
 
-		this.fShell = new Shell(this.fToolBar.getShell(), SWT.RESIZE | SWT.TOOL
-				| SWT.ON_TOP);
-		if (DEBUG) {
-			System.out.println("	creating new shell"); //$NON-NLS-1$
-		}
+		this.fDropDownShell = this.fParent.getViewer().obtainDropDownShell();
+		this.fDropDownShell.open(this);
+		this.fShell = this.fDropDownShell.getShell();
 
-		this.fShell.addControlListener(new ControlAdapter() {
-			/*
-			 * @see
-			 * org.eclipse.swt.events.ControlAdapter#controlResized(org.eclipse
-			 * .swt.events.ControlEvent)
-			 */
-			@Override
-			public void controlResized(final ControlEvent e) {
-				if (BreadcrumbItemDropDown.this.fIsResizingProgrammatically) {
-					return;
-				}
+		final Composite composite = this.fDropDownShell.getComposite();
+		final Control control = this.fParent.getViewer().createItemDropDown(
+				this.fParent, composite, this);
 
-				final Point size = BreadcrumbItemDropDown.this.fShell.getSize();
-				getDialogSettings().put(DIALOG_HEIGHT, size.y);
-			}
-		});
-
-		final GridLayout layout = new GridLayout(1, false);
-		layout.marginHeight = 0;
-		layout.marginWidth = 0;
-		this.fShell.setLayout(layout);
-
-		final Composite composite = new Composite(this.fShell, SWT.NONE);
-		composite.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
-		final GridLayout gridLayout = new GridLayout(1, false);
-		gridLayout.marginHeight = 0;
-		gridLayout.marginWidth = 0;
-		composite.setLayout(gridLayout);
-
-		final TreePath path = this.fParent.getPath();
-
-		final Control control = this.fParent.getViewer().createDropDown(
-				composite, this, path);
-
-		control.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
+		final GridData data = new GridData(SWT.FILL, SWT.FILL, true, true);
+		if ((control.getStyle() & SWT.VIRTUAL) != 0) {
+			// computing the preferred size of a virtual control would
+			// populate all of its rows
+			data.widthHint = DROP_DOWN_MIN_WIDTH;
+			data.heightHint = getMaxHeight();
+		}
+		control.setLayoutData(data);
+		installSizeTracking(control);
 
 		setShellBounds(this.fShell);
+		if (this.fDropDownShell.isReusable()) {
+			// the size of a reused shell may not change, which would leave
+			// the new content without a layout
+			composite.layout(true);
+		}
 		this.fShell.setVisible(true);
-		installCloser(this.fShell);
 	}
 
 	/**
-	 * The closer closes the given shell when the focus is lost.
-	 * 
-	 * @param shell
-	 *            the shell to install the closer to
+	 * The shell of the drop down has been closed.
 	 */
-	private void installCloser(final Shell shell) {
-		final Listener focusListener = new Listener() {
-			@Override
-			public void handleEvent(final Event event) {
-				final Widget focusElement = event.widget;
-				final boolean isFocusBreadcrumbTreeFocusWidget = focusElement == shell
-						|| focusElement instanceof Control
-						&& ((Control) focusElement).getShell() == shell;
-				final boolean isFocusWidgetParentShell = focusElement instanceof Control
-						&& ((Control) focusElement).getShell().getParent() == shell;
-
-				switch (event.type) {
-				case SWT.FocusIn:
-					if (DEBUG) {
-						System.out
-								.println("focusIn - is breadcrumb tree: " + isFocusBreadcrumbTreeFocusWidget); //$NON-NLS-1$
-					}
-
-					if (!isFocusBreadcrumbTreeFocusWidget
-							&& !isFocusWidgetParentShell) {
-						if (DEBUG) {
-							System.out
-									.println("==> closing shell since focus in other widget"); //$NON-NLS-1$
-						}
-						shell.close();
-					}
-					break;
-
-				case SWT.FocusOut:
-					if (DEBUG) {
-						System.out
-								.println("focusOut - is breadcrumb tree: " + isFocusBreadcrumbTreeFocusWidget); //$NON-NLS-1$
-					}
-
-					if (event.display.getActiveShell() == null) {
-						if (DEBUG) {
-							System.out
-									.println("==> closing shell since event.display.getActiveShell() != shell"); //$NON-NLS-1$
-						}
-						shell.close();
-					}
-					break;
-
-				default:
-					Assert.isTrue(false);
-				}
-			}
-		};
-
-		final Display display = shell.getDisplay();
-		display.addFilter(SWT.FocusIn, focusListener);
-		display.addFilter(SWT.FocusOut, focusListener);
-
-		final ControlListener controlListener = new ControlListener() {
-			@Override
-			public void controlMoved(final ControlEvent e) {
-				if (!shell.isDisposed()) {
-					shell.close();
-				}
-			}
-
-			@Override
-			public void controlResized(final ControlEvent e) {
-				if (!shell.isDisposed()) {
-					shell.close();
-				}
-			}
-		};
-		this.fToolBar.getShell().addControlListener(controlListener);
-
-		shell.addDisposeListener(new DisposeListener() {
-			@Override
-			public void widgetDisposed(final DisposeEvent e) {
-				if (DEBUG) {
-					System.out.println("==> shell disposed"); //$NON-NLS-1$
-				}
-
-				display.removeFilter(SWT.FocusIn, focusListener);
-				display.removeFilter(SWT.FocusOut, focusListener);
-
-				if (!BreadcrumbItemDropDown.this.fToolBar.isDisposed()) {
-					BreadcrumbItemDropDown.this.fToolBar.getShell()
-							.removeControlListener(controlListener);
-				}
-			}
-		});
-		shell.addShellListener(new ShellListener() {
-			@Override
-			public void shellActivated(final ShellEvent e) {
-			}
-
-			@Override
-			public void shellClosed(final ShellEvent e) {
-				if (DEBUG) {
-					System.out.println("==> shellClosed"); //$NON-NLS-1$
-				}
-
-				if (!BreadcrumbItemDropDown.this.fMenuIsShown) {
-					return;
-				}
-
-				BreadcrumbItemDropDown.this.fMenuIsShown = false;
-			}
-
-			@Override
-			public void shellDeactivated(final ShellEvent e) {
-			}
-
-			@Override
-			public void shellDeiconified(final ShellEvent e) {
-			}
+	void menuClosed() {
+		this.fMenuIsShown = false;
+		installSizeTracking(null);
+	}
 
-			@Override
-			public void shellIconified(final ShellEvent e) {
-			}
-		});
+	/**
+	 * Remembers the height the user has resized the drop down to.
+	 * 
+	 * @param height
+	 *            the height of the shell
+	 */
+	void rememberHeight(final int height) {
+		getDialogSettings().put(DIALOG_HEIGHT, height);
 	}
 
 	private IDialogSettings getDialogSettings() {
@@ -499,8 +497,16 @@ class BreadcrumbItemDropDown implements IBreadcrumbDropDownSite {
 	 */
 	private void setShellBounds(final Shell shell) {
 
-		final Rectangle rect = this.fParentComposite.getBounds();
-		final Rectangle toolbarBounds = this.fToolBar.getBounds();
+		final Rectangle rect;
+		final Rectangle toolbarBounds;
+		if (this.fToolBar == null) {
+			// owner drawn, both are relative to the canvas
+			rect = this.fParent.getBounds();
+			toolbarBounds = this.fParent.getArrowBounds();
+		} else {
+			rect = this.fParentComposite.getBounds();
+			toolbarBounds = this.fToolBar.getBounds();
+		}
 
 		final Point size = shell.computeSize(SWT.DEFAULT, SWT.DEFAULT, false);
 		final int height = Math.max(Math.min(size.y, getMaxHeight()),
@@ -541,11 +547,11 @@ class BreadcrumbItemDropDown implements IBreadcrumbDropDownSite {
 		}
 
 		shell.setLocation(pt);
-		this.fIsResizingProgrammatically = true;
+		this.fDropDownShell.setResizingProgrammatically(true);
 		try {
 			shell.setSize(width, height);
 		} finally {
-			this.fIsResizingProgrammatically = false;
+			this.fDropDownShell.setResizingProgrammatically(false);
 		}
 	}
 
@@ -609,8 +615,7 @@ class BreadcrumbItemDropDown implements IBreadcrumbDropDownSite {
 			return;
 		}
 
-		final Point preferedSize = shell.computeSize(SWT.DEFAULT, SWT.DEFAULT,
-				true);
+		final Point preferedSize = computePreferredSize(shell);
 
 		int newWidth;
 		if (currentWidth >= DROP_DOWN_MAX_WIDTH) {
@@ -634,7 +639,7 @@ class BreadcrumbItemDropDown implements IBreadcrumbDropDownSite {
 		if (newHeight != currentHeight || newWidth != currentWidth) {
 			shell.setRedraw(false);
 			try {
-				this.fIsResizingProgrammatically = true;
+				this.fDropDownShell.setResizingProgrammatically(true);
 				shell.setSize(newWidth, newHeight);
 
 				final Point location = shell.getLocation();
@@ -651,12 +656,282 @@ class BreadcrumbItemDropDown implements IBreadcrumbDropDownSite {
 					shell.setLocation(newLocation.x, newLocation.y);
 				}
 			} finally {
-				this.fIsResizingProgrammatically = false;
+				this.fDropDownShell.setResizingProgrammatically(false);
 				shell.setRedraw(true);
 			}
 		}
 	}
 
+	/**
+	 * Looks up the tree shown in the drop down, if there is one, whose rows
+	 * are measured to compute the preferred size of the shell.
+	 */
+	private void installSizeTracking(final Control control) {
+		this.fTree = control != null ? findTree(control) : null;
+		this.fMeasuredItems.clear();
+		this.fCountedChildren.clear();
+		this.fExpandedItems.clear();
+		this.fExpansionReported = false;
+		this.fBaseSize = null;
+
+		if (this.fTree != null) {
+			final Listener listener = new Listener() {
+				@Override
+				public void handleEvent(final Event event) {
+					if (event.type == SWT.Expand) {
+						itemExpanded((TreeItem) event.item);
+					} else {
+						itemCollapsed((TreeItem) event.item);
+					}
+				}
+			};
+			this.fTree.addListener(SWT.Expand, listener);
+			this.fTree.addListener(SWT.Collapse, listener);
+		}
+	}
+
+	/**
+	 * Reports that an item of the tree is being expanded. Its rows are counted
+	 * and measured when the size is computed next. The tree reports
+	 * expansions by the user, expansions in code need to be reported
+	 * explicitly.
+	 * 
+	 * @param item
+	 *            the item
+	 */
+	void itemExpanded(final TreeItem item) {
+		if (item.getParent() == this.fTree) {
+			this.fExpandedItems.add(item);
+			this.fExpansionReported = true;
+		}
+	}
+
+	/**
+	 * Reports that an item of the tree is being collapsed. The rows below it
+	 * are no longer counted.
+	 * 
+	 * @param item
+	 *            the item
+	 */
+	void itemCollapsed(final TreeItem item) {
+		if (item.getParent() == this.fTree) {
+			this.fExpandedItems.remove(item);
+			uncountRows(item);
+			this.fExpansionReported = true;
+		}
+	}
+
+	/**
+	 * Returns the tree shown by the given drop down control, which may be the
+	 * tree itself or a composite around it.
+	 */
+	private static Tree findTree(final Control control) {
+		if (control instanceof Tree) {
+			return (Tree) control;
+		}
+		if (control instanceof Composite) {
+			final Control[] children = ((Composite) control).getChildren();
+			for (int i = 0; i < children.length; i++) {
+				if (children[i] instanceof Tree) {
+					return (Tree) children[i];
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Computes the preferred size of the shell.
+	 * <p>
+	 * If the drop down shows a tree, the shell is only measured once. Its
+	 * height without the rows of the tree is remembered, together with the
+	 * width of the controls above the tree and the space around them. The
+	 * height follows from the number of visible rows and the item height of
+	 * the tree, the width from the wider of the widest row and the controls
+	 * above the tree.
+	 * </p>
+	 * <p>
+	 * If only expansions have been reported since the last call, only the
+	 * rows which have just been shown are counted and measured, and the rows
+	 * of collapsed items have already been subtracted. Otherwise the content
+	 * of the tree may have changed, e.g. by deferred loading, and the visible
+	 * rows are counted again. Rows are only measured once in either case,
+	 * the row width is a running maximum.
+	 * </p>
+	 */
+	Point computePreferredSize(final Shell shell) {
+		if (this.fTree == null || this.fTree.isDisposed()) {
+			return shell.computeSize(SWT.DEFAULT, SWT.DEFAULT, true);
+		}
+
+		if (this.fBaseSize == null) {
+			final Point size = shell.computeSize(SWT.DEFAULT, SWT.DEFAULT,
+					true);
+			this.fRowWidth = 0;
+			countAllRows();
+			this.fHeaderWidth = computeHeaderWidth();
+			this.fTreeTrimWidth = this.fTree.computeTrim(0, 0, 0, 0).width;
+			this.fBaseSize = new Point(size.x - getContentWidth(), size.y
+					- this.fRowCount * this.fTree.getItemHeight());
+			return size;
+		}
+
+		if (this.fExpansionReported && !hasCountChanged()) {
+			countExpandedRows();
+		} else {
+			countAllRows();
+		}
+		return new Point(this.fBaseSize.x + getContentWidth(),
+				this.fBaseSize.y + this.fRowCount
+						* this.fTree.getItemHeight());
+	}
+
+	/**
+	 * Returns the number of rows whose width is known.
+	 * 
+	 * @return the number of measured rows
+	 */
+	int getMeasuredRowCount() {
+		return this.fMeasuredItems.size();
+	}
+
+	/**
+	 * Returns the width of the tree or the controls above it, whichever is
+	 * wider.
+	 */
+	private int getContentWidth() {
+		return Math.max(this.fHeaderWidth, this.fRowWidth
+				+ this.fTreeTrimWidth);
+	}
+
+	/**
+	 * Returns the preferred width of the controls next to the tree, e.g. the
+	 * filter field above it.
+	 */
+	private int computeHeaderWidth() {
+		int width = 0;
+		final Control[] siblings = this.fTree.getParent().getChildren();
+		for (int i = 0; i < siblings.length; i++) {
+			if (siblings[i] != this.fTree) {
+				width = Math.max(width,
+						siblings[i].computeSize(SWT.DEFAULT, SWT.DEFAULT).x);
+			}
+		}
+		return width;
+	}
+
+	/**
+	 * Counts all visible rows of the tree again, after its content may have
+	 * changed. Disposed rows are forgotten.
+	 */
+	private void countAllRows() {
+		final Iterator iterator = this.fMeasuredItems.iterator();
+		while (iterator.hasNext()) {
+			if (((TreeItem) iterator.next()).isDisposed()) {
+				iterator.remove();
+			}
+		}
+
+		this.fCountedChildren.clear();
+		this.fExpandedItems.clear();
+		this.fExpansionReported = false;
+		this.fRowCount = 0;
+		countRows(this.fTree, this.fTree.getItems());
+	}
+
+	/**
+	 * Counts the rows below the items which have been expanded since the last
+	 * measurement.
+	 */
+	private void countExpandedRows() {
+		for (int i = 0, size = this.fExpandedItems.size(); i < size; i++) {
+			final TreeItem item = (TreeItem) this.fExpandedItems.get(i);
+			if (item.isDisposed() || !item.getExpanded()
+					|| this.fCountedChildren.containsKey(item)) {
+				continue;
+			}
+
+			// the rows of an item below a collapsed one are counted when
+			// its parent is expanded
+			final TreeItem parent = item.getParentItem();
+			if (this.fCountedChildren.containsKey(parent != null ? (Object) parent
+					: this.fTree)) {
+				countRows(item, item.getItems());
+			}
+		}
+		this.fExpandedItems.clear();
+		this.fExpansionReported = false;
+	}
+
+	/**
+	 * Tells whether rows have been added to or removed from the counted items
+	 * since they were counted.
+	 */
+	private boolean hasCountChanged() {
+		final Iterator iterator = this.fCountedChildren.entrySet().iterator();
+		while (iterator.hasNext()) {
+			final Map.Entry entry = (Map.Entry) iterator.next();
+			final Object parent = entry.getKey();
+			final int count;
+			if (parent == this.fTree) {
+				count = this.fTree.getItemCount();
+			} else if (((TreeItem) parent).isDisposed()) {
+				return true;
+			} else {
+				count = ((TreeItem) parent).getItemCount();
+			}
+			if (count != ((Integer) entry.getValue()).intValue()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Counts the given rows and the visible rows below them, and adds the
+	 * widths of rows which have not been measured before to the row width.
+	 * The rows of a virtual tree are only counted, their width is fixed.
+	 * 
+	 * @param parent
+	 *            the tree or the item containing the rows
+	 * @param items
+	 *            the rows
+	 */
+	private void countRows(final Object parent, final TreeItem[] items) {
+		final boolean virtual = (this.fTree.getStyle() & SWT.VIRTUAL) != 0;
+		this.fCountedChildren.put(parent, Integer.valueOf(items.length));
+		this.fRowCount += items.length;
+		for (int i = 0; i < items.length; i++) {
+			if (!virtual && this.fMeasuredItems.add(items[i])) {
+				final Rectangle bounds = items[i].getBounds();
+				this.fRowWidth = Math.max(this.fRowWidth, bounds.x
+						+ bounds.width);
+			}
+			if (items[i].getExpanded()) {
+				countRows(items[i], items[i].getItems());
+			}
+		}
+	}
+
+	/**
+	 * Subtracts the counted rows below the given item.
+	 * 
+	 * @param item
+	 *            the item being collapsed
+	 */
+	private void uncountRows(final TreeItem item) {
+		final Integer count = (Integer) this.fCountedChildren.remove(item);
+		if (count == null) {
+			return;
+		}
+
+		this.fRowCount -= count.intValue();
+		final TreeItem[] items = item.getItems();
+		for (int i = 0; i < items.length; i++) {
+			uncountRows(items[i]);
+		}
+	}
+
 	/**
 	 * Tells whether this the breadcrumb is in LTR mode or RTL mode. Or whether
 	 * the breadcrumb is on the right-side status coolbar, which has the same
@@ -684,11 +959,21 @@ class BreadcrumbItemDropDown implements IBreadcrumbDropDownSite {
 
 	@Override
 	public void close() {
-		if (this.fShell != null && !this.fShell.isDisposed()) {
+		if (this.fMenuIsShown && this.fShell != null
+				&& !this.fShell.isDisposed()) {
 			this.fShell.close();
 		}
 	}
 
+	/**
+	 * Returns the prefetcher of the viewer this drop down belongs to.
+	 * 
+	 * @return the prefetcher, or <code>null</code> if prefetching is disabled
+	 */
+	BreadcrumbPrefetcher getPrefetcher() {
+		return this.fParent.getViewer().getDropDownPrefetcher();
+	}
+
 	@Override
 	public void notifySelection(final ISelection selection) {
 		this.fParent.getViewer().fireMenuSelection(selection);
@@ -696,7 +981,8 @@ class BreadcrumbItemDropDown implements IBreadcrumbDropDownSite {
 
 	@Override
 	public void updateSize() {
-		if (this.fShell != null && !this.fShell.isDisposed()) {
+		if (this.fMenuIsShown && this.fShell != null
+				&& !this.fShell.isDisposed()) {
 			resizeShell(this.fShell);
 		}
 	}
@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright (c) 2012 TH4 SYSTEMS GmbH and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Jens Reimann (TH4 SYSTEMS GmbH) - initial API and implementation
+ *******************************************************************************/
+package org.openscada.ui.breadcrumbs;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.graphics.Rectangle;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Layout;
+
+/**
+ * The layout of the breadcrumb row and of the parts of its items.
+ * <p>
+ * The children are placed from left to right, wrapping after the given number
+ * of columns. Each child fills the width of its column and is centered
+ * vertically in its row. The remaining width of the composite is given to the
+ * last column containing a child which grabs excess horizontal space. There is
+ * no spacing between the children.
+ * </p>
+ * <p>
+ * The preferred sizes of the children are cached in their
+ * {@link BreadcrumbLayoutData}, which is created if a child has no layout data.
+ * Sizes and positions are computed in time linear in the number of children.
+ * </p>
+ */
+final class BreadcrumbLayout extends Layout {
+
+	/**
+	 * Number of columns of a single row layout.
+	 */
+	public static final int SINGLE_ROW = Integer.MAX_VALUE;
+
+	private final int fColumns;
+
+	/**
+	 * Margin at the left and the right edge of the composite.
+	 */
+	public int marginWidth;
+
+	/**
+	 * Margin at the top and the bottom edge of the composite.
+	 */
+	public int marginHeight;
+
+	/**
+	 * Additional margin at the bottom edge of the composite.
+	 */
+	public int marginBottom;
+
+	/**
+	 * Creates a new layout.
+	 * 
+	 * @param columns
+	 *            the number of children in a row, {@link #SINGLE_ROW} to
+	 *            place all children in one row
+	 */
+	public BreadcrumbLayout(final int columns) {
+		this.fColumns = Math.max(1, columns);
+	}
+
+	/**
+	 * The cells of the children in the layout.
+	 */
+	private static final class Cells {
+		Control[] controls;
+		Point[] sizes;
+		int count;
+		int columns;
+		int[] columnWidths;
+		int[] rowHeights;
+		int grabColumn = -1;
+		int width;
+		int height;
+	}
+
+	@Override
+	protected Point computeSize(final Composite composite, final int wHint,
+			final int hHint, final boolean flushCache) {
+		final Cells cells = computeCells(composite, flushCache);
+
+		int width = cells.width + 2 * this.marginWidth;
+		int height = cells.height + 2 * this.marginHeight + this.marginBottom;
+		if (wHint != SWT.DEFAULT) {
+			width = wHint;
+		}
+		if (hHint != SWT.DEFAULT) {
+			height = hHint;
+		}
+		return new Point(width, height);
+	}
+
+	@Override
+	protected void layout(final Composite composite, final boolean flushCache) {
+		final Cells cells = computeCells(composite, flushCache);
+		if (cells.count == 0) {
+			return;
+		}
+
+		final Rectangle area = composite.getClientArea();
+		if (cells.grabColumn >= 0) {
+			final int extra = area.width - 2 * this.marginWidth - cells.width;
+			cells.columnWidths[cells.grabColumn] = Math.max(0,
+					cells.columnWidths[cells.grabColumn] + extra);
+		}
+
+		final int left = area.x + this.marginWidth;
+		int x = left;
+		int y = area.y + this.marginHeight;
+		for (int i = 0; i < cells.count; i++) {
+			final int column = i % cells.columns;
+			final int row = i / cells.columns;
+			if (column == 0 && i > 0) {
+				x = left;
+				y += cells.rowHeights[row - 1];
+			}
+
+			final int width = cells.columnWidths[column];
+			final int height = Math.min(cells.sizes[i].y, cells.rowHeights[row]);
+			cells.controls[i].setBounds(x, y + (cells.rowHeights[row] - height)
+					/ 2, width, height);
+			x += width;
+		}
+	}
+
+	@Override
+	protected boolean flushCache(final Control control) {
+		final Object data = control.getLayoutData();
+		if (data instanceof BreadcrumbLayoutData) {
+			((BreadcrumbLayoutData) data).flushCache();
+		}
+		return true;
+	}
+
+	/**
+	 * Computes the sizes of the columns and rows for the children of the
+	 * given composite.
+	 */
+	private Cells computeCells(final Composite composite,
+			final boolean flushCache) {
+		final Control[] children = composite.getChildren();
+
+		final Cells cells = new Cells();
+		cells.controls = new Control[children.length];
+		cells.sizes = new Point[children.length];
+
+		final boolean[] grab = new boolean[children.length];
+		for (int i = 0; i < children.length; i++) {
+			final BreadcrumbLayoutData data = getLayoutData(children[i]);
+			if (data.exclude) {
+				continue;
+			}
+
+			cells.controls[cells.count] = children[i];
+			cells.sizes[cells.count] = data.computeSize(children[i],
+					flushCache);
+			grab[cells.count] = data.grabExcessHorizontalSpace;
+			cells.count++;
+		}
+
+		cells.columns = Math.max(1, Math.min(this.fColumns, cells.count));
+		cells.columnWidths = new int[cells.columns];
+		cells.rowHeights = new int[(cells.count + cells.columns - 1)
+				/ cells.columns];
+
+		for (int i = 0; i < cells.count; i++) {
+			final int column = i % cells.columns;
+			final int row = i / cells.columns;
+			cells.columnWidths[column] = Math.max(cells.columnWidths[column],
+					cells.sizes[i].x);
+			cells.rowHeights[row] = Math.max(cells.rowHeights[row],
+					cells.sizes[i].y);
+			if (grab[i]) {
+				cells.grabColumn = Math.max(cells.grabColumn, column);
+			}
+		}
+
+		for (int i = 0; i < cells.columns; i++) {
+			cells.width += cells.columnWidths[i];
+		}
+		for (int i = 0; i < cells.rowHeights.length; i++) {
+			cells.height += cells.rowHeights[i];
+		}
+
+		return cells;
+	}
+
+	/**
+	 * Returns the layout data of the given control, creating it if the
+	 * control does not have any.
+	 */
+	private static BreadcrumbLayoutData getLayoutData(final Control control) {
+		final Object data = control.getLayoutData();
+		if (data instanceof BreadcrumbLayoutData) {
+			return (BreadcrumbLayoutData) data;
+		}
+
+		final BreadcrumbLayoutData layoutData = new BreadcrumbLayoutData();
+		control.setLayoutData(layoutData);
+		return layoutData;
+	}
+}
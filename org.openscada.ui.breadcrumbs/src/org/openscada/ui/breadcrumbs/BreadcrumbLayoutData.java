@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright (c) 2012 TH4 SYSTEMS GmbH and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Jens Reimann (TH4 SYSTEMS GmbH) - initial API and implementation
+ *******************************************************************************/
+package org.openscada.ui.breadcrumbs;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.widgets.Control;
+
+/**
+ * Layout data of the children of a composite using a {@link BreadcrumbLayout}.
+ * It also keeps the cached preferred size of the child.
+ */
+final class BreadcrumbLayoutData {
+
+	/**
+	 * Whether the column of the control takes the remaining horizontal space
+	 * of the composite.
+	 */
+	public boolean grabExcessHorizontalSpace;
+
+	/**
+	 * Whether the control is ignored by the layout.
+	 */
+	public boolean exclude;
+
+	private int fCacheWidth = -1;
+	private int fCacheHeight = -1;
+
+	/**
+	 * Returns the preferred size of the control, computing it only if it is
+	 * not cached yet.
+	 * 
+	 * @param control
+	 *            the control this data belongs to
+	 * @param flushCache
+	 *            <code>true</code> to discard the cached size
+	 * @return the preferred size of the control
+	 */
+	Point computeSize(final Control control, final boolean flushCache) {
+		if (flushCache) {
+			flushCache();
+		}
+		if (this.fCacheWidth < 0) {
+			final Point size = control.computeSize(SWT.DEFAULT, SWT.DEFAULT,
+					flushCache);
+			this.fCacheWidth = size.x;
+			this.fCacheHeight = size.y;
+		}
+		return new Point(this.fCacheWidth, this.fCacheHeight);
+	}
+
+	/**
+	 * Discards the cached size.
+	 */
+	void flushCache() {
+		this.fCacheWidth = -1;
+		this.fCacheHeight = -1;
+	}
+}
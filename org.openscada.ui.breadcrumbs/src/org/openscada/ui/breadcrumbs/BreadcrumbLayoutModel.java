@@ -0,0 +1,256 @@
+/*******************************************************************************
+ * Copyright (c) 2012 TH4 SYSTEMS GmbH and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Jens Reimann (TH4 SYSTEMS GmbH) - initial API and implementation
+ *******************************************************************************/
+package org.openscada.ui.breadcrumbs;
+
+import java.util.List;
+
+import org.eclipse.jface.viewers.IElementComparer;
+import org.eclipse.jface.viewers.TreePath;
+
+/**
+ * The state of the breadcrumb chain, independent of any widget.
+ * <p>
+ * The model keeps the path and the widths of each item of a
+ * {@link BreadcrumbViewer}. It decides which items of a new chain can be kept
+ * and which items show their text in the available width. The viewer mirrors
+ * its items into the model and applies the results to the widgets.
+ * </p>
+ */
+final class BreadcrumbLayoutModel {
+
+	private final boolean fCompareFullPath;
+	private IElementComparer fComparer;
+
+	private TreePath[] fPaths = new TreePath[8];
+	private int[] fTextWidths = new int[8];
+	private int[] fImageWidths = new int[8];
+	private int fSize;
+
+	private int fFirstText;
+
+	/**
+	 * Creates an empty model.
+	 * 
+	 * @param compareFullPath
+	 *            <code>true</code> if items are only kept when their whole
+	 *            path matches, <code>false</code> if the last segment of the
+	 *            path is sufficient because the items form a chain
+	 */
+	public BreadcrumbLayoutModel(final boolean compareFullPath) {
+		this.fCompareFullPath = compareFullPath;
+	}
+
+	/**
+	 * Sets the comparer used to compare the elements of the paths.
+	 * 
+	 * @param comparer
+	 *            the comparer, <code>null</code> to use
+	 *            {@link Object#equals(Object)}
+	 */
+	public void setComparer(final IElementComparer comparer) {
+		this.fComparer = comparer;
+	}
+
+	/**
+	 * Returns the number of items.
+	 * 
+	 * @return the number of items
+	 */
+	public int getSize() {
+		return this.fSize;
+	}
+
+	/**
+	 * Truncates the model to the given number of items.
+	 * 
+	 * @param size
+	 *            the new number of items, not larger than the current one
+	 */
+	public void setSize(final int size) {
+		for (int i = size; i < this.fSize; i++) {
+			this.fPaths[i] = null;
+		}
+		this.fSize = Math.min(size, this.fSize);
+		this.fFirstText = Math.min(this.fFirstText, Math.max(0, size - 1));
+	}
+
+	/**
+	 * Returns the path of an item.
+	 * 
+	 * @param index
+	 *            the index of the item
+	 * @return the path of the item, <code>null</code> if the item is not
+	 *         backed by an element
+	 */
+	public TreePath getPath(final int index) {
+		return this.fPaths[index];
+	}
+
+	/**
+	 * Sets the path of an item. The index may be the current size of the
+	 * model, which appends a new item.
+	 * 
+	 * @param index
+	 *            the index of the item
+	 * @param path
+	 *            the path of the item, <code>null</code> if the item is not
+	 *            backed by an element
+	 */
+	public void setPath(final int index, final TreePath path) {
+		if (index == this.fSize) {
+			ensureCapacity(this.fSize + 1);
+			this.fTextWidths[index] = 0;
+			this.fImageWidths[index] = 0;
+			this.fSize++;
+		}
+		this.fPaths[index] = path;
+	}
+
+	/**
+	 * Returns the number of leading items which already show the paths of the
+	 * new chain and can be kept as they are.
+	 * 
+	 * @param paths
+	 *            the paths of the new chain
+	 * @return the length of the common prefix of the current and the new chain
+	 */
+	public int getSharedPrefixLength(final List paths) {
+		final int size = Math.min(this.fSize, paths.size());
+		boolean compareFullPath = this.fCompareFullPath;
+		for (int i = 0; i < size; i++) {
+			final TreePath path = (TreePath) paths.get(i);
+			if (!isSamePath(this.fPaths[i], path, compareFullPath)) {
+				return i;
+			}
+			if (path == TreePath.EMPTY) {
+				// the item of the elided levels does not tell whether the
+				// levels it stands for are the same, so the items behind it
+				// no longer form a chain with the items in front of it
+				compareFullPath = true;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Tells whether an item showing the given path can be kept for the new
+	 * path. Unless the whole path is compared, this assumes all items in front
+	 * of it are kept as well.
+	 */
+	private boolean isSamePath(final TreePath itemPath, final TreePath path,
+			final boolean compareFullPath) {
+		if (itemPath == path) {
+			// the viewer passes the cached paths of kept items again, checking
+			// them by identity leaves their segment arrays untouched
+			return true;
+		}
+		if (itemPath == null
+				|| itemPath.getSegmentCount() != path.getSegmentCount()) {
+			return false;
+		}
+
+		if (compareFullPath) {
+			return path.equals(itemPath, this.fComparer);
+		}
+
+		final Object a = path.getLastSegment();
+		final Object b = itemPath.getLastSegment();
+		if (a == b) {
+			return true;
+		}
+		if (a == null || b == null) {
+			return false;
+		}
+		if (this.fComparer == null) {
+			return a.equals(b);
+		}
+		return this.fComparer.equals(a, b);
+	}
+
+	/**
+	 * Sets the widths of an item.
+	 * 
+	 * @param index
+	 *            the index of the item
+	 * @param textWidth
+	 *            the width of the item showing its text
+	 * @param imageWidth
+	 *            the width of the item showing only its image
+	 */
+	public void setWidths(final int index, final int textWidth,
+			final int imageWidth) {
+		this.fTextWidths[index] = textWidth;
+		this.fImageWidths[index] = imageWidth;
+	}
+
+	/**
+	 * Fits the items into the given width.
+	 * <p>
+	 * Items hide their text from the left until the chain fits, the last item
+	 * always shows its text. The number of items which hide their text is
+	 * found in a single pass over the item widths.
+	 * </p>
+	 * 
+	 * @param width
+	 *            the available width
+	 * @return the index of the first item which shows its text
+	 */
+	public int fit(final int width) {
+		int remainingTextWidth = 0;
+		for (int i = 0; i < this.fSize; i++) {
+			remainingTextWidth += this.fTextWidths[i];
+		}
+
+		int firstText = 0;
+		int leadingImageWidth = 0;
+		while (firstText < this.fSize - 1
+				&& leadingImageWidth + remainingTextWidth > width) {
+			leadingImageWidth += this.fImageWidths[firstText];
+			remainingTextWidth -= this.fTextWidths[firstText];
+			firstText++;
+		}
+
+		this.fFirstText = firstText;
+		return firstText;
+	}
+
+	/**
+	 * Tells whether an item shows its text after the last call to
+	 * {@link #fit(int)}.
+	 * 
+	 * @param index
+	 *            the index of the item
+	 * @return <code>true</code> if the item shows its text
+	 */
+	public boolean isShowText(final int index) {
+		return index >= this.fFirstText;
+	}
+
+	private void ensureCapacity(final int capacity) {
+		if (capacity <= this.fPaths.length) {
+			return;
+		}
+
+		final int length = Math.max(capacity, this.fPaths.length * 2);
+
+		final TreePath[] paths = new TreePath[length];
+		System.arraycopy(this.fPaths, 0, paths, 0, this.fSize);
+		this.fPaths = paths;
+
+		final int[] textWidths = new int[length];
+		System.arraycopy(this.fTextWidths, 0, textWidths, 0, this.fSize);
+		this.fTextWidths = textWidths;
+
+		final int[] imageWidths = new int[length];
+		System.arraycopy(this.fImageWidths, 0, imageWidths, 0, this.fSize);
+		this.fImageWidths = imageWidths;
+	}
+}
@@ -26,6 +26,28 @@ public class BreadcrumbMessages extends NLS {
 
 	public static String BreadcrumbItemDropDown_showDropDownMenu_action_toolTip;
 
+	public static String BreadcrumbViewer_pending_label;
+
+	public static String DeferredTreePathContentProvider_pending_label;
+
+	public static String DeferredTreePathContentProvider_job_name;
+
+	public static String BreadcrumbPrefetcher_job_name;
+
+	public static String BreadcrumbSearchPopup_job_name;
+
+	public static String BreadcrumbSearchPopup_message;
+
+	public static String BreadcrumbSearchPopup_truncated_label;
+
+	public static String BreadcrumbSearchIndexUpdater_job_name;
+
+	public static String BreadcrumbViewer_resolveJob_name;
+
+	public static String BreadcrumbViewer_elided_label;
+
+	public static String BreadcrumbViewer_elided_toolTip;
+
 	static {
 		// initialize resource bundle
 		NLS.initializeMessages(BUNDLE_NAME, BreadcrumbMessages.class);
@@ -0,0 +1,304 @@
+/*******************************************************************************
+ * Copyright (c) 2012 TH4 SYSTEMS GmbH and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Jens Reimann (TH4 SYSTEMS GmbH) - initial API and implementation
+ *******************************************************************************/
+package org.openscada.ui.breadcrumbs;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openscada.ui.breadcrumbs.internal.BreadcrumbsPlugin;
+import org.openscada.ui.breadcrumbs.internal.PathIndexFile;
+
+/**
+ * A persistent index of the labels of content tree paths, which makes the
+ * search of a breadcrumb usable before the content has been walked.
+ * <p>
+ * Paths are stored as arrays of segment ids, see
+ * {@link IBreadcrumbPathCodec}. The index is kept in a compact binary file in
+ * the state location of the plug-in. The file is read into memory on first
+ * use, changes are appended to it as they are made. The index is discarded if
+ * it was written by another version of the format or with another validity
+ * token, e.g. for another server or schema.
+ * </p>
+ * <p>
+ * The index is thread safe, so that it can be updated from the jobs which
+ * watch the content.
+ * </p>
+ * 
+ * @see #getIndex(String, String)
+ * @see BreadcrumbViewer#setSearchIndex(BreadcrumbPathIndex,
+ *      IBreadcrumbPathCodec)
+ */
+public final class BreadcrumbPathIndex {
+
+	private final PathIndexFile fFile;
+	private String fValidityToken;
+
+	private Map fEntries;
+	private LabelIndex fLabelIndex;
+
+	/**
+	 * Returns the shared index with the given name.
+	 * 
+	 * @param name
+	 *            the name of the index
+	 * @param validityToken
+	 *            the token identifying the content the index is built from
+	 * @return the index
+	 */
+	public static BreadcrumbPathIndex getIndex(final String name,
+			final String validityToken) {
+		return BreadcrumbsPlugin.getDefault().getPathIndex(name,
+				validityToken);
+	}
+
+	/**
+	 * Creates an index stored in the given file. Clients should use
+	 * {@link #getIndex(String, String)} instead.
+	 * 
+	 * @param file
+	 *            the file of the index
+	 * @param validityToken
+	 *            the token identifying the content the index is built from
+	 */
+	public BreadcrumbPathIndex(final File file, final String validityToken) {
+		this.fValidityToken = validityToken != null ? validityToken : ""; //$NON-NLS-1$
+		this.fFile = new PathIndexFile(file, this.fValidityToken);
+	}
+
+	/**
+	 * Returns the token identifying the content the index is built from.
+	 * 
+	 * @return the validity token
+	 */
+	public synchronized String getValidityToken() {
+		return this.fValidityToken;
+	}
+
+	/**
+	 * Sets the token identifying the content the index is built from. If it
+	 * differs from the current token, all paths are removed.
+	 * 
+	 * @param validityToken
+	 *            the validity token, <code>null</code> is the same as an empty
+	 *            token
+	 */
+	public synchronized void setValidityToken(final String validityToken) {
+		final String token = validityToken != null ? validityToken : ""; //$NON-NLS-1$
+		if (token.equals(this.fValidityToken)) {
+			return;
+		}
+		this.fValidityToken = token;
+		this.fFile.setValidityToken(token);
+		clear();
+	}
+
+	/**
+	 * Returns the number of paths in the index.
+	 * 
+	 * @return the number of paths
+	 */
+	public synchronized int size() {
+		return getEntries().size();
+	}
+
+	/**
+	 * Sets the label of a path. Nothing is written if the label did not
+	 * change.
+	 * 
+	 * @param path
+	 *            the segment ids of the path
+	 * @param label
+	 *            the label of the last segment
+	 */
+	public synchronized void put(final String[] path, final String label) {
+		final List key = Arrays.asList(path.clone());
+		final String text = label != null ? label : ""; //$NON-NLS-1$
+		final String old = (String) getEntries().put(key, text);
+		if (text.equals(old)) {
+			return;
+		}
+
+		this.fFile.put(path, text);
+		if (old != null) {
+			this.fLabelIndex = null;
+		} else if (this.fLabelIndex != null) {
+			this.fLabelIndex.add(key, text);
+		}
+	}
+
+	/**
+	 * Removes a path and all paths below it.
+	 * 
+	 * @param path
+	 *            the segment ids of the path
+	 */
+	public synchronized void remove(final String[] path) {
+		boolean removed = false;
+		final Iterator iterator = getEntries().keySet().iterator();
+		while (iterator.hasNext()) {
+			final List key = (List) iterator.next();
+			if (startsWith(key, path)) {
+				iterator.remove();
+				this.fFile.remove((String[]) key.toArray(new String[key.size()]));
+				removed = true;
+			}
+		}
+		if (removed) {
+			this.fLabelIndex = null;
+		}
+	}
+
+	/**
+	 * Removes the children of a path which are not among the given ones,
+	 * together with all paths below them.
+	 * 
+	 * @param path
+	 *            the segment ids of the parent path
+	 * @param childIds
+	 *            the ids of the children to keep
+	 */
+	public synchronized void retainChildren(final String[] path,
+			final Set childIds) {
+		boolean removed = false;
+		final Iterator iterator = getEntries().keySet().iterator();
+		while (iterator.hasNext()) {
+			final List key = (List) iterator.next();
+			if (key.size() > path.length && startsWith(key, path)
+					&& !childIds.contains(key.get(path.length))) {
+				iterator.remove();
+				this.fFile.remove((String[]) key.toArray(new String[key.size()]));
+				removed = true;
+			}
+		}
+		if (removed) {
+			this.fLabelIndex = null;
+		}
+	}
+
+	/**
+	 * Returns the label of a path.
+	 * 
+	 * @param path
+	 *            the segment ids of the path
+	 * @return the label, or <code>null</code> if the path is not indexed
+	 */
+	public synchronized String getLabel(final String[] path) {
+		return (String) getEntries().get(Arrays.asList(path));
+	}
+
+	/**
+	 * Returns all paths, in the order they were added.
+	 * 
+	 * @return the segment ids of the paths
+	 */
+	public synchronized List getPaths() {
+		return toPaths(new ArrayList(getEntries().keySet()));
+	}
+
+	/**
+	 * Returns the paths whose label contains the given text, ignoring case.
+	 * 
+	 * @param query
+	 *            the text to search for
+	 * @return the segment ids of the matching paths, in the order they were
+	 *         added
+	 */
+	public synchronized List find(final String query) {
+		return toPaths(getLabelIndex().find(query));
+	}
+
+	/**
+	 * Reads the file and indexes the labels, unless that has been done
+	 * already. Called from a job, so that the first search does not wait for
+	 * it.
+	 */
+	synchronized void load() {
+		getLabelIndex();
+	}
+
+	/**
+	 * Removes all paths.
+	 */
+	public synchronized void clear() {
+		this.fEntries = new LinkedHashMap();
+		this.fLabelIndex = null;
+		this.fFile.rewrite(this.fEntries);
+	}
+
+	/**
+	 * Writes pending changes to the file.
+	 */
+	public synchronized void flush() {
+		this.fFile.flush();
+	}
+
+	/**
+	 * Writes pending changes and closes the file. The index is read again on
+	 * next use.
+	 */
+	public synchronized void close() {
+		this.fFile.close();
+		this.fEntries = null;
+		this.fLabelIndex = null;
+	}
+
+	/**
+	 * Returns the entries, reading the file on first use.
+	 */
+	private Map getEntries() {
+		if (this.fEntries == null) {
+			this.fEntries = this.fFile.load();
+		}
+		return this.fEntries;
+	}
+
+	/**
+	 * Returns the index of the labels, building it on first use.
+	 */
+	private LabelIndex getLabelIndex() {
+		if (this.fLabelIndex == null) {
+			this.fLabelIndex = new LabelIndex();
+			final Iterator iterator = getEntries().entrySet().iterator();
+			while (iterator.hasNext()) {
+				final Map.Entry entry = (Map.Entry) iterator.next();
+				this.fLabelIndex.add(entry.getKey(), (String) entry.getValue());
+			}
+		}
+		return this.fLabelIndex;
+	}
+
+	private static boolean startsWith(final List key, final String[] path) {
+		if (key.size() < path.length) {
+			return false;
+		}
+		for (int i = 0; i < path.length; i++) {
+			if (!path[i].equals(key.get(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static List toPaths(final List keys) {
+		final List paths = new ArrayList(keys.size());
+		for (int i = 0, size = keys.size(); i < size; i++) {
+			final List key = (List) keys.get(i);
+			paths.add(key.toArray(new String[key.size()]));
+		}
+		return paths;
+	}
+}
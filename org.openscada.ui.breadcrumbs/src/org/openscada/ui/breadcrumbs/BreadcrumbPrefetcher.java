@@ -0,0 +1,291 @@
+/*******************************************************************************
+ * Copyright (c) 2012 TH4 SYSTEMS GmbH and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Jens Reimann (TH4 SYSTEMS GmbH) - initial API and implementation
+ *******************************************************************************/
+package org.openscada.ui.breadcrumbs;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.viewers.ITreePathContentProvider;
+import org.eclipse.jface.viewers.TreePath;
+
+/**
+ * Fetches the children of breadcrumb items in the background before their
+ * drop-down is opened.
+ * <p>
+ * A breadcrumb viewer with a prefetcher starts fetching the children of an
+ * item when the pointer hovers the drop-down arrow of the item or the item
+ * gets the keyboard focus. The children are kept for a short time, keyed by
+ * the element of the item. A drop-down which shows the children of that
+ * element takes them with {@link #consume(Object)} instead of fetching them
+ * again, waiting for a fetch which is still running.
+ * {@link DeferredTreePathContentProvider} does this for the elements of its
+ * input when a prefetcher is set.
+ * </p>
+ * <p>
+ * The content provider must be able to handle calls to
+ * <code>getChildren()</code> from a non-UI thread.
+ * </p>
+ * 
+ * @see BreadcrumbViewer#setDropDownPrefetcher(BreadcrumbPrefetcher)
+ */
+public class BreadcrumbPrefetcher {
+
+	/**
+	 * Default time in milliseconds prefetched children are kept.
+	 */
+	public static final long DEFAULT_TIME_TO_LIVE = 5000;
+
+	/**
+	 * The prefetched children of an element.
+	 */
+	private static final class Entry {
+		Job fJob;
+		Object[] fChildren;
+		long fTime;
+	}
+
+	private final ITreePathContentProvider fContentProvider;
+	private final Map fEntries = new HashMap();
+
+	private long fTimeToLive = DEFAULT_TIME_TO_LIVE;
+
+	private long fPrefetchCount;
+	private long fHitCount;
+	private long fMissCount;
+
+	/**
+	 * Creates a prefetcher.
+	 * 
+	 * @param contentProvider
+	 *            the content provider which fetches the children of the
+	 *            breadcrumb items
+	 */
+	public BreadcrumbPrefetcher(final ITreePathContentProvider contentProvider) {
+		this.fContentProvider = contentProvider;
+	}
+
+	/**
+	 * Sets the time prefetched children are kept.
+	 * 
+	 * @param milliseconds
+	 *            the time to live of prefetched children
+	 */
+	public synchronized void setTimeToLive(final long milliseconds) {
+		this.fTimeToLive = Math.max(0, milliseconds);
+	}
+
+	/**
+	 * Returns the time prefetched children are kept.
+	 * 
+	 * @return the time to live in milliseconds
+	 */
+	public synchronized long getTimeToLive() {
+		return this.fTimeToLive;
+	}
+
+	/**
+	 * Starts fetching the children of the element at the end of the given
+	 * path, unless they are already being fetched or are still cached.
+	 * 
+	 * @param path
+	 *            the path of the breadcrumb item
+	 */
+	public synchronized void prefetch(final TreePath path) {
+		final Object element = path.getLastSegment();
+		if (element == null) {
+			return;
+		}
+
+		purge();
+		if (this.fEntries.containsKey(element)) {
+			return;
+		}
+
+		final Entry entry = new Entry();
+		entry.fJob = new Job(
+				BreadcrumbMessages.BreadcrumbPrefetcher_job_name) {
+			@Override
+			protected IStatus run(final IProgressMonitor monitor) {
+				Object[] children = null;
+				try {
+					children = BreadcrumbPrefetcher.this.fContentProvider
+							.getChildren(path);
+					if (children == null) {
+						children = new Object[0];
+					}
+				} finally {
+					synchronized (BreadcrumbPrefetcher.this) {
+						if (BreadcrumbPrefetcher.this.fEntries.get(element) == entry) {
+							if (children == null || monitor.isCanceled()) {
+								// a failed fetch is forgotten, so the next
+								// prefetch tries again
+								BreadcrumbPrefetcher.this.fEntries
+										.remove(element);
+							} else {
+								entry.fJob = null;
+								entry.fChildren = children;
+								entry.fTime = System.currentTimeMillis();
+							}
+						}
+					}
+				}
+				return monitor.isCanceled() ? Status.CANCEL_STATUS
+						: Status.OK_STATUS;
+			}
+		};
+		entry.fJob.setSystem(true);
+		this.fEntries.put(element, entry);
+		this.fPrefetchCount++;
+		entry.fJob.schedule();
+	}
+
+	/**
+	 * Takes the prefetched children of the given element out of the cache. If
+	 * they are still being fetched, waits for the running fetch instead of
+	 * fetching them a second time.
+	 * <p>
+	 * This is meant to be called once for the root of a drop-down, every call
+	 * counts as a hit or a miss.
+	 * </p>
+	 * 
+	 * @param element
+	 *            the element whose children are needed
+	 * @return the children, or <code>null</code> if they have not been
+	 *         prefetched or the fetch has been cancelled
+	 */
+	public Object[] consume(final Object element) {
+		final Job job;
+		synchronized (this) {
+			purge();
+
+			final Entry entry = (Entry) this.fEntries.get(element);
+			if (entry == null) {
+				this.fMissCount++;
+				return null;
+			}
+			if (entry.fChildren != null) {
+				return take(element, entry);
+			}
+			job = entry.fJob;
+		}
+
+		// the job locks the prefetcher when it is done, so it is joined
+		// without holding the lock
+		try {
+			job.join();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		synchronized (this) {
+			final Entry entry = (Entry) this.fEntries.get(element);
+			if (entry == null || entry.fChildren == null) {
+				this.fMissCount++;
+				return null;
+			}
+			return take(element, entry);
+		}
+	}
+
+	private Object[] take(final Object element, final Entry entry) {
+		this.fEntries.remove(element);
+		this.fHitCount++;
+		return entry.fChildren;
+	}
+
+	/**
+	 * Returns the number of fetches which have been started.
+	 * 
+	 * @return the number of prefetches
+	 */
+	public synchronized long getPrefetchCount() {
+		return this.fPrefetchCount;
+	}
+
+	/**
+	 * Returns the number of times prefetched children could be used.
+	 * 
+	 * @return the number of cache hits
+	 */
+	public synchronized long getHitCount() {
+		return this.fHitCount;
+	}
+
+	/**
+	 * Returns the number of times children had not been prefetched, or their
+	 * fetch had been cancelled.
+	 * 
+	 * @return the number of cache misses
+	 */
+	public synchronized long getMissCount() {
+		return this.fMissCount;
+	}
+
+	/**
+	 * Returns the share of drop-downs which could use prefetched children.
+	 * 
+	 * @return the hit rate between <code>0</code> and <code>1</code>
+	 */
+	public synchronized double getHitRate() {
+		final long total = this.fHitCount + this.fMissCount;
+		if (total == 0) {
+			return 0;
+		}
+		return (double) this.fHitCount / total;
+	}
+
+	/**
+	 * Resets the prefetch, hit and miss counters.
+	 */
+	public synchronized void resetCounters() {
+		this.fPrefetchCount = 0;
+		this.fHitCount = 0;
+		this.fMissCount = 0;
+	}
+
+	/**
+	 * Cancels all running fetches and discards the cached children.
+	 */
+	public synchronized void dispose() {
+		final Iterator iterator = this.fEntries.values().iterator();
+		while (iterator.hasNext()) {
+			final Entry entry = (Entry) iterator.next();
+			if (entry.fJob != null) {
+				entry.fJob.cancel();
+			}
+		}
+		this.fEntries.clear();
+	}
+
+	/**
+	 * Discards the children which have been kept longer than the time to
+	 * live, and the fetches which have been cancelled before they ran.
+	 */
+	private void purge() {
+		final long now = System.currentTimeMillis();
+		final Iterator iterator = this.fEntries.values().iterator();
+		while (iterator.hasNext()) {
+			final Entry entry = (Entry) iterator.next();
+			if (entry.fChildren != null) {
+				if (now - entry.fTime > this.fTimeToLive) {
+					iterator.remove();
+				}
+			} else if (entry.fJob.getState() == Job.NONE) {
+				iterator.remove();
+			}
+		}
+	}
+}
@@ -0,0 +1,313 @@
+/*******************************************************************************
+ * Copyright (c) 2012 TH4 SYSTEMS GmbH and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jens Reimann (TH4 SYSTEMS GmbH) - initial API and implementation
+ *******************************************************************************/
+package org.openscada.ui.breadcrumbs;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.viewers.ITreePathContentProvider;
+import org.eclipse.jface.viewers.ITreePathLabelProvider;
+import org.eclipse.jface.viewers.TreePath;
+import org.eclipse.jface.viewers.ViewerLabel;
+import org.eclipse.swt.widgets.Display;
+import org.openscada.ui.breadcrumbs.internal.BreadcrumbsPlugin;
+
+/**
+ * Keeps the persistent search index of a breadcrumb viewer up to date with the
+ * content changes the viewer is notified of.
+ * <p>
+ * When the viewer labels one of its items with a new text, the label of the
+ * path is written to the index, so that a renamed element is found under its
+ * new label. When the viewer is refreshed, the children of the refreshed
+ * paths are fetched again in a job with the search content provider. They
+ * are labeled on the UI thread and written to the index, indexed children
+ * which are gone are removed together with the paths below them. The index
+ * itself is only read and written in the job, so that the UI thread never
+ * waits for its file.
+ * </p>
+ *
+ * @see BreadcrumbViewer#setSearchIndex(BreadcrumbPathIndex,
+ *      IBreadcrumbPathCodec)
+ */
+final class BreadcrumbSearchIndexUpdater {
+
+	/**
+	 * A change of the index, which either puts the label of a path or removes
+	 * the children of a path which are not among the given ones.
+	 */
+	private static final class Change {
+
+		private final BreadcrumbPathIndex fIndex;
+		private final String[] fPath;
+		private final String fLabel;
+		private final Set fChildIds;
+
+		public Change(final BreadcrumbPathIndex index, final String[] path,
+				final String label, final Set childIds) {
+			this.fIndex = index;
+			this.fPath = path;
+			this.fLabel = label;
+			this.fChildIds = childIds;
+		}
+
+		public void apply() {
+			if (this.fChildIds != null) {
+				this.fIndex.retainChildren(this.fPath, this.fChildIds);
+			} else {
+				this.fIndex.put(this.fPath, this.fLabel);
+			}
+		}
+	}
+
+	/**
+	 * A path whose children are fetched again.
+	 */
+	private static final class Refresh {
+
+		private final ITreePathContentProvider fContentProvider;
+		private final Object fInput;
+		private final TreePath fPath;
+
+		public Refresh(final ITreePathContentProvider contentProvider,
+				final Object input, final TreePath path) {
+			this.fContentProvider = contentProvider;
+			this.fInput = input;
+			this.fPath = path;
+		}
+
+		public Object[] fetchChildren() {
+			if (this.fPath.getSegmentCount() == 0) {
+				return this.fContentProvider.getElements(this.fInput);
+			}
+			return this.fContentProvider.hasChildren(this.fPath) ? this.fContentProvider
+					.getChildren(this.fPath) : new Object[0];
+		}
+	}
+
+	/**
+	 * Fetches the children of the refreshed paths and applies the changes to
+	 * the index.
+	 */
+	private final class UpdateJob extends Job {
+
+		public UpdateJob() {
+			super(BreadcrumbMessages.BreadcrumbSearchIndexUpdater_job_name);
+			setSystem(true);
+		}
+
+		@Override
+		protected IStatus run(final IProgressMonitor monitor) {
+			final List refreshes = takeRefreshes();
+			for (int i = 0, size = refreshes.size(); i < size; i++) {
+				if (monitor.isCanceled()) {
+					return Status.CANCEL_STATUS;
+				}
+
+				final Refresh refresh = (Refresh) refreshes.get(i);
+				try {
+					childrenFetched(refresh.fPath, refresh.fetchChildren());
+				} catch (final RuntimeException e) {
+					// the index is updated again on the next refresh
+					BreadcrumbsPlugin.log(e);
+				}
+			}
+
+			final List changes = takeChanges();
+			for (int i = 0, size = changes.size(); i < size; i++) {
+				((Change) changes.get(i)).apply();
+			}
+			return Status.OK_STATUS;
+		}
+	}
+
+	private final BreadcrumbViewer fViewer;
+	private final Display fDisplay;
+	private final UpdateJob fJob = new UpdateJob();
+
+	/**
+	 * The changes not applied yet, guarded by this updater.
+	 */
+	private List fChanges = new ArrayList();
+
+	/**
+	 * The paths whose children are fetched next, guarded by this updater.
+	 */
+	private List fRefreshes = new ArrayList();
+
+	private boolean fDisposed;
+
+	/**
+	 * Creates the updater of the given viewer.
+	 *
+	 * @param viewer
+	 *            the viewer whose search index is updated
+	 */
+	public BreadcrumbSearchIndexUpdater(final BreadcrumbViewer viewer) {
+		this.fViewer = viewer;
+		this.fDisplay = viewer.getControl().getDisplay();
+	}
+
+	/**
+	 * Writes the new label of a path to the index. Called on the UI thread.
+	 *
+	 * @param path
+	 *            the path of the element
+	 * @param label
+	 *            the new label of the element
+	 */
+	public void labelChanged(final TreePath path, final String label) {
+		final BreadcrumbPathIndex index = this.fViewer.getSearchIndex();
+		if (index == null) {
+			return;
+		}
+
+		final String[] ids = encode(path);
+		if (ids != null) {
+			addChange(new Change(index, ids, label != null ? label : "", null)); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Fetches the children of a path again and updates them in the index.
+	 * Called on the UI thread.
+	 *
+	 * @param path
+	 *            the refreshed path, {@link TreePath#EMPTY} for the top level
+	 *            elements
+	 */
+	public void structureChanged(final TreePath path) {
+		if (this.fViewer.getSearchIndex() == null) {
+			return;
+		}
+
+		final Refresh refresh = new Refresh(
+				this.fViewer.getSearchContentProvider(),
+				this.fViewer.getSearchInput(), path);
+		synchronized (this) {
+			if (this.fDisposed) {
+				return;
+			}
+			this.fRefreshes.add(refresh);
+		}
+		this.fJob.schedule();
+	}
+
+	/**
+	 * Stops fetching children. Changes already made are still written to the
+	 * index.
+	 */
+	public void dispose() {
+		synchronized (this) {
+			this.fDisposed = true;
+			this.fRefreshes.clear();
+		}
+	}
+
+	/**
+	 * Hands the fetched children of a path over to the UI thread, which labels
+	 * them.
+	 */
+	private void childrenFetched(final TreePath path, final Object[] children) {
+		if (this.fDisplay.isDisposed()) {
+			return;
+		}
+
+		this.fDisplay.asyncExec(new Runnable() {
+			@Override
+			public void run() {
+				indexChildren(path, children);
+			}
+		});
+	}
+
+	/**
+	 * Writes the labels of the children of a path to the index, and removes
+	 * the indexed children which are gone.
+	 */
+	private void indexChildren(final TreePath path, final Object[] children) {
+		final BreadcrumbPathIndex index = this.fViewer.getSearchIndex();
+		if (index == null || this.fViewer.getControl().isDisposed()) {
+			return;
+		}
+		final String[] parentIds = encode(path);
+		if (parentIds == null) {
+			return;
+		}
+
+		final IBreadcrumbPathCodec codec = this.fViewer.getSearchCodec();
+		final ITreePathLabelProvider labelProvider = (ITreePathLabelProvider) this.fViewer
+				.getLabelProvider();
+		final Set childIds = new HashSet();
+		final List changes = new ArrayList();
+		for (int i = 0; i < children.length; i++) {
+			final String id = codec.getId(children[i]);
+			if (id == null) {
+				continue;
+			}
+			childIds.add(id);
+
+			final ViewerLabel label = new ViewerLabel("", null); //$NON-NLS-1$
+			labelProvider.updateLabel(label, path.createChildPath(children[i]));
+			final String[] ids = new String[parentIds.length + 1];
+			System.arraycopy(parentIds, 0, ids, 0, parentIds.length);
+			ids[parentIds.length] = id;
+			changes.add(new Change(index, ids,
+					label.getText() != null ? label.getText() : "", null)); //$NON-NLS-1$
+		}
+		changes.add(new Change(index, parentIds, null, childIds));
+
+		synchronized (this) {
+			this.fChanges.addAll(changes);
+		}
+		this.fJob.schedule();
+	}
+
+	private void addChange(final Change change) {
+		synchronized (this) {
+			this.fChanges.add(change);
+		}
+		this.fJob.schedule();
+	}
+
+	private synchronized List takeChanges() {
+		final List changes = this.fChanges;
+		this.fChanges = new ArrayList();
+		return changes;
+	}
+
+	private synchronized List takeRefreshes() {
+		final List refreshes = this.fRefreshes;
+		this.fRefreshes = new ArrayList();
+		return refreshes;
+	}
+
+	/**
+	 * Returns the segment ids of a path, or <code>null</code> if one of its
+	 * elements is not indexed.
+	 */
+	private String[] encode(final TreePath path) {
+		final IBreadcrumbPathCodec codec = this.fViewer.getSearchCodec();
+		final String[] ids = new String[path.getSegmentCount()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = codec.getId(path.getSegment(i));
+			if (ids[i] == null) {
+				return null;
+			}
+		}
+		return ids;
+	}
+}
@@ -0,0 +1,667 @@
+/*******************************************************************************
+ * Copyright (c) 2012 TH4 SYSTEMS GmbH and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Jens Reimann (TH4 SYSTEMS GmbH) - initial API and implementation
+ *******************************************************************************/
+package org.openscada.ui.breadcrumbs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.viewers.IBaseLabelProvider;
+import org.eclipse.jface.viewers.IElementComparer;
+import org.eclipse.jface.viewers.ILabelProvider;
+import org.eclipse.jface.viewers.ITreePathContentProvider;
+import org.eclipse.jface.viewers.ITreePathLabelProvider;
+import org.eclipse.jface.viewers.TreePath;
+import org.eclipse.jface.viewers.TreeSelection;
+import org.eclipse.jface.viewers.ViewerLabel;
+import org.eclipse.osgi.util.NLS;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.DisposeEvent;
+import org.eclipse.swt.events.DisposeListener;
+import org.eclipse.swt.events.KeyAdapter;
+import org.eclipse.swt.events.KeyEvent;
+import org.eclipse.swt.events.ModifyEvent;
+import org.eclipse.swt.events.ModifyListener;
+import org.eclipse.swt.events.ShellAdapter;
+import org.eclipse.swt.events.ShellEvent;
+import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.graphics.Rectangle;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Listener;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableItem;
+import org.eclipse.swt.widgets.Text;
+
+/**
+ * A popup which searches the whole content tree of a breadcrumb viewer and
+ * opens the selected match.
+ * <p>
+ * A background job walks the tree breadth first, so that the elements close to
+ * the root are found first, and hands the paths over to the UI thread in
+ * small batches. Every element is visited once, compared with the comparer of
+ * the viewer, and the walk stops at {@link #MAX_DEPTH} levels or after the
+ * search limit of the viewer. If elements are left out at the limit, a line
+ * below the matches tells the user. On the UI thread the paths are labeled,
+ * since label providers are not thread safe, and added to a
+ * {@link LabelIndex}.
+ * New paths matching the current text are appended to the result table right
+ * away, changing the text searches the index of the paths found so far. The
+ * job is cancelled and the paths found are released when the popup closes.
+ * </p>
+ * <p>
+ * If the viewer has a persistent {@link BreadcrumbPathIndex}, it is loaded in
+ * a job and then searched together with the paths found by the walk, which
+ * are written back to it. Matches from the index are resolved to elements
+ * when they are opened.
+ * </p>
+ * 
+ * @see BreadcrumbViewer#openSearchPopup()
+ */
+final class BreadcrumbSearchPopup {
+
+	/**
+	 * The maximum number of matches shown.
+	 */
+	static final int MAX_RESULTS = 500;
+
+	private static final int WIDTH = 400;
+	private static final int HEIGHT = 300;
+
+	/**
+	 * The maximum number of levels below the input which are searched.
+	 */
+	static final int MAX_DEPTH = 32;
+
+	/**
+	 * The default maximum number of elements which are searched.
+	 * 
+	 * @see BreadcrumbViewer#setSearchLimit(int)
+	 */
+	static final int DEFAULT_MAX_NODES = 100000;
+
+	/**
+	 * The maximum number of paths handed over to the UI thread at once.
+	 */
+	private static final int BATCH_SIZE = 256;
+
+	/**
+	 * The time in milliseconds after which the paths found so far are handed
+	 * over, even if the batch is not full.
+	 */
+	private static final long BATCH_INTERVAL = 50;
+
+	/**
+	 * Walks the content tree and hands the paths over in batches.
+	 */
+	private final class SearchJob extends Job {
+
+		private final ITreePathContentProvider fContentProvider;
+		private final Object fInput;
+		private final IElementComparer fComparer;
+		private final int fMaxNodes;
+
+		public SearchJob(final ITreePathContentProvider contentProvider,
+				final Object input, final IElementComparer comparer,
+				final int maxNodes) {
+			super(BreadcrumbMessages.BreadcrumbSearchPopup_job_name);
+			this.fContentProvider = contentProvider;
+			this.fInput = input;
+			this.fComparer = comparer;
+			this.fMaxNodes = maxNodes;
+			setSystem(true);
+		}
+
+		@Override
+		protected IStatus run(final IProgressMonitor monitor) {
+			final LinkedList queue = new LinkedList();
+			final Set visited = new HashSet();
+			List batch = new ArrayList();
+			long lastFlush = System.currentTimeMillis();
+
+			Object[] children = this.fContentProvider.getElements(this.fInput);
+			TreePath parent = TreePath.EMPTY;
+			boolean truncated = false;
+			while (true) {
+				if (monitor.isCanceled()) {
+					return Status.CANCEL_STATUS;
+				}
+
+				if (children != null) {
+					for (int i = 0; i < children.length; i++) {
+						// an element reachable on several paths, or on a
+						// cycle, is listed on the first one only
+						final Object key = new BreadcrumbViewer.ElementKey(
+								children[i], this.fComparer);
+						if (visited.contains(key)) {
+							continue;
+						}
+						// the search is only truncated if a new element is
+						// left out
+						if (visited.size() >= this.fMaxNodes) {
+							truncated = true;
+							break;
+						}
+						visited.add(key);
+						final TreePath path = parent
+								.createChildPath(children[i]);
+						batch.add(path);
+						if (path.getSegmentCount() < MAX_DEPTH) {
+							queue.add(path);
+						}
+					}
+				}
+
+				final long now = System.currentTimeMillis();
+				if (batch.size() >= BATCH_SIZE
+						|| !batch.isEmpty() && now - lastFlush >= BATCH_INTERVAL) {
+					if (!flush(batch)) {
+						return Status.OK_STATUS;
+					}
+					batch = new ArrayList();
+					lastFlush = now;
+				}
+
+				if (queue.isEmpty() || truncated) {
+					break;
+				}
+				parent = (TreePath) queue.removeFirst();
+				children = this.fContentProvider.hasChildren(parent) ? this.fContentProvider
+						.getChildren(parent) : null;
+			}
+
+			flush(batch, truncated);
+			return Status.OK_STATUS;
+		}
+
+		/**
+		 * Hands the paths over to the UI thread.
+		 * 
+		 * @return <code>false</code> if the popup is gone
+		 */
+		private boolean flush(final List batch) {
+			return flush(batch, false);
+		}
+
+		/**
+		 * Hands the paths over to the UI thread, and tells the popup if the
+		 * walk stopped at the limit.
+		 * 
+		 * @return <code>false</code> if the popup is gone
+		 */
+		private boolean flush(final List batch, final boolean truncated) {
+			if (BreadcrumbSearchPopup.this.fDisplay.isDisposed()) {
+				return false;
+			}
+
+			BreadcrumbSearchPopup.this.fDisplay.asyncExec(new Runnable() {
+				@Override
+				public void run() {
+					if (BreadcrumbSearchPopup.this.fJob == SearchJob.this) {
+						addPaths(batch);
+						if (truncated) {
+							searchTruncated(SearchJob.this.fMaxNodes);
+						}
+					}
+				}
+			});
+			return true;
+		}
+	}
+
+	private final BreadcrumbViewer fViewer;
+	private final Display fDisplay;
+	private final Shell fShell;
+	private final Text fText;
+	private final Table fTable;
+	private final Label fStatus;
+
+	private LabelIndex fIndex = new LabelIndex();
+	private final Map fLabels = new HashMap();
+
+	private final BreadcrumbPathIndex fPathIndex;
+	private final IBreadcrumbPathCodec fCodec;
+	private final Set fWalkedIds = new HashSet();
+	private final List fPendingPuts = new ArrayList();
+	private boolean fPathIndexLoaded;
+
+	private String fQuery = ""; //$NON-NLS-1$
+	private SearchJob fJob;
+
+	private long fQueryTime;
+	private long fFirstMatchDelay = -1;
+
+	/**
+	 * Creates the popup, it is opened by {@link #open()}.
+	 * 
+	 * @param viewer
+	 *            the viewer whose content is searched
+	 */
+	public BreadcrumbSearchPopup(final BreadcrumbViewer viewer) {
+		this.fViewer = viewer;
+		this.fPathIndex = viewer.getSearchIndex();
+		this.fCodec = viewer.getSearchCodec();
+
+		final Control control = viewer.getControl();
+		this.fDisplay = control.getDisplay();
+		this.fShell = new Shell(control.getShell(), SWT.RESIZE | SWT.TOOL
+				| SWT.ON_TOP);
+
+		final GridLayout layout = new GridLayout(1, false);
+		layout.marginHeight = 0;
+		layout.marginWidth = 0;
+		layout.verticalSpacing = 0;
+		this.fShell.setLayout(layout);
+
+		this.fText = new Text(this.fShell, SWT.SINGLE | SWT.SEARCH
+				| SWT.ICON_CANCEL);
+		this.fText.setMessage(BreadcrumbMessages.BreadcrumbSearchPopup_message);
+		this.fText.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true,
+				false));
+
+		this.fTable = new Table(this.fShell, SWT.SINGLE | SWT.V_SCROLL);
+		this.fTable.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
+
+		// only shown if the search stops before the end of the tree
+		this.fStatus = new Label(this.fShell, SWT.NONE);
+		final GridData statusData = new GridData(SWT.FILL, SWT.CENTER, true,
+				false);
+		statusData.exclude = true;
+		this.fStatus.setLayoutData(statusData);
+		this.fStatus.setVisible(false);
+
+		installListeners();
+	}
+
+	/**
+	 * Shows the popup next to the breadcrumb and starts the search.
+	 */
+	public void open() {
+		final Control control = this.fViewer.getControl();
+		final Rectangle bounds = control.getBounds();
+		final int width = Math.max(WIDTH, bounds.width / 2);
+		final int y = (this.fViewer.getStyle() & SWT.BOTTOM) == 0 ? bounds.height
+				: -HEIGHT;
+		final Point location = control.toDisplay(0, y);
+		this.fShell.setBounds(location.x, location.y, width, HEIGHT);
+		this.fShell.setVisible(true);
+		this.fText.setFocus();
+
+		if (this.fPathIndex != null) {
+			loadPathIndex();
+		}
+
+		this.fQueryTime = System.currentTimeMillis();
+		this.fJob = new SearchJob(this.fViewer.getSearchContentProvider(),
+				this.fViewer.getSearchInput(), this.fViewer.getComparer(),
+				this.fViewer.getSearchLimit());
+		this.fJob.schedule();
+	}
+
+	/**
+	 * Sets the focus into the text of the popup.
+	 */
+	public void setFocus() {
+		this.fText.setFocus();
+	}
+
+	/**
+	 * Closes the popup and cancels the search.
+	 */
+	public void close() {
+		if (!this.fShell.isDisposed()) {
+			this.fShell.close();
+		}
+	}
+
+	/**
+	 * Returns the time from the last change of the text until the first match
+	 * was listed. When the text is typed while the search is still running,
+	 * this is the time until the walk found the first match.
+	 * 
+	 * @return the time in milliseconds, or <code>-1</code> if nothing matched
+	 *         the text yet
+	 */
+	long getFirstMatchDelay() {
+		return this.fFirstMatchDelay;
+	}
+
+	/**
+	 * Tells whether the search stopped at the search limit of the viewer
+	 * before it walked the whole tree.
+	 * 
+	 * @return <code>true</code> if not all elements were searched
+	 */
+	boolean isTruncated() {
+		return !this.fShell.isDisposed() && this.fStatus.getVisible();
+	}
+
+	/**
+	 * Tells whether the popup has been closed.
+	 * 
+	 * @return <code>true</code> if the popup is closed
+	 */
+	public boolean isDisposed() {
+		return this.fShell.isDisposed();
+	}
+
+	private void installListeners() {
+		this.fShell.addShellListener(new ShellAdapter() {
+			@Override
+			public void shellDeactivated(final ShellEvent e) {
+				close();
+			}
+		});
+
+		this.fShell.addDisposeListener(new DisposeListener() {
+			@Override
+			public void widgetDisposed(final DisposeEvent e) {
+				if (BreadcrumbSearchPopup.this.fJob != null) {
+					BreadcrumbSearchPopup.this.fJob.cancel();
+					BreadcrumbSearchPopup.this.fJob = null;
+				}
+				if (BreadcrumbSearchPopup.this.fPathIndexLoaded) {
+					BreadcrumbSearchPopup.this.fPathIndex.flush();
+				}
+				// the viewer keeps the closed popup until the next one opens
+				BreadcrumbSearchPopup.this.fIndex = null;
+				BreadcrumbSearchPopup.this.fLabels.clear();
+				BreadcrumbSearchPopup.this.fWalkedIds.clear();
+				BreadcrumbSearchPopup.this.fPendingPuts.clear();
+			}
+		});
+
+		this.fText.addModifyListener(new ModifyListener() {
+			@Override
+			public void modifyText(final ModifyEvent e) {
+				search(BreadcrumbSearchPopup.this.fText.getText());
+			}
+		});
+
+		this.fText.addKeyListener(new KeyAdapter() {
+			@Override
+			public void keyPressed(final KeyEvent e) {
+				final Table table = BreadcrumbSearchPopup.this.fTable;
+				if (e.keyCode == SWT.ARROW_DOWN && table.getItemCount() > 0) {
+					e.doit = false;
+					table.setSelection(0);
+					table.setFocus();
+				} else if (e.character == SWT.CR && table.getItemCount() > 0) {
+					openMatch(table.getItem(0));
+				} else if (e.character == SWT.ESC) {
+					close();
+				}
+			}
+		});
+
+		final Listener listener = new Listener() {
+			@Override
+			public void handleEvent(final Event event) {
+				final Table table = BreadcrumbSearchPopup.this.fTable;
+				TableItem tableItem;
+				if (event.type == SWT.MouseUp) {
+					if (event.button != 1) {
+						return;
+					}
+					tableItem = table.getItem(new Point(event.x, event.y));
+				} else {
+					tableItem = (TableItem) event.item;
+				}
+				if (tableItem != null) {
+					openMatch(tableItem);
+				}
+			}
+		};
+		this.fTable.addListener(SWT.DefaultSelection, listener);
+		this.fTable.addListener(SWT.MouseUp, listener);
+	}
+
+	/**
+	 * Closes the popup and opens the path of the given match.
+	 */
+	private void openMatch(final TableItem tableItem) {
+		final Object data = tableItem.getData();
+		close();
+
+		final TreePath path;
+		if (data instanceof TreePath) {
+			path = (TreePath) data;
+		} else {
+			path = resolve((String[]) data);
+			if (path == null) {
+				// the element is gone, drop it from the index
+				this.fPathIndex.remove((String[]) data);
+				return;
+			}
+		}
+		this.fViewer.fireMenuSelection(new TreeSelection(path));
+	}
+
+	/**
+	 * Loads the persistent index in a job. Until it is loaded, the paths found
+	 * by the walk are only kept in the popup.
+	 */
+	private void loadPathIndex() {
+		final Job job = new Job(BreadcrumbMessages.BreadcrumbSearchPopup_job_name) {
+			@Override
+			protected IStatus run(final IProgressMonitor monitor) {
+				BreadcrumbSearchPopup.this.fPathIndex.load();
+				if (!BreadcrumbSearchPopup.this.fDisplay.isDisposed()) {
+					BreadcrumbSearchPopup.this.fDisplay.asyncExec(new Runnable() {
+						@Override
+						public void run() {
+							pathIndexLoaded();
+						}
+					});
+				}
+				return Status.OK_STATUS;
+			}
+		};
+		job.setSystem(true);
+		job.schedule();
+	}
+
+	/**
+	 * Writes the paths found so far to the persistent index and adds its
+	 * matches to the table.
+	 */
+	private void pathIndexLoaded() {
+		if (this.fShell.isDisposed()) {
+			return;
+		}
+
+		this.fPathIndexLoaded = true;
+		for (int i = 0, size = this.fPendingPuts.size(); i < size; i++) {
+			final Object[] put = (Object[]) this.fPendingPuts.get(i);
+			this.fPathIndex.put((String[]) put[0], (String) put[1]);
+		}
+		this.fPendingPuts.clear();
+		listMatches();
+	}
+
+	/**
+	 * Returns the segment ids of a path, or <code>null</code> if one of its
+	 * elements is not indexed.
+	 */
+	private String[] encode(final TreePath path) {
+		final String[] ids = new String[path.getSegmentCount()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = this.fCodec.getId(path.getSegment(i));
+			if (ids[i] == null) {
+				return null;
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * Returns the path of the elements with the given ids, or
+	 * <code>null</code> if one of them does not exist anymore.
+	 */
+	private TreePath resolve(final String[] ids) {
+		TreePath path = TreePath.EMPTY;
+		for (int i = 0; i < ids.length; i++) {
+			final Object element = this.fCodec.getElement(path, ids[i]);
+			if (element == null) {
+				return null;
+			}
+			path = path.createChildPath(element);
+		}
+		return path;
+	}
+
+	/**
+	 * Labels and indexes paths found by the search job, and appends those
+	 * matching the current text to the table.
+	 */
+	private void addPaths(final List paths) {
+		if (this.fShell.isDisposed()) {
+			return;
+		}
+
+		for (int i = 0, size = paths.size(); i < size; i++) {
+			final TreePath path = (TreePath) paths.get(i);
+			final ViewerLabel label = getLabel(path);
+			final String text = label.getText() != null ? label.getText()
+					: ""; //$NON-NLS-1$
+
+			boolean listed = false;
+			if (this.fPathIndex != null) {
+				final String[] ids = encode(path);
+				if (ids != null) {
+					this.fWalkedIds.add(Arrays.asList(ids));
+					if (this.fPathIndexLoaded) {
+						// a match of the persistent index is listed already
+						final String indexed = this.fPathIndex.getLabel(ids);
+						listed = indexed != null
+								&& indexed.toLowerCase(Locale.ENGLISH).indexOf(
+										this.fQuery) >= 0;
+						this.fPathIndex.put(ids, text);
+					} else {
+						this.fPendingPuts.add(new Object[] { ids, text });
+					}
+				}
+			}
+
+			this.fIndex.add(path, text);
+			this.fLabels.put(path, label);
+
+			if (!listed && this.fQuery.length() > 0
+					&& this.fTable.getItemCount() < MAX_RESULTS
+					&& text.toLowerCase(Locale.ENGLISH).indexOf(this.fQuery) >= 0) {
+				addMatch(path, label);
+			}
+		}
+	}
+
+	/**
+	 * Tells the user below the matches that the search stopped after the
+	 * given number of elements.
+	 */
+	private void searchTruncated(final int maxNodes) {
+		if (this.fShell.isDisposed()) {
+			return;
+		}
+
+		this.fStatus.setText(NLS.bind(
+				BreadcrumbMessages.BreadcrumbSearchPopup_truncated_label,
+				Integer.valueOf(maxNodes)));
+		((GridData) this.fStatus.getLayoutData()).exclude = false;
+		this.fStatus.setVisible(true);
+		this.fShell.layout();
+	}
+
+	/**
+	 * Replaces the matches in the table with those of the given text.
+	 */
+	private void search(final String query) {
+		this.fQuery = query.toLowerCase(Locale.ENGLISH);
+		this.fQueryTime = System.currentTimeMillis();
+		this.fFirstMatchDelay = -1;
+		listMatches();
+	}
+
+	/**
+	 * Lists the paths found by the walk which match the current text, then
+	 * those of the persistent index which the walk has not found yet.
+	 */
+	private void listMatches() {
+		this.fTable.setRedraw(false);
+		try {
+			this.fTable.removeAll();
+			if (this.fQuery.length() == 0) {
+				return;
+			}
+
+			final List matches = this.fIndex.find(this.fQuery);
+			for (int i = 0, size = Math.min(matches.size(), MAX_RESULTS); i < size; i++) {
+				final Object path = matches.get(i);
+				addMatch(path, (ViewerLabel) this.fLabels.get(path));
+			}
+
+			if (!this.fPathIndexLoaded) {
+				return;
+			}
+			final List indexed = this.fPathIndex.find(this.fQuery);
+			for (int i = 0, size = indexed.size(); i < size
+					&& this.fTable.getItemCount() < MAX_RESULTS; i++) {
+				final String[] ids = (String[]) indexed.get(i);
+				if (!this.fWalkedIds.contains(Arrays.asList(ids))) {
+					addMatch(ids, new ViewerLabel(this.fPathIndex.getLabel(ids),
+							null));
+				}
+			}
+		} finally {
+			this.fTable.setRedraw(true);
+		}
+	}
+
+	private void addMatch(final Object path, final ViewerLabel label) {
+		if (this.fFirstMatchDelay < 0) {
+			this.fFirstMatchDelay = System.currentTimeMillis()
+					- this.fQueryTime;
+		}
+
+		final TableItem tableItem = new TableItem(this.fTable, SWT.NONE);
+		tableItem.setText(label.getText() != null ? label.getText() : ""); //$NON-NLS-1$
+		tableItem.setImage(label.getImage());
+		tableItem.setData(path);
+	}
+
+	private ViewerLabel getLabel(final TreePath path) {
+		final ViewerLabel label = new ViewerLabel("", null); //$NON-NLS-1$
+		final IBaseLabelProvider labelProvider = this.fViewer
+				.getLabelProvider();
+		if (labelProvider instanceof ITreePathLabelProvider) {
+			((ITreePathLabelProvider) labelProvider).updateLabel(label, path);
+		} else if (labelProvider instanceof ILabelProvider) {
+			final Object element = path.getLastSegment();
+			label.setText(((ILabelProvider) labelProvider).getText(element));
+			label.setImage(((ILabelProvider) labelProvider).getImage(element));
+		}
+		return label;
+	}
+}
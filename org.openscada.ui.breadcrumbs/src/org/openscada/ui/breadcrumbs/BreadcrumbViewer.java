@@ -13,14 +13,25 @@
 package org.openscada.ui.breadcrumbs;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.core.runtime.Assert;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.ListenerList;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.viewers.DoubleClickEvent;
 import org.eclipse.jface.viewers.IContentProvider;
+import org.eclipse.jface.viewers.IElementComparer;
 import org.eclipse.jface.viewers.ISelection;
 import org.eclipse.jface.viewers.ITreePathContentProvider;
 import org.eclipse.jface.viewers.ITreePathLabelProvider;
@@ -30,24 +41,25 @@ import org.eclipse.jface.viewers.StructuredViewer;
 import org.eclipse.jface.viewers.TreePath;
 import org.eclipse.jface.viewers.TreeSelection;
 import org.eclipse.jface.viewers.ViewerLabel;
+import org.eclipse.osgi.util.NLS;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.DisposeEvent;
 import org.eclipse.swt.events.MenuDetectEvent;
 import org.eclipse.swt.events.MenuDetectListener;
 import org.eclipse.swt.events.TraverseEvent;
 import org.eclipse.swt.events.TraverseListener;
-import org.eclipse.swt.graphics.Color;
-import org.eclipse.swt.graphics.GC;
 import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.Point;
 import org.eclipse.swt.graphics.RGB;
 import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Event;
 import org.eclipse.swt.widgets.Listener;
 import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableItem;
 import org.eclipse.swt.widgets.Widget;
 
 /**
@@ -69,13 +81,176 @@ public abstract class BreadcrumbViewer extends StructuredViewer {
 
 	private static final boolean IS_GTK = "gtk".equals(SWT.getPlatform()); //$NON-NLS-1$
 
+	/**
+	 * Default number of hidden items which are kept for reuse.
+	 */
+	public static final int DEFAULT_ITEM_POOL_CAPACITY = 16;
+
 	private final int fStyle;
 	private final Composite fContainer;
+	private final BreadcrumbCanvas fCanvas;
 	private final ArrayList fBreadcrumbItems;
+	private final Map fItemIndex;
+	private final LinkedList fItemPool;
+	private final Set fChangedItems;
+	private final BreadcrumbLayoutModel fModel;
+	private int fItemPoolCapacity = DEFAULT_ITEM_POOL_CAPACITY;
+	private long fItemPoolHitCount;
+	private long fItemPoolMissCount;
 	private final ListenerList fMenuListeners;
 
+	private boolean fHasDuplicateElements;
+
+	private int fUpdateDepth;
+	private boolean fRelayoutPending;
+	private long fSavedLayoutCount;
+
 	private Image fGradientBackground;
 	private BreadcrumbItem fSelectedItem;
+	private final Listener fSettingsListener;
+
+	/**
+	 * Minimum time between two resize passes, about one frame.
+	 */
+	private static final int RESIZE_INTERVAL = 16;
+
+	private boolean fResizeScheduled;
+	private long fLastResize;
+
+	/**
+	 * Applies the current size of the container after a throttled resize.
+	 */
+	private final Runnable fResizeRunnable = new Runnable() {
+		@Override
+		public void run() {
+			BreadcrumbViewer.this.fResizeScheduled = false;
+			handleResize();
+		}
+	};
+
+	/**
+	 * Key of the element index, hashing and comparing elements with the
+	 * comparer of the viewer, if any.
+	 */
+	static final class ElementKey {
+
+		private final Object fElement;
+		private final IElementComparer fComparer;
+
+		public ElementKey(final Object element, final IElementComparer comparer) {
+			this.fElement = element;
+			this.fComparer = comparer;
+		}
+
+		@Override
+		public int hashCode() {
+			if (this.fComparer == null) {
+				return this.fElement.hashCode();
+			}
+			return this.fComparer.hashCode(this.fElement);
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof ElementKey)) {
+				return false;
+			}
+
+			final Object other = ((ElementKey) obj).fElement;
+			if (this.fElement == other) {
+				return true;
+			}
+			if (this.fComparer == null) {
+				return this.fElement.equals(other);
+			}
+			return this.fComparer.equals(this.fElement, other);
+		}
+	}
+
+	private boolean fAsynchronousResolution;
+	private BreadcrumbPrefetcher fPrefetcher;
+	private boolean fReuseDropDownShell;
+	private BreadcrumbDropDownShell fSharedDropDownShell;
+	private BreadcrumbSearchPopup fSearchPopup;
+	private BreadcrumbPathIndex fSearchIndex;
+	private IBreadcrumbPathCodec fSearchCodec;
+	private int fSearchLimit = BreadcrumbSearchPopup.DEFAULT_MAX_NODES;
+	private final BreadcrumbSearchIndexUpdater fSearchIndexUpdater;
+	private ResolveChainJob fResolveJob;
+	private BreadcrumbItem fPendingItem;
+
+	private boolean fMiddleElision;
+	private List fChainPaths = Collections.EMPTY_LIST;
+	private int[] fChainWidths = new int[0];
+	private List fElidedPaths = Collections.EMPTY_LIST;
+	private BreadcrumbItem fElidedItem;
+	private int fElidedItemWidth = -1;
+	private BreadcrumbItem fMeasureItem;
+
+	/**
+	 * Resolves the parent chain of an input in the background and applies the
+	 * result in the UI thread, unless a newer input replaced it in the
+	 * meantime.
+	 */
+	private final class ResolveChainJob extends Job {
+
+		private final ITreePathContentProvider fContentProvider;
+		private final Object fInput;
+		private final Display fDisplay;
+
+		public ResolveChainJob(final ITreePathContentProvider contentProvider,
+				final Object input) {
+			super(BreadcrumbMessages.BreadcrumbViewer_resolveJob_name);
+			this.fContentProvider = contentProvider;
+			this.fInput = input;
+			this.fDisplay = BreadcrumbViewer.this.fContainer.getDisplay();
+			setSystem(true);
+		}
+
+		@Override
+		protected IStatus run(final IProgressMonitor monitor) {
+			List paths = null;
+			try {
+				paths = resolveItemChain(this.fContentProvider, this.fInput,
+						monitor);
+			} finally {
+				if (!monitor.isCanceled() && !this.fDisplay.isDisposed()) {
+					apply(paths);
+				}
+			}
+			if (paths == null || monitor.isCanceled()) {
+				return Status.CANCEL_STATUS;
+			}
+			return Status.OK_STATUS;
+		}
+
+		/**
+		 * Shows the resolved chain in the UI thread. If the content provider
+		 * failed, the pending item is removed and the current chain is shown
+		 * again.
+		 * 
+		 * @param paths
+		 *            the resolved paths, <code>null</code> if resolving failed
+		 */
+		private void apply(final List paths) {
+			this.fDisplay.asyncExec(new Runnable() {
+				@Override
+				public void run() {
+					if (BreadcrumbViewer.this.fResolveJob != ResolveChainJob.this
+							|| BreadcrumbViewer.this.fContainer.isDisposed()) {
+						return;
+					}
+
+					BreadcrumbViewer.this.fResolveJob = null;
+					applyItemChain(paths != null ? paths
+							: BreadcrumbViewer.this.fChainPaths);
+				}
+			});
+		}
+	}
 
 	/**
 	 * Create a new <code>BreadcrumbViewer</code>.
@@ -95,69 +270,131 @@ public abstract class BreadcrumbViewer extends StructuredViewer {
 	 *            the style flag used for this viewer
 	 */
 	public BreadcrumbViewer(final Composite parent, final int style) {
+		this(parent, style, false);
+	}
+
+	/**
+	 * Create a new <code>BreadcrumbViewer</code>, which is optionally owner
+	 * drawn. An owner drawn breadcrumb is a single canvas which paints the
+	 * items itself, instead of creating a set of widgets for each item.
+	 * 
+	 * @param parent
+	 *            the container for the viewer
+	 * @param style
+	 *            the style flag used for this viewer, see
+	 *            {@link #BreadcrumbViewer(Composite, int)}
+	 * @param ownerDraw
+	 *            <code>true</code> to paint the items on a single canvas
+	 */
+	public BreadcrumbViewer(final Composite parent, final int style,
+			final boolean ownerDraw) {
 		this.fStyle = style;
 		this.fBreadcrumbItems = new ArrayList();
+		this.fItemIndex = new HashMap();
+		this.fItemPool = new LinkedList();
+		this.fChangedItems = new HashSet();
+		this.fModel = new BreadcrumbLayoutModel((SWT.VERTICAL & style) != 0);
 		this.fMenuListeners = new ListenerList();
 
-		this.fContainer = new Composite(parent, SWT.NONE);
+		if (ownerDraw) {
+			this.fCanvas = new BreadcrumbCanvas(this, parent, SWT.NONE);
+			this.fContainer = this.fCanvas;
+		} else {
+			this.fCanvas = null;
+			this.fContainer = new Composite(parent, SWT.NONE);
+			this.fContainer.addTraverseListener(new TraverseListener() {
+				@Override
+				public void keyTraversed(final TraverseEvent e) {
+					e.doit = true;
+				}
+			});
+		}
 		final GridData layoutData = new GridData(SWT.FILL, SWT.TOP, true, false);
 		this.fContainer.setLayoutData(layoutData);
-		this.fContainer.addTraverseListener(new TraverseListener() {
-			@Override
-			public void keyTraversed(final TraverseEvent e) {
-				e.doit = true;
-			}
-		});
 		this.fContainer.setBackgroundMode(SWT.INHERIT_DEFAULT);
 
 		this.fContainer.addListener(SWT.Resize, new Listener() {
 			@Override
 			public void handleEvent(final Event event) {
-				final int height = BreadcrumbViewer.this.fContainer
-						.getClientArea().height;
-
-				if (BreadcrumbViewer.this.fGradientBackground == null
-						|| BreadcrumbViewer.this.fGradientBackground
-								.getBounds().height != height) {
-					final Image image = height == 0 ? null
-							: createGradientImage(height, event.display);
-					BreadcrumbViewer.this.fContainer.setBackgroundImage(image);
-
-					if (BreadcrumbViewer.this.fGradientBackground != null) {
-						BreadcrumbViewer.this.fGradientBackground.dispose();
-					}
-					BreadcrumbViewer.this.fGradientBackground = image;
-				}
+				scheduleResize();
 			}
 		});
 
 		hookControl(this.fContainer);
+		this.fSearchIndexUpdater = new BreadcrumbSearchIndexUpdater(this);
 
-		int columns = 1000;
-		if ((SWT.VERTICAL & style) != 0) {
-			columns = 2;
-		}
+		if (this.fCanvas == null) {
+			int columns = BreadcrumbLayout.SINGLE_ROW;
+			if ((SWT.VERTICAL & style) != 0) {
+				columns = 2;
+			}
 
-		final GridLayout gridLayout = new GridLayout(columns, false);
-		gridLayout.marginWidth = 0;
-		gridLayout.marginHeight = 0;
-		gridLayout.verticalSpacing = 0;
-		gridLayout.horizontalSpacing = 0;
-		this.fContainer.setLayout(gridLayout);
+			this.fContainer.setLayout(new BreadcrumbLayout(columns));
+		}
 
-		this.fContainer.addListener(SWT.Resize, new Listener() {
+		this.fSettingsListener = new Listener() {
 			@Override
 			public void handleEvent(final Event event) {
-				updateSize();
-				BreadcrumbViewer.this.fContainer.layout(true, true);
+				handleSettingsChanged();
 			}
-		});
+		};
+		this.fContainer.getDisplay().addListener(SWT.Settings,
+				this.fSettingsListener);
 	}
 
 	int getStyle() {
 		return this.fStyle;
 	}
 
+	/**
+	 * Tells whether this viewer paints its items on a single canvas.
+	 * 
+	 * @return <code>true</code> if the viewer has been created owner drawn
+	 */
+	boolean isOwnerDrawn() {
+		return this.fCanvas != null;
+	}
+
+	/**
+	 * Lays out the breadcrumb. Only the items which have been marked as
+	 * changed are laid out again, all other items keep their cached sizes.
+	 */
+	private void layoutContainer() {
+		if (this.fCanvas != null) {
+			this.fChangedItems.clear();
+			this.fCanvas.layoutItems();
+			return;
+		}
+
+		final List changed = new ArrayList();
+		final Iterator iterator = this.fChangedItems.iterator();
+		while (iterator.hasNext()) {
+			final BreadcrumbItem item = (BreadcrumbItem) iterator.next();
+			if (!item.isDisposed()) {
+				changed.addAll(Arrays.asList(item.getLayoutControls()));
+			}
+		}
+		this.fChangedItems.clear();
+
+		if (changed.isEmpty()) {
+			this.fContainer.layout(false);
+		} else {
+			this.fContainer.layout((Control[]) changed
+					.toArray(new Control[changed.size()]));
+		}
+	}
+
+	/**
+	 * Marks an item whose size has changed, so that it gets laid out with the
+	 * next layout of the breadcrumb.
+	 * 
+	 * @param item
+	 *            the changed item
+	 */
+	private void markItemChanged(final BreadcrumbItem item) {
+		this.fChangedItems.add(item);
+	}
+
 	/**
 	 * Configure the given drop down viewer. The given input is used for the
 	 * viewers input. Clients must at least set the label and the content
@@ -282,14 +519,279 @@ public abstract class BreadcrumbViewer extends StructuredViewer {
 			return;
 		}
 
+		cancelChainResolution();
+
+		final ITreePathContentProvider contentProvider = (ITreePathContentProvider) getContentProvider();
+		if (this.fAsynchronousResolution && input != null) {
+			showPendingItem();
+
+			this.fResolveJob = new ResolveChainJob(contentProvider, input);
+			this.fResolveJob.schedule();
+			return;
+		}
+
+		applyItemChain(resolveItemChain(contentProvider, input, null));
+	}
+
+	/**
+	 * Sets whether the parent chain of a new input is resolved in a background
+	 * job.
+	 * <p>
+	 * When enabled, the content provider must be able to handle calls to
+	 * <code>getElements()</code> and <code>getChildren()</code> from a non-UI
+	 * thread. Until the chain is resolved a pending item is shown, a newer
+	 * input cancels any resolution still in progress.
+	 * </p>
+	 * 
+	 * @param asynchronous
+	 *            <code>true</code> to resolve the chain in the background
+	 */
+	public void setAsynchronousResolution(final boolean asynchronous) {
+		this.fAsynchronousResolution = asynchronous;
+	}
+
+	/**
+	 * Tells whether the parent chain is resolved in a background job.
+	 * 
+	 * @return <code>true</code> if the chain is resolved in the background
+	 */
+	public boolean isAsynchronousResolution() {
+		return this.fAsynchronousResolution;
+	}
+
+	/**
+	 * Sets the prefetcher which fetches the children of an item in the
+	 * background when the pointer hovers its drop down arrow or the item gets
+	 * the keyboard focus. The prefetcher is disposed together with the viewer.
+	 * 
+	 * @param prefetcher
+	 *            the prefetcher, <code>null</code> to disable prefetching
+	 */
+	public void setDropDownPrefetcher(final BreadcrumbPrefetcher prefetcher) {
+		if (this.fPrefetcher != null && this.fPrefetcher != prefetcher) {
+			this.fPrefetcher.dispose();
+		}
+		this.fPrefetcher = prefetcher;
+	}
+
+	/**
+	 * Returns the prefetcher of the drop down children.
+	 * 
+	 * @return the prefetcher, or <code>null</code> if prefetching is disabled
+	 */
+	public BreadcrumbPrefetcher getDropDownPrefetcher() {
+		return this.fPrefetcher;
+	}
+
+	/**
+	 * Sets whether the viewer keeps one drop down shell and reuses it for the
+	 * drop downs of all its items. A reused shell is hidden when the drop down
+	 * closes, only the content created by
+	 * {@link #createDropDown(Composite, IBreadcrumbDropDownSite, TreePath)} is
+	 * disposed.
+	 * 
+	 * @param reuse
+	 *            <code>true</code> to reuse the drop down shell
+	 */
+	public void setReuseDropDownShell(final boolean reuse) {
+		if (this.fReuseDropDownShell == reuse) {
+			return;
+		}
+
+		this.fReuseDropDownShell = reuse;
+		disposeSharedDropDownShell();
+	}
+
+	/**
+	 * Tells whether the drop down shell is reused.
+	 * 
+	 * @return <code>true</code> if the drop down shell is reused
+	 */
+	public boolean isReuseDropDownShell() {
+		return this.fReuseDropDownShell;
+	}
+
+	/**
+	 * Returns the shell a drop down is opened in. This is the shared shell if
+	 * the shell is reused, a new one otherwise.
+	 * 
+	 * @return the closed drop down shell
+	 */
+	BreadcrumbDropDownShell obtainDropDownShell() {
+		final Shell parent = this.fContainer.getShell();
+		if (!this.fReuseDropDownShell) {
+			return new BreadcrumbDropDownShell(parent, false);
+		}
+
+		if (this.fSharedDropDownShell == null
+				|| this.fSharedDropDownShell.isDisposed()) {
+			this.fSharedDropDownShell = new BreadcrumbDropDownShell(parent, true);
+		}
+		return this.fSharedDropDownShell;
+	}
+
+	/**
+	 * Opens a popup which searches the whole content tree for elements whose
+	 * label contains the typed text. Selecting a match fires an open event
+	 * with the full path of the element, like a selection in a drop down.
+	 * <p>
+	 * The tree is walked in a background job starting at the elements of
+	 * {@link #getSearchInput()}, using {@link #getSearchContentProvider()},
+	 * which must be able to handle calls to <code>getElements()</code>,
+	 * <code>hasChildren()</code> and <code>getChildren()</code> from a non-UI
+	 * thread. Matches are shown as soon as they are found.
+	 * </p>
+	 */
+	public void openSearchPopup() {
+		if (this.fSearchPopup != null && !this.fSearchPopup.isDisposed()) {
+			this.fSearchPopup.setFocus();
+			return;
+		}
+
+		final Shell shell = getDropDownShell();
+		if (shell != null && !shell.isDisposed()) {
+			shell.close();
+		}
+
+		this.fSearchPopup = new BreadcrumbSearchPopup(this);
+		this.fSearchPopup.open();
+	}
+
+	/**
+	 * Sets the persistent index the search popup starts with. Its paths are
+	 * listed before the content tree has been walked, and the paths found by
+	 * the walk are written back to it.
+	 * <p>
+	 * The index also follows the content changes the viewer is notified of.
+	 * The new labels of the items are written to it. When the viewer or one of
+	 * its elements is refreshed, the children of the refreshed levels are
+	 * fetched again with {@link #getSearchContentProvider()} in a job, and
+	 * indexed children which are gone are removed. The paths of the items must
+	 * therefore be paths of the search tree.
+	 * </p>
+	 * 
+	 * @param index
+	 *            the index, <code>null</code> to search only the content tree
+	 * @param codec
+	 *            the codec converting elements to the ids stored in the index
+	 */
+	public void setSearchIndex(final BreadcrumbPathIndex index,
+			final IBreadcrumbPathCodec codec) {
+		this.fSearchIndex = index;
+		this.fSearchCodec = codec;
+	}
+
+	/**
+	 * Sets the maximum number of elements the search popup walks. When the
+	 * content tree has more elements, the popup tells the user that not all of
+	 * them were searched. The default is 100000.
+	 * 
+	 * @param limit
+	 *            the maximum number of elements, at least 1
+	 */
+	public void setSearchLimit(final int limit) {
+		this.fSearchLimit = Math.max(1, limit);
+	}
+
+	/**
+	 * Returns the maximum number of elements the search popup walks.
+	 * 
+	 * @return the search limit
+	 */
+	public int getSearchLimit() {
+		return this.fSearchLimit;
+	}
+
+	/**
+	 * Returns the open search popup.
+	 * 
+	 * @return the popup, or <code>null</code> if none was opened
+	 */
+	BreadcrumbSearchPopup getSearchPopup() {
+		return this.fSearchPopup;
+	}
+
+	/**
+	 * Returns the persistent index of the search popup.
+	 * 
+	 * @return the index, or <code>null</code> if none is set
+	 */
+	BreadcrumbPathIndex getSearchIndex() {
+		return this.fSearchCodec != null ? this.fSearchIndex : null;
+	}
+
+	/**
+	 * Returns the codec of the persistent index of the search popup.
+	 * 
+	 * @return the codec, or <code>null</code> if none is set
+	 */
+	IBreadcrumbPathCodec getSearchCodec() {
+		return this.fSearchCodec;
+	}
+
+	/**
+	 * Returns the content provider used to walk the content tree in the
+	 * search popup. Subclasses whose content provider only returns the chain
+	 * of the input override this to provide the whole tree.
+	 * 
+	 * @return the content provider of the search
+	 */
+	protected ITreePathContentProvider getSearchContentProvider() {
+		return (ITreePathContentProvider) getContentProvider();
+	}
+
+	/**
+	 * Returns the element whose elements are the roots of the search.
+	 * 
+	 * @return the input of the search, the input of the viewer by default
+	 */
+	protected Object getSearchInput() {
+		return getInput();
+	}
+
+	private void disposeSharedDropDownShell() {
+		if (this.fSharedDropDownShell != null) {
+			this.fSharedDropDownShell.dispose();
+			this.fSharedDropDownShell = null;
+		}
+	}
+
+	/**
+	 * Cancels the resolution of the parent chain, if one is in progress.
+	 */
+	private void cancelChainResolution() {
+		if (this.fResolveJob != null) {
+			this.fResolveJob.cancel();
+			this.fResolveJob = null;
+		}
+	}
+
+	/**
+	 * Appends an item to the chain which indicates that the chain of the new
+	 * input is still being resolved.
+	 */
+	private void showPendingItem() {
+		if (this.fPendingItem != null) {
+			return;
+		}
+
 		disableRedraw();
 		try {
-			preservingSelection(new Runnable() {
-				@Override
-				public void run() {
-					buildItemChain(input);
-				}
-			});
+			if (this.fBreadcrumbItems.size() > 0) {
+				final BreadcrumbItem last = (BreadcrumbItem) this.fBreadcrumbItems
+						.get(this.fBreadcrumbItems.size() - 1);
+				last.setIsLastItem(false);
+			}
+
+			this.fPendingItem = obtainItem();
+			this.fPendingItem
+					.setText(BreadcrumbMessages.BreadcrumbViewer_pending_label);
+			this.fPendingItem.setDropDownEnabled(false);
+			this.fPendingItem.setIsLastItem(true);
+			this.fModel.setPath(this.fBreadcrumbItems.size(), null);
+			this.fBreadcrumbItems.add(this.fPendingItem);
+
+			relayout();
 		} finally {
 			enableRedraw();
 		}
@@ -306,7 +808,7 @@ public abstract class BreadcrumbViewer extends StructuredViewer {
 			return null;
 		}
 
-		if (element == getInput() || element.equals(getInput())) {
+		if (equals(element, getInput())) {
 			return doFindItem(element);
 		}
 
@@ -323,34 +825,115 @@ public abstract class BreadcrumbViewer extends StructuredViewer {
 			return null;
 		}
 
-		for (int i = 0, size = this.fBreadcrumbItems.size(); i < size; i++) {
-			final BreadcrumbItem item = (BreadcrumbItem) this.fBreadcrumbItems
-					.get(i);
-			if (item.getData() == element || element.equals(item.getData())) {
-				return item;
-			}
+		return (BreadcrumbItem) this.fItemIndex.get(new ElementKey(element,
+				getComparer()));
+	}
+
+	/**
+	 * Adds the given item to the element index. If the element is shown by
+	 * more than one item, the index points to the first one.
+	 * 
+	 * @param item
+	 *            the item to add, its data must be set already
+	 */
+	private void indexItem(final BreadcrumbItem item) {
+		final Object element = item.getData();
+		if (element == null) {
+			return;
 		}
 
-		return null;
+		final ElementKey key = new ElementKey(element, getComparer());
+		final BreadcrumbItem existing = (BreadcrumbItem) this.fItemIndex
+				.get(key);
+		if (existing == null) {
+			this.fItemIndex.put(key, item);
+		} else if (existing != item) {
+			this.fHasDuplicateElements = true;
+			if (getIndexOfItem(item) < getIndexOfItem(existing)) {
+				this.fItemIndex.put(key, item);
+			}
+		}
 	}
 
-	/*
-	 * @see
-	 * org.eclipse.jface.viewers.StructuredViewer#doUpdateItem(org.eclipse.swt
-	 * .widgets.Widget, java.lang.Object, boolean)
+	/**
+	 * Removes the given item from the element index. Must be called before
+	 * the data of the item is changed.
+	 * 
+	 * @param item
+	 *            the item to remove
 	 */
-	@Override
-	protected void doUpdateItem(final Widget widget, final Object element,
-			final boolean fullMap) {
-		myDoUpdateItem(widget, element, fullMap);
-	}
+	private void unindexItem(final BreadcrumbItem item) {
+		final Object element = item.getData();
+		if (element == null) {
+			return;
+		}
 
-	private boolean myDoUpdateItem(final Widget widget, final Object element,
-			final boolean fullMap) {
-		if (widget instanceof BreadcrumbItem) {
-			final BreadcrumbItem item = (BreadcrumbItem) widget;
+		final ElementKey key = new ElementKey(element, getComparer());
+		if (this.fItemIndex.get(key) != item) {
+			return;
+		}
+		this.fItemIndex.remove(key);
+
+		if (!this.fHasDuplicateElements) {
+			return;
+		}
+
+		// another item may show the same element
+		for (int i = 0, size = this.fBreadcrumbItems.size(); i < size; i++) {
+			final BreadcrumbItem other = (BreadcrumbItem) this.fBreadcrumbItems
+					.get(i);
+			if (other != item && other.getData() != null
+					&& equals(element, other.getData())) {
+				this.fItemIndex.put(key, other);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Rebuilds the element index from scratch, e.g. after the comparer has
+	 * changed.
+	 */
+	private void rebuildItemIndex() {
+		this.fItemIndex.clear();
+		this.fHasDuplicateElements = false;
+		for (int i = 0, size = this.fBreadcrumbItems.size(); i < size; i++) {
+			indexItem((BreadcrumbItem) this.fBreadcrumbItems.get(i));
+		}
+	}
+
+	/*
+	 * @see
+	 * org.eclipse.jface.viewers.StructuredViewer#setComparer(org.eclipse.jface
+	 * .viewers.IElementComparer)
+	 */
+	@Override
+	public void setComparer(final IElementComparer comparer) {
+		super.setComparer(comparer);
+		this.fModel.setComparer(comparer);
+		rebuildItemIndex();
+	}
+
+	/*
+	 * @see
+	 * org.eclipse.jface.viewers.StructuredViewer#doUpdateItem(org.eclipse.swt
+	 * .widgets.Widget, java.lang.Object, boolean)
+	 */
+	@Override
+	protected void doUpdateItem(final Widget widget, final Object element,
+			final boolean fullMap) {
+		if (myDoUpdateItem(widget, element, fullMap)) {
+			relayout();
+		}
+	}
+
+	private boolean myDoUpdateItem(final Widget widget, final Object element,
+			final boolean fullMap) {
+		if (widget instanceof BreadcrumbItem) {
+			final BreadcrumbItem item = (BreadcrumbItem) widget;
 
 			// remember element we are showing
+			unindexItem(item);
 			if (fullMap) {
 				associate(element, item);
 			} else {
@@ -361,8 +944,9 @@ public abstract class BreadcrumbViewer extends StructuredViewer {
 				item.setData(element);
 				mapElement(element, item);
 			}
+			indexItem(item);
 
-			refreshItem(item);
+			return refreshItem(item);
 		}
 		return false;
 	}
@@ -378,7 +962,7 @@ public abstract class BreadcrumbViewer extends StructuredViewer {
 			return TreeSelection.EMPTY;
 		}
 		if (this.fSelectedItem != null) {
-			final TreePath path = getTreePathFromItem(this.fSelectedItem);
+			final TreePath path = this.fSelectedItem.getPath();
 			if (path != null) {
 				return new TreeSelection(new TreePath[] { path });
 			}
@@ -386,16 +970,20 @@ public abstract class BreadcrumbViewer extends StructuredViewer {
 		return TreeSelection.EMPTY;
 	}
 
+	/**
+	 * Returns the path of the given item.
+	 * <p>
+	 * The path is assigned when the item chain is built, so this method does
+	 * not need to look at the other items.
+	 * </p>
+	 * 
+	 * @param item
+	 *            the item
+	 * @return the path of the item, or <code>null</code> if the item is not
+	 *         backed by an element
+	 */
 	protected TreePath getTreePathFromItem(final BreadcrumbItem item) {
-		final List elements = new ArrayList(this.fBreadcrumbItems.size());
-		for (int i = 0; i < this.fBreadcrumbItems.size(); i++) {
-			elements.add(((BreadcrumbItem) this.fBreadcrumbItems.get(i))
-					.getData());
-			if (this.fBreadcrumbItems.get(i).equals(item)) {
-				return new TreePath(elements.toArray());
-			}
-		}
-		return null;
+		return item.getPath();
 	}
 
 	/*
@@ -428,20 +1016,30 @@ public abstract class BreadcrumbViewer extends StructuredViewer {
 		try {
 			boolean layoutChanged = false;
 
+			// the labels of elided levels may have changed as well
+			invalidateChainWidths();
+
 			final BreadcrumbItem item = (BreadcrumbItem) doFindItem(element);
-			if (item == null || element != null && element.equals(getInput())) {
+			if (item == null || element != null && equals(element, getInput())) {
+				this.fSearchIndexUpdater.structureChanged(TreePath.EMPTY);
 				for (int i = 0, size = this.fBreadcrumbItems.size(); i < size; i++) {
 					final BreadcrumbItem item1 = (BreadcrumbItem) this.fBreadcrumbItems
 							.get(i);
 					layoutChanged = refreshItem(item1) || layoutChanged;
+					if (item1.getPath() != null) {
+						this.fSearchIndexUpdater.structureChanged(item1
+								.getPath());
+					}
 				}
 			} else {
 				layoutChanged = refreshItem(item) || layoutChanged;
+				if (item.getPath() != null) {
+					this.fSearchIndexUpdater.structureChanged(item.getPath());
+				}
 			}
 
 			if (layoutChanged) {
-				updateSize();
-				this.fContainer.layout(true, true);
+				relayout();
 			}
 		} finally {
 			enableRedraw();
@@ -495,211 +1093,822 @@ public abstract class BreadcrumbViewer extends StructuredViewer {
 	}
 
 	/**
-	 * Set a single selection to the given item. <code>null</code> to deselect
-	 * all.
-	 * 
-	 * @param item
-	 *            the item to select or <code>null</code>
+	 * Set a single selection to the given item. <code>null</code> to deselect
+	 * all.
+	 * 
+	 * @param item
+	 *            the item to select or <code>null</code>
+	 */
+	void selectItem(final BreadcrumbItem item) {
+		if (this.fSelectedItem != null) {
+			this.fSelectedItem.setSelected(false);
+		}
+
+		this.fSelectedItem = item;
+		setSelectionToWidget(getSelection(), false);
+		setFocus();
+
+		fireSelectionChanged(new SelectionChangedEvent(this, getSelection()));
+	}
+
+	/**
+	 * Returns the item count.
+	 * 
+	 * @return number of items shown in the viewer
+	 */
+	int getItemCount() {
+		return this.fBreadcrumbItems.size();
+	}
+
+	/**
+	 * Returns the item for the given item index.
+	 * 
+	 * @param index
+	 *            the index of the item
+	 * @return the item ad the given <code>index</code>
+	 */
+	BreadcrumbItem getItem(final int index) {
+		return (BreadcrumbItem) this.fBreadcrumbItems.get(index);
+	}
+
+	/**
+	 * Returns the index of the given item.
+	 * 
+	 * @param item
+	 *            the item to search
+	 * @return the index of the item or -1 if not found
+	 */
+	int getIndexOfItem(final BreadcrumbItem item) {
+		for (int i = 0, size = this.fBreadcrumbItems.size(); i < size; i++) {
+			final BreadcrumbItem pItem = (BreadcrumbItem) this.fBreadcrumbItems
+					.get(i);
+			if (pItem == item) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Notifies all double click listeners.
+	 */
+	void fireDoubleClick() {
+		fireDoubleClick(new DoubleClickEvent(this, getSelection()));
+	}
+
+	/**
+	 * Notifies all open listeners.
+	 */
+	void fireOpen() {
+		fireOpen(new OpenEvent(this, getSelection()));
+	}
+
+	/**
+	 * The given element was selected from a drop down menu.
+	 * 
+	 * @param element
+	 *            the selected element
+	 */
+	void fireMenuSelection(final ISelection selection) {
+		fireOpen(new OpenEvent(this, selection));
+	}
+
+	/**
+	 * A context menu has been requested for the selected breadcrumb item.
+	 * 
+	 * @param event
+	 *            the event issued the menu detection
+	 */
+	void fireMenuDetect(final MenuDetectEvent event) {
+		final Object[] listeners = this.fMenuListeners.getListeners();
+		for (int i = 0; i < listeners.length; i++) {
+			((MenuDetectListener) listeners[i]).menuDetected(event);
+		}
+	}
+
+	/**
+	 * Set selection to the next or previous element if possible.
+	 * 
+	 * @param next
+	 *            <code>true</code> if the next element should be selected,
+	 *            otherwise the previous one will be selected
+	 */
+	void doTraverse(final boolean next) {
+		if (this.fSelectedItem == null) {
+			return;
+		}
+
+		final int index = this.fBreadcrumbItems.indexOf(this.fSelectedItem);
+		if (next) {
+			if (index == this.fBreadcrumbItems.size() - 1) {
+				final BreadcrumbItem current = (BreadcrumbItem) this.fBreadcrumbItems
+						.get(index);
+
+				current.openDropDownMenu();
+				current.getDropDownShell().setFocus();
+			} else {
+				final BreadcrumbItem nextItem = (BreadcrumbItem) this.fBreadcrumbItems
+						.get(index + 1);
+				selectItem(nextItem);
+			}
+		} else {
+			if (index == 0) {
+				final BreadcrumbItem root = (BreadcrumbItem) this.fBreadcrumbItems
+						.get(index);
+				root.openDropDownMenu();
+				root.getDropDownShell().setFocus();
+			} else {
+				selectItem((BreadcrumbItem) this.fBreadcrumbItems
+						.get(index - 1));
+			}
+		}
+	}
+
+	/**
+	 * Resolves the paths of the items which show the parent chain of the given
+	 * input.
+	 * <p>
+	 * This method only talks to the given content provider and may therefore
+	 * be called from a background thread.
+	 * </p>
+	 * 
+	 * @param contentProvider
+	 *            the content provider to query
+	 * @param input
+	 *            element to build the parent chain for, may be
+	 *            <code>null</code>
+	 * @param monitor
+	 *            the monitor used for cancellation, may be <code>null</code>
+	 * @return the list of {@link TreePath} objects, one for each item, or
+	 *         <code>null</code> if the operation was canceled
+	 */
+	private List resolveItemChain(
+			final ITreePathContentProvider contentProvider, final Object input,
+			final IProgressMonitor monitor) {
+		final List paths = new ArrayList();
+		if (input == null) {
+			return paths;
+		}
+
+		TreePath path = TreePath.EMPTY;
+
+		// Top level elements need to be retrieved using getElements(), rest
+		// using getChildren().
+		Object[] children = contentProvider.getElements(input);
+		Object element = children != null && children.length != 0 ? children[0]
+				: null;
+		while (element != null) {
+			if (monitor != null && monitor.isCanceled()) {
+				return null;
+			}
+
+			path = path.createChildPath(element);
+
+			// All but last item are hidden if the viewer is in a vertical
+			// toolbar.
+			children = contentProvider.getChildren(path);
+			if ((getStyle() & SWT.VERTICAL) == 0 || children == null
+					|| children.length == 0) {
+				paths.add(path);
+			}
+
+			if (children != null && children.length != 0) {
+				element = children[0];
+			} else {
+				break;
+			}
+		}
+
+		return paths;
+	}
+
+	/**
+	 * Shows the given item chain.
+	 * 
+	 * @param paths
+	 *            the paths as returned by
+	 *            {@link #resolveItemChain(ITreePathContentProvider, Object, IProgressMonitor)}
+	 */
+	private void applyItemChain(final List paths) {
+		disableRedraw();
+		try {
+			preservingSelection(new Runnable() {
+				@Override
+				public void run() {
+					buildItemChain(paths);
+				}
+			});
+		} finally {
+			enableRedraw();
+		}
+	}
+
+	/**
+	 * Generates the items for the given parent chain.
+	 * 
+	 * @param paths
+	 *            the paths of the parent chain
+	 */
+	private void buildItemChain(final List paths) {
+		this.fChainPaths = paths;
+		this.fChainWidths = new int[paths.size()];
+		Arrays.fill(this.fChainWidths, -1);
+
+		if (updateItemChain(computeVisiblePaths())) {
+			relayout();
+		}
+	}
+
+	/**
+	 * Updates the items to show the given paths.
+	 * 
+	 * @param paths
+	 *            the paths of the items to show, {@link TreePath#EMPTY} for
+	 *            the item of the elided levels
+	 * @return whether the breadcrumb layout needs to be updated
+	 */
+	private boolean updateItemChain(final List paths) {
+		if (this.fPendingItem != null) {
+			// the pending item gets reused or disposed like any other item
+			this.fPendingItem.setDropDownEnabled(true);
+			this.fPendingItem = null;
+		}
+
+		if (this.fBreadcrumbItems.size() > 0) {
+			final BreadcrumbItem last = (BreadcrumbItem) this.fBreadcrumbItems
+					.get(this.fBreadcrumbItems.size() - 1);
+			last.setIsLastItem(false);
+		}
+
+		boolean updateLayout = false;
+
+		// Items in front of the first difference are kept as they are,
+		// only the changed suffix of the chain is mapped and relabeled.
+		int index = this.fModel.getSharedPrefixLength(paths);
+
+		for (final int size = paths.size(); index < size; index++) {
+			final TreePath path = (TreePath) paths.get(index);
+			if (path == TreePath.EMPTY) {
+				updateLayout = updateOrCreateElidedItem(index) || updateLayout;
+			} else {
+				if (index < this.fBreadcrumbItems.size()
+						&& this.fBreadcrumbItems.get(index) == this.fElidedItem) {
+					this.fElidedItem = null;
+				}
+				updateLayout = updateOrCreateItem(index, path,
+						path.getLastSegment())
+						|| updateLayout;
+			}
+			this.fModel.setPath(index, path);
+		}
+
+		BreadcrumbItem last = null;
+		if (index > 0 && index <= this.fBreadcrumbItems.size()) {
+			last = (BreadcrumbItem) this.fBreadcrumbItems.get(index - 1);
+			last.setIsLastItem(true);
+		}
+
+		while (index < this.fBreadcrumbItems.size()) {
+			updateLayout = true;
+			final BreadcrumbItem item = (BreadcrumbItem) this.fBreadcrumbItems
+					.remove(this.fBreadcrumbItems.size() - 1);
+			if (item.hasFocus() && last != null) {
+				last.setFocus(true);
+			}
+			if (item == this.fSelectedItem) {
+				selectItem(null);
+			}
+			if (item == this.fElidedItem) {
+				this.fElidedItem = null;
+			}
+			if (item.getData() != null) {
+				unindexItem(item);
+				unmapElement(item.getData());
+			}
+			releaseItem(item);
+		}
+		this.fModel.setSize(index);
+
+		return updateLayout;
+	}
+
+	/**
+	 * Creates or updates the item which stands for the elided levels of the
+	 * chain.
+	 * 
+	 * @param index
+	 *            the index of the item
+	 * @return whether breadcrumb layout needs to be updated due to this change
+	 */
+	private boolean updateOrCreateElidedItem(final int index) {
+		BreadcrumbItem item;
+		boolean updateLayout = false;
+		if (this.fBreadcrumbItems.size() > index) {
+			item = (BreadcrumbItem) this.fBreadcrumbItems.get(index);
+			if (item.getData() != null) {
+				unindexItem(item);
+				unmapElement(item.getData());
+				item.setData(null);
+			}
+		} else {
+			item = obtainItem();
+			this.fBreadcrumbItems.add(item);
+			updateLayout = true;
+		}
+
+		this.fElidedItem = item;
+		item.setPath(null);
+
+		final int width = item.getWidth(true);
+		item.setImage(null);
+		item.setText(BreadcrumbMessages.BreadcrumbViewer_elided_label);
+		if (item.getWidth(true) != width) {
+			markItemChanged(item);
+			updateLayout = true;
+		}
+		item.setToolTip(NLS.bind(
+				BreadcrumbMessages.BreadcrumbViewer_elided_toolTip,
+				Integer.valueOf(this.fElidedPaths.size())));
+
+		return updateLayout;
+	}
+
+	/**
+	 * Sets whether the middle levels of a chain which is wider than the
+	 * breadcrumb are collapsed into a single item. The drop down of that item
+	 * lists the collapsed levels, which are not created as items at all.
+	 * <p>
+	 * When disabled, all levels are shown and the items hide their text from
+	 * the left if the chain does not fit.
+	 * </p>
+	 * 
+	 * @param elide
+	 *            <code>true</code> to collapse the middle levels
+	 */
+	public void setMiddleElision(final boolean elide) {
+		if (this.fMiddleElision == elide) {
+			return;
+		}
+
+		this.fMiddleElision = elide;
+		if (!this.fContainer.isDisposed()) {
+			relayout();
+		}
+	}
+
+	/**
+	 * Tells whether the middle levels of a chain which is wider than the
+	 * breadcrumb are collapsed into a single item.
+	 * 
+	 * @return <code>true</code> if middle elision is enabled
+	 */
+	public boolean isMiddleElision() {
+		return this.fMiddleElision;
+	}
+
+	/**
+	 * Computes the paths of the items to show for the current chain and width
+	 * of the breadcrumb.
+	 * <p>
+	 * The first and the last level are always shown. With middle elision, as
+	 * many levels from the end of the chain as fit are shown as well, the
+	 * levels between are replaced by a single item.
+	 * </p>
+	 * 
+	 * @return the paths of the items, {@link TreePath#EMPTY} stands for the
+	 *         elided levels
+	 */
+	private List computeVisiblePaths() {
+		final List paths = this.fChainPaths;
+		final int size = paths.size();
+
+		this.fElidedPaths = Collections.EMPTY_LIST;
+		if (!this.fMiddleElision || size <= 2) {
+			return paths;
+		}
+
+		final int width = this.fContainer.getClientArea().width;
+		final int rootWidth = measureLevel(0);
+
+		// the chain fits as it is
+		int chainWidth = rootWidth;
+		for (int i = size - 1; i > 0 && chainWidth <= width; i--) {
+			chainWidth += measureLevel(i);
+		}
+		if (chainWidth <= width) {
+			return paths;
+		}
+
+		final int available = width - rootWidth - measureElidedItem();
+		int first = size - 1;
+		int tailWidth = measureLevel(first);
+		while (first > 2 && tailWidth + measureLevel(first - 1) <= available) {
+			first--;
+			tailWidth += measureLevel(first);
+		}
+
+		this.fElidedPaths = new ArrayList(paths.subList(1, first));
+
+		final List visible = new ArrayList(size - first + 2);
+		visible.add(paths.get(0));
+		visible.add(TreePath.EMPTY);
+		visible.addAll(paths.subList(first, size));
+		return visible;
+	}
+
+	/**
+	 * Updates the elided levels for the current width of the breadcrumb.
+	 */
+	private void updateElision() {
+		if (this.fChainPaths.isEmpty() || this.fPendingItem != null) {
+			return;
+		}
+
+		final List paths = computeVisiblePaths();
+		if (paths.size() == this.fModel.getSize()
+				&& this.fModel.getSharedPrefixLength(paths) == paths.size()) {
+			if (this.fElidedItem != null) {
+				this.fElidedItem.setToolTip(NLS.bind(
+						BreadcrumbMessages.BreadcrumbViewer_elided_toolTip,
+						Integer.valueOf(this.fElidedPaths.size())));
+			}
+			return;
+		}
+
+		updateItemChain(paths);
+	}
+
+	/**
+	 * Returns the width of the item for the given level of the chain, with its
+	 * text shown. The label of the level is measured without creating an item
+	 * for it.
+	 * 
+	 * @param index
+	 *            the index of the level in the chain
+	 * @return the width of the level
+	 */
+	private int measureLevel(final int index) {
+		if (this.fChainWidths[index] < 0) {
+			final ViewerLabel label = new ViewerLabel("", null); //$NON-NLS-1$
+			((ITreePathLabelProvider) getLabelProvider()).updateLabel(label,
+					(TreePath) this.fChainPaths.get(index));
+
+			final BreadcrumbItem item = getMeasureItem();
+			item.setText(label.getText() != null ? label.getText() : ""); //$NON-NLS-1$
+			item.setImage(label.getImage());
+			this.fChainWidths[index] = item.getWidth(true);
+		}
+		return this.fChainWidths[index];
+	}
+
+	/**
+	 * Returns the width of the item standing for the elided levels.
+	 * 
+	 * @return the width of the elided item
+	 */
+	private int measureElidedItem() {
+		if (this.fElidedItemWidth < 0) {
+			final BreadcrumbItem item = getMeasureItem();
+			item.setText(BreadcrumbMessages.BreadcrumbViewer_elided_label);
+			item.setImage(null);
+			this.fElidedItemWidth = item.getWidth(true);
+		}
+		return this.fElidedItemWidth;
+	}
+
+	/**
+	 * Returns the hidden item used to measure labels.
+	 * 
+	 * @return the measure item
+	 */
+	private BreadcrumbItem getMeasureItem() {
+		if (this.fMeasureItem == null) {
+			this.fMeasureItem = new BreadcrumbItem(this, this.fContainer);
+			this.fMeasureItem.recycle();
+		}
+		return this.fMeasureItem;
+	}
+
+	/**
+	 * Discards the measured widths of the levels of the chain.
+	 */
+	private void invalidateChainWidths() {
+		Arrays.fill(this.fChainWidths, -1);
+		this.fElidedItemWidth = -1;
+		if (this.fMeasureItem != null) {
+			this.fMeasureItem.invalidateWidth();
+		}
+	}
+
+	/**
+	 * Creates the drop down of an item.
+	 * 
+	 * @param item
+	 *            the item whose drop down is opened
+	 * @param parent
+	 *            the parent of the drop down control
+	 * @param site
+	 *            the site of the drop down
+	 * @return the control of the drop down
+	 */
+	Control createItemDropDown(final BreadcrumbItem item,
+			final Composite parent, final IBreadcrumbDropDownSite site) {
+		if (item == this.fElidedItem) {
+			return createElidedDropDown(parent, site);
+		}
+		return createDropDown(parent, site, item.getPath());
+	}
+
+	/**
+	 * Starts fetching the drop down children of an item, if a prefetcher is
+	 * set and the item has a drop down.
+	 * 
+	 * @param item
+	 *            the item the pointer or the keyboard focus is on
+	 */
+	void prefetchDropDown(final BreadcrumbItem item) {
+		if (this.fPrefetcher == null || item == this.fElidedItem
+				|| item.getPath() == null || !item.isDropDownEnabled()) {
+			return;
+		}
+		this.fPrefetcher.prefetch(item.getPath());
+	}
+
+	/**
+	 * Creates the drop down listing the elided levels of the chain. Selecting
+	 * a level opens it like a selection in any other drop down.
+	 */
+	private Control createElidedDropDown(final Composite parent,
+			final IBreadcrumbDropDownSite site) {
+		final Table table = new Table(parent, SWT.SINGLE | SWT.V_SCROLL);
+
+		final ITreePathLabelProvider labelProvider = (ITreePathLabelProvider) getLabelProvider();
+		for (int i = 0, size = this.fElidedPaths.size(); i < size; i++) {
+			final TreePath path = (TreePath) this.fElidedPaths.get(i);
+			final ViewerLabel label = new ViewerLabel("", null); //$NON-NLS-1$
+			labelProvider.updateLabel(label, path);
+
+			final TableItem tableItem = new TableItem(table, SWT.NONE);
+			tableItem.setText(label.getText() != null ? label.getText() : ""); //$NON-NLS-1$
+			tableItem.setImage(label.getImage());
+			tableItem.setData(path);
+		}
+
+		final Listener listener = new Listener() {
+			@Override
+			public void handleEvent(final Event event) {
+				TableItem tableItem;
+				if (event.type == SWT.MouseUp) {
+					if (event.button != 1) {
+						return;
+					}
+					tableItem = table.getItem(new Point(event.x, event.y));
+				} else {
+					tableItem = (TableItem) event.item;
+				}
+				if (tableItem == null) {
+					return;
+				}
+
+				site.notifySelection(new TreeSelection((TreePath) tableItem
+						.getData()));
+				site.close();
+			}
+		};
+		table.addListener(SWT.DefaultSelection, listener);
+		table.addListener(SWT.MouseUp, listener);
+
+		return table;
+	}
+
+	/**
+	 * Starts a batch update. Until the matching call to {@link #endUpdate()},
+	 * refreshing or updating items only records that the breadcrumb needs to
+	 * be laid out, the layout is done once when the batch ends.
+	 * <p>
+	 * <strong>A call to this method must be followed by a call to
+	 * {@link #endUpdate()}</strong>, calls may be nested.
+	 * </p>
+	 */
+	public void beginUpdate() {
+		if (this.fUpdateDepth++ == 0) {
+			disableRedraw();
+		}
+	}
+
+	/**
+	 * Ends a batch update started with {@link #beginUpdate()}. When the
+	 * outermost batch ends, the size of the items is updated and the
+	 * breadcrumb is laid out if any change of the batch required it.
 	 */
-	void selectItem(final BreadcrumbItem item) {
-		if (this.fSelectedItem != null) {
-			this.fSelectedItem.setSelected(false);
+	public void endUpdate() {
+		if (this.fUpdateDepth == 0) {
+			return;
 		}
 
-		this.fSelectedItem = item;
-		setSelectionToWidget(getSelection(), false);
-		setFocus();
-
-		fireSelectionChanged(new SelectionChangedEvent(this, getSelection()));
+		if (--this.fUpdateDepth == 0) {
+			try {
+				if (this.fRelayoutPending && !this.fContainer.isDisposed()) {
+					this.fRelayoutPending = false;
+					doRelayout();
+				}
+			} finally {
+				this.fRelayoutPending = false;
+				enableRedraw();
+			}
+		}
 	}
 
 	/**
-	 * Returns the item count.
+	 * Tells whether a batch update is in progress.
 	 * 
-	 * @return number of items shown in the viewer
+	 * @return <code>true</code> between {@link #beginUpdate()} and the
+	 *         matching {@link #endUpdate()}
 	 */
-	int getItemCount() {
-		return this.fBreadcrumbItems.size();
+	public boolean isUpdating() {
+		return this.fUpdateDepth > 0;
 	}
 
 	/**
-	 * Returns the item for the given item index.
+	 * Refreshes the given elements with a single layout of the breadcrumb.
 	 * 
-	 * @param index
-	 *            the index of the item
-	 * @return the item ad the given <code>index</code>
+	 * @param elements
+	 *            the elements to refresh
+	 * @see #refresh(Object)
 	 */
-	BreadcrumbItem getItem(final int index) {
-		return (BreadcrumbItem) this.fBreadcrumbItems.get(index);
+	public void refresh(final Object[] elements) {
+		beginUpdate();
+		try {
+			for (int i = 0; i < elements.length; i++) {
+				refresh(elements[i]);
+			}
+		} finally {
+			endUpdate();
+		}
 	}
 
-	/**
-	 * Returns the index of the given item.
-	 * 
-	 * @param item
-	 *            the item to search
-	 * @return the index of the item or -1 if not found
+	/*
+	 * @see org.eclipse.jface.viewers.StructuredViewer#update(java.lang.Object[],
+	 * java.lang.String[])
 	 */
-	int getIndexOfItem(final BreadcrumbItem item) {
-		for (int i = 0, size = this.fBreadcrumbItems.size(); i < size; i++) {
-			final BreadcrumbItem pItem = (BreadcrumbItem) this.fBreadcrumbItems
-					.get(i);
-			if (pItem == item) {
-				return i;
-			}
+	@Override
+	public void update(final Object[] elements, final String[] properties) {
+		beginUpdate();
+		try {
+			super.update(elements, properties);
+		} finally {
+			endUpdate();
 		}
+	}
 
-		return -1;
+	/**
+	 * Returns the number of layouts which have been skipped because they were
+	 * merged into the layout at the end of a batch update.
+	 * 
+	 * @return the number of saved layouts
+	 */
+	public long getSavedLayoutCount() {
+		return this.fSavedLayoutCount;
 	}
 
 	/**
-	 * Notifies all double click listeners.
+	 * Resets the saved layout counter.
 	 */
-	void fireDoubleClick() {
-		fireDoubleClick(new DoubleClickEvent(this, getSelection()));
+	public void resetSavedLayoutCount() {
+		this.fSavedLayoutCount = 0;
 	}
 
 	/**
-	 * Notifies all open listeners.
+	 * Updates the size of the items and lays out the breadcrumb, or defers
+	 * this to the end of the current batch update.
 	 */
-	void fireOpen() {
-		fireOpen(new OpenEvent(this, getSelection()));
+	private void relayout() {
+		if (this.fUpdateDepth > 0) {
+			if (this.fRelayoutPending) {
+				this.fSavedLayoutCount++;
+			}
+			this.fRelayoutPending = true;
+			return;
+		}
+
+		doRelayout();
 	}
 
 	/**
-	 * The given element was selected from a drop down menu.
-	 * 
-	 * @param element
-	 *            the selected element
+	 * Updates the elided levels and the size of the items and lays out the
+	 * breadcrumb.
 	 */
-	void fireMenuSelection(final ISelection selection) {
-		fireOpen(new OpenEvent(this, selection));
+	private void doRelayout() {
+		if (this.fMiddleElision || this.fElidedItem != null) {
+			updateElision();
+		}
+		updateSize();
+		layoutContainer();
 	}
 
 	/**
-	 * A context menu has been requested for the selected breadcrumb item.
+	 * Returns a new item, taking it from the pool of recycled items if
+	 * possible.
 	 * 
-	 * @param event
-	 *            the event issued the menu detection
+	 * @return an item which is shown as the last item of the container
 	 */
-	void fireMenuDetect(final MenuDetectEvent event) {
-		final Object[] listeners = this.fMenuListeners.getListeners();
-		for (int i = 0; i < listeners.length; i++) {
-			((MenuDetectListener) listeners[i]).menuDetected(event);
+	private BreadcrumbItem obtainItem() {
+		if (this.fItemPool.isEmpty()) {
+			this.fItemPoolMissCount++;
+			final BreadcrumbItem item = new BreadcrumbItem(this,
+					this.fContainer);
+			markItemChanged(item);
+			return item;
 		}
+
+		this.fItemPoolHitCount++;
+		final BreadcrumbItem item = (BreadcrumbItem) this.fItemPool
+				.removeLast();
+		item.reuse();
+		markItemChanged(item);
+		return item;
 	}
 
 	/**
-	 * Set selection to the next or previous element if possible.
+	 * Hides an item which has been removed from the chain and keeps it for
+	 * reuse, or disposes it if the pool is full.
 	 * 
-	 * @param next
-	 *            <code>true</code> if the next element should be selected,
-	 *            otherwise the previous one will be selected
+	 * @param item
+	 *            the removed item
 	 */
-	void doTraverse(final boolean next) {
-		if (this.fSelectedItem == null) {
+	private void releaseItem(final BreadcrumbItem item) {
+		this.fChangedItems.remove(item);
+
+		if (this.fItemPool.size() >= this.fItemPoolCapacity) {
+			item.dispose();
 			return;
 		}
 
-		final int index = this.fBreadcrumbItems.indexOf(this.fSelectedItem);
-		if (next) {
-			if (index == this.fBreadcrumbItems.size() - 1) {
-				final BreadcrumbItem current = (BreadcrumbItem) this.fBreadcrumbItems
-						.get(index);
-
-				current.openDropDownMenu();
-				current.getDropDownShell().setFocus();
-			} else {
-				final BreadcrumbItem nextItem = (BreadcrumbItem) this.fBreadcrumbItems
-						.get(index + 1);
-				selectItem(nextItem);
-			}
-		} else {
-			if (index == 0) {
-				final BreadcrumbItem root = (BreadcrumbItem) this.fBreadcrumbItems
-						.get(index);
-				root.openDropDownMenu();
-				root.getDropDownShell().setFocus();
-			} else {
-				selectItem((BreadcrumbItem) this.fBreadcrumbItems
-						.get(index - 1));
-			}
-		}
+		item.recycle();
+		this.fItemPool.addLast(item);
 	}
 
 	/**
-	 * Generates the parent chain of the given element.
+	 * Disposes pooled items until at most the given number of items is left.
 	 * 
-	 * @param element
-	 *            element to build the parent chain for
-	 * @return the first index of an item in fBreadcrumbItems which is not part
-	 *         of the chain
+	 * @param size
+	 *            the number of items to keep
 	 */
-	private void buildItemChain(final Object input) {
-		if (this.fBreadcrumbItems.size() > 0) {
-			final BreadcrumbItem last = (BreadcrumbItem) this.fBreadcrumbItems
-					.get(this.fBreadcrumbItems.size() - 1);
-			last.setIsLastItem(false);
+	private void trimItemPool(final int size) {
+		while (this.fItemPool.size() > size) {
+			((BreadcrumbItem) this.fItemPool.removeFirst()).dispose();
 		}
+	}
 
-		int index = 0;
-		boolean updateLayout = false;
-		if (input != null) {
-			final ITreePathContentProvider contentProvider = (ITreePathContentProvider) getContentProvider();
-			TreePath path = new TreePath(new Object[0]);
-
-			// Top level elements need to be retrieved using getElements(), rest
-			// using getChildren().
-			Object[] children = contentProvider.getElements(input);
-			Object element = children != null && children.length != 0 ? children[0]
-					: null;
-			while (element != null) {
-				path = path.createChildPath(element);
-
-				// All but last item are hidden if the viewer is in a vertical
-				// toolbar.
-				children = contentProvider.getChildren(path);
-				if ((getStyle() & SWT.VERTICAL) == 0 || children == null
-						|| children.length == 0) {
-					updateLayout = updateOrCreateItem(index++, path, element)
-							|| updateLayout;
-				}
-
-				if (children != null && children.length != 0) {
-					element = children[0];
-				} else {
-					break;
-				}
+	/**
+	 * Sets the maximum number of items which are kept hidden for reuse when
+	 * the chain gets shorter. Pooled items exceeding the new capacity are
+	 * disposed.
+	 * 
+	 * @param capacity
+	 *            the capacity of the item pool, <code>0</code> disables
+	 *            pooling
+	 */
+	public void setItemPoolCapacity(final int capacity) {
+		this.fItemPoolCapacity = Math.max(0, capacity);
+		trimItemPool(this.fItemPoolCapacity);
+	}
 
-			}
-		}
+	/**
+	 * Returns the maximum number of items which are kept hidden for reuse.
+	 * 
+	 * @return the capacity of the item pool
+	 */
+	public int getItemPoolCapacity() {
+		return this.fItemPoolCapacity;
+	}
 
-		BreadcrumbItem last = null;
-		if (index <= this.fBreadcrumbItems.size()) {
-			last = (BreadcrumbItem) this.fBreadcrumbItems.get(index - 1);
-			last.setIsLastItem(true);
-		}
+	/**
+	 * Returns the number of items which have been taken from the item pool.
+	 * 
+	 * @return the number of reused items
+	 */
+	public long getItemPoolHitCount() {
+		return this.fItemPoolHitCount;
+	}
 
-		while (index < this.fBreadcrumbItems.size()) {
-			updateLayout = true;
-			final BreadcrumbItem item = (BreadcrumbItem) this.fBreadcrumbItems
-					.remove(this.fBreadcrumbItems.size() - 1);
-			if (item.hasFocus() && last != null) {
-				last.setFocus(true);
-			}
-			if (item == this.fSelectedItem) {
-				selectItem(null);
-			}
-			if (item.getData() != null) {
-				unmapElement(item.getData());
-			}
-			item.dispose();
-		}
+	/**
+	 * Returns the number of items which had to be created because the item
+	 * pool was empty.
+	 * 
+	 * @return the number of created items
+	 */
+	public long getItemPoolMissCount() {
+		return this.fItemPoolMissCount;
+	}
 
-		if (updateLayout) {
-			updateSize();
-			this.fContainer.layout(true, true);
-		}
+	/**
+	 * Resets the item pool hit and miss counters.
+	 */
+	public void resetItemPoolCounters() {
+		this.fItemPoolHitCount = 0;
+		this.fItemPoolMissCount = 0;
 	}
 
 	/**
@@ -710,19 +1919,41 @@ public abstract class BreadcrumbViewer extends StructuredViewer {
 	private boolean refreshItem(final BreadcrumbItem item) {
 		boolean layoutChanged = false;
 
-		final TreePath path = getTreePathFromItem(item);
+		if (item.getData() == null || item.getPath() == null) {
+			// the pending item is not backed by an element
+			return layoutChanged;
+		}
+
+		final TreePath path = item.getPath();
 
 		final ViewerLabel label = new ViewerLabel(item.getText(),
 				item.getImage());
 		((ITreePathLabelProvider) getLabelProvider()).updateLabel(label, path);
 
 		if (label.hasNewText()) {
-			item.setText(label.getText());
-			layoutChanged = true;
+			this.fSearchIndexUpdater.labelChanged(path, label.getText());
 		}
-		if (label.hasNewImage()) {
-			item.setImage(label.getImage());
-			layoutChanged = true;
+
+		if (label.hasNewText() || label.hasNewImage()) {
+			final int oldWidth = item.getWidth(true);
+			final int oldImageWidth = item.getWidth(false);
+
+			if (label.hasNewText()) {
+				item.setText(label.getText());
+			}
+			if (label.hasNewImage()) {
+				item.setImage(label.getImage());
+			}
+
+			// Labels which keep their width are only redrawn, the fitting of
+			// the chain and the bounds of all items stay the same.
+			final int newWidth = item.getWidth(true);
+			if (newWidth != oldWidth || item.getWidth(false) != oldImageWidth) {
+				layoutChanged = !fitsItemBounds(item, oldWidth, newWidth);
+				if (layoutChanged) {
+					markItemChanged(item);
+				}
+			}
 		}
 		if (label.hasNewTooltipText()) {
 			item.setToolTip(label.getTooltipText());
@@ -730,6 +1961,27 @@ public abstract class BreadcrumbViewer extends StructuredViewer {
 		return layoutChanged;
 	}
 
+	/**
+	 * Tells whether an owner drawn last item can show its grown label in its
+	 * current bounds. The last item grabs the remaining width of the
+	 * breadcrumb, as long as it grows inside of it no other item is affected.
+	 * 
+	 * @param item
+	 *            the item whose label has changed
+	 * @param oldWidth
+	 *            the width of the item with its old label
+	 * @param newWidth
+	 *            the width of the item with its new label
+	 * @return <code>true</code> if the item does not need a new layout
+	 */
+	private boolean fitsItemBounds(final BreadcrumbItem item,
+			final int oldWidth, final int newWidth) {
+		if (this.fCanvas == null || !item.isLastItem() || !item.isShowText()) {
+			return false;
+		}
+		return newWidth >= oldWidth && newWidth <= item.getBounds().width;
+	}
+
 	/**
 	 * Creates or updates a breadcrumb item.
 	 * 
@@ -738,26 +1990,29 @@ public abstract class BreadcrumbViewer extends StructuredViewer {
 	private boolean updateOrCreateItem(final int index, final TreePath path,
 			final Object element) {
 		BreadcrumbItem item;
+		boolean updateLayout = false;
 		if (this.fBreadcrumbItems.size() > index) {
 			item = (BreadcrumbItem) this.fBreadcrumbItems.get(index);
 			if (item.getData() != null) {
+				unindexItem(item);
 				unmapElement(item.getData());
 			}
 		} else {
-			item = new BreadcrumbItem(this, this.fContainer);
+			item = obtainItem();
 			this.fBreadcrumbItems.add(item);
+			updateLayout = true;
 		}
 
-		boolean updateLayout = false;
-
 		if (equals(element, item.getData())) {
 			item.setPath(path);
-			updateLayout = myDoUpdateItem(item, element, false);
+			updateLayout = myDoUpdateItem(item, element, false)
+					|| updateLayout;
 		} else {
 			item.setData(element);
 			item.setPath(path);
 			mapElement(element, item);
-			updateLayout = refreshItem(item);
+			indexItem(item);
+			updateLayout = refreshItem(item) || updateLayout;
 		}
 
 		return updateLayout;
@@ -766,71 +2021,108 @@ public abstract class BreadcrumbViewer extends StructuredViewer {
 	/**
 	 * Update the size of the items such that all items are visible, if
 	 * possible.
+	 * <p>
+	 * Items hide their text from the left until the chain fits, the last item
+	 * always shows its text. The fitting itself is done by the
+	 * {@link BreadcrumbLayoutModel} on the cached item widths.
+	 * </p>
 	 * 
 	 * @return <code>true</code> if any item has changed, <code>false</code>
 	 *         otherwise
 	 */
 	private boolean updateSize() {
-		final int width = this.fContainer.getClientArea().width;
+		final int size = this.fBreadcrumbItems.size();
+		if (size == 0) {
+			return false;
+		}
 
-		int currentWidth = getCurrentWidth();
+		for (int i = 0; i < size; i++) {
+			final BreadcrumbItem item = (BreadcrumbItem) this.fBreadcrumbItems
+					.get(i);
+			this.fModel.setWidths(i, item.getWidth(true), item.getWidth(false));
+		}
+		this.fModel.fit(this.fContainer.getClientArea().width);
 
 		boolean requiresLayout = false;
+		for (int i = 0; i < size; i++) {
+			final BreadcrumbItem item = (BreadcrumbItem) this.fBreadcrumbItems
+					.get(i);
+			final boolean showText = this.fModel.isShowText(i);
+			if (item.isShowText() != showText) {
+				item.setShowText(showText);
+				markItemChanged(item);
+				requiresLayout = true;
+			}
+		}
 
-		if (currentWidth > width) {
-			int index = 0;
-			while (currentWidth > width
-					&& index < this.fBreadcrumbItems.size() - 1) {
-				final BreadcrumbItem viewer = (BreadcrumbItem) this.fBreadcrumbItems
-						.get(index);
-				if (viewer.isShowText()) {
-					viewer.setShowText(false);
-					currentWidth = getCurrentWidth();
-					requiresLayout = true;
-				}
+		return requiresLayout;
+	}
 
-				index++;
-			}
+	/**
+	 * The container has been resized. The first resize is handled right away,
+	 * further resize events within {@link #RESIZE_INTERVAL} are coalesced
+	 * into one pass which applies the size the container has by then.
+	 */
+	private void scheduleResize() {
+		if (this.fResizeScheduled) {
+			return;
+		}
 
-		} else if (currentWidth < width) {
+		final long delay = this.fLastResize + RESIZE_INTERVAL
+				- System.currentTimeMillis();
+		if (delay <= 0) {
+			handleResize();
+			return;
+		}
 
-			int index = this.fBreadcrumbItems.size() - 1;
-			while (currentWidth < width && index >= 0) {
+		this.fResizeScheduled = true;
+		this.fContainer.getDisplay().timerExec((int) delay,
+				this.fResizeRunnable);
+	}
 
-				final BreadcrumbItem viewer = (BreadcrumbItem) this.fBreadcrumbItems
-						.get(index);
-				if (!viewer.isShowText()) {
-					viewer.setShowText(true);
-					currentWidth = getCurrentWidth();
-					if (currentWidth > width) {
-						viewer.setShowText(false);
-						index = 0;
-					} else {
-						requiresLayout = true;
-					}
-				}
+	/**
+	 * Updates the background and the layout for the current size of the
+	 * container.
+	 */
+	private void handleResize() {
+		if (this.fContainer.isDisposed()) {
+			return;
+		}
 
-				index--;
-			}
+		this.fLastResize = System.currentTimeMillis();
+
+		final int height = this.fContainer.getClientArea().height;
+		if (this.fGradientBackground == null
+				|| this.fGradientBackground.getBounds().height != height) {
+			updateGradientBackground(height);
 		}
 
-		return requiresLayout;
+		relayout();
 	}
 
 	/**
-	 * Returns the current width of all items in the list.
-	 * 
-	 * @return the width of all items in the list
+	 * The system settings, e.g. the font, have changed. Discards all cached
+	 * item widths and fits the items again.
 	 */
-	private int getCurrentWidth() {
-		int result = 0;
+	private void handleSettingsChanged() {
+		if (this.fContainer.isDisposed()) {
+			return;
+		}
+
 		for (int i = 0, size = this.fBreadcrumbItems.size(); i < size; i++) {
-			final BreadcrumbItem viewer = (BreadcrumbItem) this.fBreadcrumbItems
+			final BreadcrumbItem item = (BreadcrumbItem) this.fBreadcrumbItems
 					.get(i);
-			result += viewer.getWidth();
+			item.invalidateWidth();
+			markItemChanged(item);
 		}
+		invalidateChainWidths();
 
-		return result;
+		// the system colors of the gradient may have changed as well
+		if (this.fGradientBackground != null) {
+			updateGradientBackground(this.fContainer.getClientArea().height);
+		}
+
+		relayout();
 	}
 
 	/**
@@ -861,78 +2153,22 @@ public abstract class BreadcrumbViewer extends StructuredViewer {
 	}
 
 	/**
-	 * The image to use for the breadcrumb background as specified in
-	 * https://bugs.eclipse.org/bugs/show_bug.cgi?id=221477
+	 * Shows the shared gradient background image for the given height.
 	 * 
 	 * @param height
-	 *            the height of the image to create
-	 * @param display
-	 *            the current display
-	 * @return the image for the breadcrumb background
-	 */
-	private Image createGradientImage(final int height, final Display display) {
-		final int width = 50;
-
-		final Image result = new Image(display, width, height);
-
-		final GC gc = new GC(result);
-
-		final Color colorC = createColor(SWT.COLOR_WIDGET_BACKGROUND,
-				SWT.COLOR_LIST_BACKGROUND, 35, display);
-		final Color colorD = createColor(SWT.COLOR_WIDGET_BACKGROUND,
-				SWT.COLOR_LIST_BACKGROUND, 45, display);
-		final Color colorE = createColor(SWT.COLOR_WIDGET_BACKGROUND,
-				SWT.COLOR_LIST_BACKGROUND, 80, display);
-		final Color colorF = createColor(SWT.COLOR_WIDGET_BACKGROUND,
-				SWT.COLOR_LIST_BACKGROUND, 70, display);
-		final Color colorG = createColor(SWT.COLOR_WIDGET_BACKGROUND,
-				SWT.COLOR_WHITE, 45, display);
-		final Color colorH = createColor(SWT.COLOR_WIDGET_NORMAL_SHADOW,
-				SWT.COLOR_LIST_BACKGROUND, 35, display);
-
-		try {
-			drawLine(width, 0, colorC, gc);
-			drawLine(width, 1, colorC, gc);
-
-			gc.setForeground(colorD);
-			gc.setBackground(colorE);
-			gc.fillGradientRectangle(0, 2, width, 2 + 8, true);
-
-			gc.setBackground(colorE);
-			gc.fillRectangle(0, 2 + 9, width, height - 4);
-
-			drawLine(width, height - 3, colorF, gc);
-			drawLine(width, height - 2, colorG, gc);
-			drawLine(width, height - 1, colorH, gc);
+	 *            the height of the container
+	 */
+	private void updateGradientBackground(final int height) {
+		final BreadcrumbBackgroundCache cache = BreadcrumbBackgroundCache
+				.getInstance(this.fContainer.getDisplay());
 
-		} finally {
-			gc.dispose();
+		final Image image = height == 0 ? null : cache.acquire(height);
+		this.fContainer.setBackgroundImage(image);
 
-			colorC.dispose();
-			colorD.dispose();
-			colorE.dispose();
-			colorF.dispose();
-			colorG.dispose();
-			colorH.dispose();
+		if (this.fGradientBackground != null) {
+			cache.release(this.fGradientBackground);
 		}
-
-		return result;
-	}
-
-	private void drawLine(final int width, final int position,
-			final Color color, final GC gc) {
-		gc.setForeground(color);
-		gc.drawLine(0, position, width, position);
-	}
-
-	private Color createColor(final int color1, final int color2,
-			final int ratio, final Display display) {
-		final RGB rgb1 = display.getSystemColor(color1).getRGB();
-		final RGB rgb2 = display.getSystemColor(color2).getRGB();
-
-		final RGB blend = blend(rgb2, rgb1, ratio);
-
-		return new Color(display, blend);
+		this.fGradientBackground = image;
 	}
 
 	/**
@@ -979,8 +2215,18 @@ public abstract class BreadcrumbViewer extends StructuredViewer {
 	 */
 	@Override
 	protected void handleDispose(final DisposeEvent event) {
+		cancelChainResolution();
+
+		if (this.fResizeScheduled) {
+			event.display.timerExec(-1, this.fResizeRunnable);
+			this.fResizeScheduled = false;
+		}
+
+		event.display.removeListener(SWT.Settings, this.fSettingsListener);
+
 		if (this.fGradientBackground != null) {
-			this.fGradientBackground.dispose();
+			BreadcrumbBackgroundCache.getInstance(event.display).release(
+					this.fGradientBackground);
 			this.fGradientBackground = null;
 		}
 
@@ -991,6 +2237,24 @@ public abstract class BreadcrumbViewer extends StructuredViewer {
 				item.dispose();
 			}
 		}
+		this.fItemIndex.clear();
+		this.fChangedItems.clear();
+		this.fModel.setSize(0);
+		trimItemPool(0);
+		if (this.fPrefetcher != null) {
+			this.fPrefetcher.dispose();
+			this.fPrefetcher = null;
+		}
+		disposeSharedDropDownShell();
+		if (this.fSearchPopup != null) {
+			this.fSearchPopup.close();
+			this.fSearchPopup = null;
+		}
+		this.fSearchIndexUpdater.dispose();
+		if (this.fMeasureItem != null) {
+			this.fMeasureItem.dispose();
+			this.fMeasureItem = null;
+		}
 
 		super.handleDispose(event);
 	}
@@ -0,0 +1,536 @@
+/*******************************************************************************
+ * Copyright (c) 2012 TH4 SYSTEMS GmbH and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Jens Reimann (TH4 SYSTEMS GmbH) - initial API and implementation
+ *******************************************************************************/
+package org.openscada.ui.breadcrumbs;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.viewers.IColorProvider;
+import org.eclipse.jface.viewers.IElementComparer;
+import org.eclipse.jface.viewers.IFontProvider;
+import org.eclipse.jface.viewers.ILabelProvider;
+import org.eclipse.jface.viewers.ILabelProviderListener;
+import org.eclipse.jface.viewers.ITreePathContentProvider;
+import org.eclipse.jface.viewers.TreePath;
+import org.eclipse.jface.viewers.TreeViewer;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.Font;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.TreeItem;
+import org.openscada.ui.breadcrumbs.internal.BreadcrumbsPlugin;
+
+/**
+ * A content provider for breadcrumb drop-downs which fetches the children of
+ * an element in a background job.
+ * <p>
+ * The provider wraps the content provider of the drop-down viewer. The
+ * elements of the input are fetched by the wrapped provider directly, the
+ * children of an expanded element are fetched in a job. Until they are
+ * available a {@link PendingElement} is shown as the only child, then the
+ * children are added to the viewer in batches. When all children are added,
+ * the drop-down site is asked once to update its size. Fetched children are
+ * kept until the input changes or their parent is refreshed, which fetches
+ * them again. The label provider of the viewer can be wrapped into a
+ * {@link PendingLabelProvider} to label the placeholder.
+ * </p>
+ * <p>
+ * The wrapped provider must be able to handle calls to
+ * <code>getChildren()</code> from a non-UI thread. If it fails, the failure is
+ * logged, the placeholder is removed and the children are fetched again the
+ * next time the element is expanded. Jobs still running are cancelled when
+ * the input changes or the provider is disposed, which happens when the
+ * drop-down is closed.
+ * </p>
+ * <p>
+ * The provider does not defer loading in a {@link SWT#VIRTUAL} tree, whose
+ * items are created lazily; it then fetches all children directly.
+ * </p>
+ * 
+ * @see TreeViewerDropDown#setDeferredLoading(boolean)
+ */
+public class DeferredTreePathContentProvider implements
+		ITreePathContentProvider {
+
+	/**
+	 * Default number of children added to the viewer at once.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 200;
+
+	/**
+	 * The placeholder which is shown while the children of an element are
+	 * being fetched.
+	 */
+	public static final class PendingElement {
+
+		private final TreePath fParentPath;
+
+		PendingElement(final TreePath parentPath) {
+			this.fParentPath = parentPath;
+		}
+
+		/**
+		 * Returns the path of the element whose children are fetched.
+		 * 
+		 * @return the parent path
+		 */
+		public TreePath getParentPath() {
+			return this.fParentPath;
+		}
+
+		@Override
+		public String toString() {
+			return BreadcrumbMessages.DeferredTreePathContentProvider_pending_label;
+		}
+	}
+
+	/**
+	 * A label provider which labels the {@link PendingElement} and passes all
+	 * other elements on to the label provider of the drop-down.
+	 */
+	public static class PendingLabelProvider implements ILabelProvider,
+			IColorProvider, IFontProvider {
+
+		private final ILabelProvider fLabelProvider;
+
+		/**
+		 * Creates a label provider for the pending element.
+		 * 
+		 * @param labelProvider
+		 *            the label provider of all other elements
+		 */
+		public PendingLabelProvider(final ILabelProvider labelProvider) {
+			this.fLabelProvider = labelProvider;
+		}
+
+		@Override
+		public Image getImage(final Object element) {
+			if (element instanceof PendingElement) {
+				return null;
+			}
+			return this.fLabelProvider.getImage(element);
+		}
+
+		@Override
+		public String getText(final Object element) {
+			if (element instanceof PendingElement) {
+				return element.toString();
+			}
+			return this.fLabelProvider.getText(element);
+		}
+
+		@Override
+		public Color getForeground(final Object element) {
+			if (element instanceof PendingElement) {
+				return Display.getCurrent().getSystemColor(
+						SWT.COLOR_WIDGET_NORMAL_SHADOW);
+			}
+			if (this.fLabelProvider instanceof IColorProvider) {
+				return ((IColorProvider) this.fLabelProvider)
+						.getForeground(element);
+			}
+			return null;
+		}
+
+		@Override
+		public Color getBackground(final Object element) {
+			if (!(element instanceof PendingElement)
+					&& this.fLabelProvider instanceof IColorProvider) {
+				return ((IColorProvider) this.fLabelProvider)
+						.getBackground(element);
+			}
+			return null;
+		}
+
+		@Override
+		public Font getFont(final Object element) {
+			if (!(element instanceof PendingElement)
+					&& this.fLabelProvider instanceof IFontProvider) {
+				return ((IFontProvider) this.fLabelProvider).getFont(element);
+			}
+			return null;
+		}
+
+		@Override
+		public boolean isLabelProperty(final Object element,
+				final String property) {
+			if (element instanceof PendingElement) {
+				return false;
+			}
+			return this.fLabelProvider.isLabelProperty(element, property);
+		}
+
+		@Override
+		public void addListener(final ILabelProviderListener listener) {
+			this.fLabelProvider.addListener(listener);
+		}
+
+		@Override
+		public void removeListener(final ILabelProviderListener listener) {
+			this.fLabelProvider.removeListener(listener);
+		}
+
+		@Override
+		public void dispose() {
+			this.fLabelProvider.dispose();
+		}
+	}
+
+	/**
+	 * Fetches the children of one element and adds them to the viewer.
+	 */
+	private final class Loader extends Job {
+
+		private final TreePath fParentPath;
+		private final PendingElement fPendingElement;
+		private final Display fDisplay;
+
+		private Object[] fChildren;
+		private int fAdded;
+		private boolean fDone;
+
+		public Loader(final TreePath parentPath, final Display display) {
+			super(BreadcrumbMessages.DeferredTreePathContentProvider_job_name);
+			this.fParentPath = parentPath;
+			this.fPendingElement = new PendingElement(parentPath);
+			this.fDisplay = display;
+			setSystem(true);
+		}
+
+		@Override
+		protected IStatus run(final IProgressMonitor monitor) {
+			Object[] children;
+			try {
+				children = DeferredTreePathContentProvider.this.fContentProvider
+						.getChildren(this.fParentPath);
+			} catch (final RuntimeException e) {
+				BreadcrumbsPlugin.log(e);
+				if (!monitor.isCanceled() && !this.fDisplay.isDisposed()) {
+					this.fDisplay.asyncExec(new Runnable() {
+						@Override
+						public void run() {
+							failed();
+						}
+					});
+				}
+				return Status.OK_STATUS;
+			}
+			if (monitor.isCanceled()) {
+				return Status.CANCEL_STATUS;
+			}
+			if (this.fDisplay.isDisposed()) {
+				return Status.OK_STATUS;
+			}
+
+			this.fDisplay.asyncExec(new Runnable() {
+				@Override
+				public void run() {
+					if (!isCurrent()) {
+						return;
+					}
+
+					Loader.this.fChildren = children != null ? children
+							: new Object[0];
+					addBatch();
+				}
+			});
+			return Status.OK_STATUS;
+		}
+
+		/**
+		 * Tells whether this loader still belongs to the viewer.
+		 */
+		private boolean isCurrent() {
+			final TreeViewer viewer = DeferredTreePathContentProvider.this.fViewer;
+			return viewer != null
+					&& !viewer.getTree().isDisposed()
+					&& DeferredTreePathContentProvider.this.fLoaders
+							.get(this.fParentPath) == this;
+		}
+
+		/**
+		 * Adds the next batch of children to the viewer and schedules the
+		 * following one. After the last batch the placeholder is removed.
+		 */
+		void addBatch() {
+			if (!isCurrent()) {
+				return;
+			}
+
+			final TreeViewer viewer = DeferredTreePathContentProvider.this.fViewer;
+			final int count = Math.min(
+					DeferredTreePathContentProvider.this.fBatchSize,
+					this.fChildren.length - this.fAdded);
+			if (count > 0) {
+				final Object[] batch = new Object[count];
+				System.arraycopy(this.fChildren, this.fAdded, batch, 0, count);
+				this.fAdded += count;
+				viewer.add(this.fParentPath, batch);
+			}
+
+			if (this.fAdded < this.fChildren.length) {
+				this.fDisplay.asyncExec(new Runnable() {
+					@Override
+					public void run() {
+						addBatch();
+					}
+				});
+				return;
+			}
+
+			this.fDone = true;
+			viewer.remove(this.fParentPath,
+					new Object[] { this.fPendingElement });
+
+			final IBreadcrumbDropDownSite site = DeferredTreePathContentProvider.this.fSite;
+			if (site != null) {
+				site.updateSize();
+			}
+		}
+
+		/**
+		 * Removes the placeholder after fetching the children failed. The
+		 * loader is forgotten, so expanding or refreshing the element tries
+		 * again.
+		 */
+		void failed() {
+			if (!isCurrent()) {
+				return;
+			}
+
+			this.fDone = true;
+			this.fChildren = new Object[0];
+			DeferredTreePathContentProvider.this.fLoaders
+					.remove(this.fParentPath);
+			DeferredTreePathContentProvider.this.fViewer.remove(
+					this.fParentPath, new Object[] { this.fPendingElement });
+
+			final IBreadcrumbDropDownSite site = DeferredTreePathContentProvider.this.fSite;
+			if (site != null) {
+				site.updateSize();
+			}
+		}
+
+		/**
+		 * Returns the children which are known to the viewer.
+		 */
+		Object[] getChildren() {
+			if (this.fDone) {
+				return this.fChildren;
+			}
+
+			final Object[] children = new Object[this.fAdded + 1];
+			children[0] = this.fPendingElement;
+			if (this.fAdded > 0) {
+				System.arraycopy(this.fChildren, 0, children, 1, this.fAdded);
+			}
+			return children;
+		}
+	}
+
+	private final ITreePathContentProvider fContentProvider;
+	private final IBreadcrumbDropDownSite fSite;
+	private final Map fLoaders = new HashMap();
+
+	private TreeViewer fViewer;
+	private int fBatchSize = DEFAULT_BATCH_SIZE;
+	private BreadcrumbPrefetcher fPrefetcher;
+	private boolean fElementsRequested;
+
+	/**
+	 * Creates a deferred content provider.
+	 * 
+	 * @param contentProvider
+	 *            the content provider which fetches the elements
+	 * @param site
+	 *            the site of the drop-down, may be <code>null</code>
+	 */
+	public DeferredTreePathContentProvider(
+			final ITreePathContentProvider contentProvider,
+			final IBreadcrumbDropDownSite site) {
+		this.fContentProvider = contentProvider;
+		this.fSite = site;
+	}
+
+	/**
+	 * Sets the number of children which are added to the viewer at once.
+	 * 
+	 * @param batchSize
+	 *            the batch size
+	 */
+	public void setBatchSize(final int batchSize) {
+		this.fBatchSize = Math.max(1, batchSize);
+	}
+
+	/**
+	 * Sets the prefetcher whose cached children are used instead of fetching
+	 * them again. The prefetcher is consulted once for the elements of the
+	 * input, the children of expanded elements are not prefetched.
+	 * 
+	 * @param prefetcher
+	 *            the prefetcher, may be <code>null</code>
+	 */
+	public void setPrefetcher(final BreadcrumbPrefetcher prefetcher) {
+		this.fPrefetcher = prefetcher;
+	}
+
+	/**
+	 * Tells whether the children of any element are still being fetched or
+	 * added to the viewer.
+	 * 
+	 * @return <code>true</code> if a load is in progress
+	 */
+	public boolean isLoading() {
+		final Iterator iterator = this.fLoaders.values().iterator();
+		while (iterator.hasNext()) {
+			if (!((Loader) iterator.next()).fDone) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public Object[] getElements(final Object inputElement) {
+		// only the first request for the input can use prefetched elements,
+		// later ones come from refreshing the viewer
+		if (this.fPrefetcher != null && !this.fElementsRequested) {
+			this.fElementsRequested = true;
+			final Object[] elements = this.fPrefetcher.consume(inputElement);
+			if (elements != null) {
+				return elements;
+			}
+		}
+		return this.fContentProvider.getElements(inputElement);
+	}
+
+	@Override
+	public Object[] getChildren(final TreePath parentPath) {
+		if (this.fViewer == null) {
+			return this.fContentProvider.getChildren(parentPath);
+		}
+
+		Loader loader = (Loader) this.fLoaders.get(parentPath);
+		if (loader != null && loader.fDone && isShowingChildren(parentPath)) {
+			// the viewer asks again for children it already shows, so the
+			// parent is being refreshed and the children are fetched again
+			discardLoaders(parentPath);
+			loader = null;
+		}
+		if (loader == null) {
+			loader = new Loader(parentPath, this.fViewer.getTree()
+					.getDisplay());
+			this.fLoaders.put(parentPath, loader);
+
+			loader.schedule();
+		}
+		return loader.getChildren();
+	}
+
+	@Override
+	public boolean hasChildren(final TreePath path) {
+		final Loader loader = (Loader) this.fLoaders.get(path);
+		if (loader != null) {
+			return loader.getChildren().length > 0;
+		}
+		return this.fContentProvider.hasChildren(path);
+	}
+
+	@Override
+	public TreePath[] getParents(final Object element) {
+		return this.fContentProvider.getParents(element);
+	}
+
+	@Override
+	public void inputChanged(final Viewer viewer, final Object oldInput,
+			final Object newInput) {
+		cancelLoaders();
+		this.fElementsRequested = false;
+		this.fViewer = null;
+		// a virtual tree creates its items lazily, so a refresh cannot be told
+		// apart from the first request and children are fetched directly
+		if (viewer instanceof TreeViewer
+				&& (((TreeViewer) viewer).getTree().getStyle() & SWT.VIRTUAL) == 0) {
+			this.fViewer = (TreeViewer) viewer;
+		}
+		this.fContentProvider.inputChanged(viewer, oldInput, newInput);
+	}
+
+	@Override
+	public void dispose() {
+		cancelLoaders();
+		this.fViewer = null;
+		this.fContentProvider.dispose();
+	}
+
+	/**
+	 * Tells whether the item of the given path shows its children, rather
+	 * than the dummy child of an item which has never been expanded or has
+	 * been collapsed.
+	 */
+	private boolean isShowingChildren(final TreePath path) {
+		final IElementComparer comparer = this.fViewer.getComparer();
+		TreeItem[] items = this.fViewer.getTree().getItems();
+		TreeItem item = null;
+		for (int i = 0; i < path.getSegmentCount(); i++) {
+			item = findItem(items, path.getSegment(i), comparer);
+			if (item == null) {
+				return false;
+			}
+			items = item.getItems();
+		}
+		return items.length > 0 && items[0].getData() != null;
+	}
+
+	private static TreeItem findItem(final TreeItem[] items,
+			final Object element, final IElementComparer comparer) {
+		for (int i = 0; i < items.length; i++) {
+			final Object data = items[i].getData();
+			if (data != null
+					&& (comparer != null ? comparer.equals(data, element)
+							: data.equals(element))) {
+				return items[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Cancels and forgets the loaders of the given path and of all paths
+	 * below it.
+	 */
+	private void discardLoaders(final TreePath path) {
+		final IElementComparer comparer = this.fViewer.getComparer();
+		final Iterator iterator = this.fLoaders.entrySet().iterator();
+		while (iterator.hasNext()) {
+			final Map.Entry entry = (Map.Entry) iterator.next();
+			if (((TreePath) entry.getKey()).startsWith(path, comparer)) {
+				((Loader) entry.getValue()).cancel();
+				iterator.remove();
+			}
+		}
+	}
+
+	private void cancelLoaders() {
+		final Iterator iterator = this.fLoaders.values().iterator();
+		while (iterator.hasNext()) {
+			((Loader) iterator.next()).cancel();
+		}
+		this.fLoaders.clear();
+	}
+}
@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright (c) 2012 TH4 SYSTEMS GmbH and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Jens Reimann (TH4 SYSTEMS GmbH) - initial API and implementation
+ *******************************************************************************/
+package org.openscada.ui.breadcrumbs;
+
+import org.eclipse.jface.viewers.TreePath;
+
+/**
+ * Converts the elements of the content tree of a breadcrumb to ids which can
+ * be stored in a {@link BreadcrumbPathIndex}, and back.
+ */
+public interface IBreadcrumbPathCodec {
+
+	/**
+	 * Returns the id of an element, which must be unique among its siblings
+	 * and stable across sessions.
+	 * 
+	 * @param element
+	 *            the element
+	 * @return the id, or <code>null</code> if the element is not indexed
+	 */
+	public String getId(Object element);
+
+	/**
+	 * Returns the child of a path with the given id.
+	 * 
+	 * @param parentPath
+	 *            the path of the parent, {@link TreePath#EMPTY} for the top
+	 *            level elements
+	 * @param id
+	 *            the id of the child
+	 * @return the child, or <code>null</code> if it does not exist anymore
+	 */
+	public Object getElement(TreePath parentPath, String id);
+}
@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * Copyright (c) 2012 TH4 SYSTEMS GmbH and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Jens Reimann (TH4 SYSTEMS GmbH) - initial API and implementation
+ *******************************************************************************/
+package org.openscada.ui.breadcrumbs;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A substring index over the labels of the elements of a drop-down.
+ * <p>
+ * Every substring of up to {@link #GRAM_LENGTH} characters of a label maps to
+ * the elements whose label contains it. A query of up to that length is
+ * answered by a single lookup, a longer query only checks the elements of its
+ * rarest substring. A query which contains the previous query only checks the
+ * previous result if that is smaller. Elements can be added at any time, the
+ * index grows incrementally. Matching ignores case.
+ * </p>
+ */
+final class LabelIndex {
+
+	/**
+	 * The maximum length of the indexed substrings.
+	 */
+	static final int GRAM_LENGTH = 3;
+
+	/**
+	 * The ids of the elements containing one substring, in ascending order.
+	 */
+	private static final class Postings {
+		int[] ids = new int[4];
+		int size;
+
+		void add(final int id) {
+			if (this.size > 0 && this.ids[this.size - 1] == id) {
+				// the substring occurs more than once in the same label
+				return;
+			}
+			if (this.size == this.ids.length) {
+				final int[] ids = new int[this.size * 2];
+				System.arraycopy(this.ids, 0, ids, 0, this.size);
+				this.ids = ids;
+			}
+			this.ids[this.size++] = id;
+		}
+	}
+
+	private final List fElements = new ArrayList();
+	private final List fLabels = new ArrayList();
+	private final Map fPostings = new HashMap();
+
+	private String fLastQuery;
+	private int[] fLastResult;
+	private int fLastResultSize;
+
+	/**
+	 * Adds an element to the index.
+	 * 
+	 * @param element
+	 *            the element
+	 * @param label
+	 *            the label text of the element
+	 */
+	public void add(final Object element, final String label) {
+		final int id = this.fElements.size();
+		final String text = label != null ? label.toLowerCase(Locale.ENGLISH)
+				: ""; //$NON-NLS-1$
+		this.fElements.add(element);
+		this.fLabels.add(text);
+
+		for (int i = 0, length = text.length(); i < length; i++) {
+			for (int j = i + 1; j <= Math.min(length, i + GRAM_LENGTH); j++) {
+				final String gram = text.substring(i, j);
+				Postings postings = (Postings) this.fPostings.get(gram);
+				if (postings == null) {
+					postings = new Postings();
+					this.fPostings.put(gram, postings);
+				}
+				postings.add(id);
+			}
+		}
+
+		// the last result does not know the new element
+		this.fLastQuery = null;
+		this.fLastResult = null;
+	}
+
+	/**
+	 * Returns the number of indexed elements.
+	 * 
+	 * @return the number of elements
+	 */
+	public int size() {
+		return this.fElements.size();
+	}
+
+	/**
+	 * Returns the elements whose label contains the given text.
+	 * 
+	 * @param query
+	 *            the text to search for
+	 * @return the matching elements
+	 */
+	public Set search(final String query) {
+		return new HashSet(find(query));
+	}
+
+	/**
+	 * Returns the elements whose label contains the given text, in the order
+	 * they were added.
+	 * 
+	 * @param query
+	 *            the text to search for
+	 * @return the matching elements
+	 */
+	public List find(final String query) {
+		final String text = query.toLowerCase(Locale.ENGLISH);
+
+		final int[] result;
+		final int size;
+		if (text.length() == 0) {
+			result = null;
+			size = this.fElements.size();
+		} else if (text.length() <= GRAM_LENGTH) {
+			final Postings postings = (Postings) this.fPostings.get(text);
+			result = postings != null ? postings.ids : new int[0];
+			size = postings != null ? postings.size : 0;
+		} else {
+			// check the elements of the rarest substring of the query
+			int[] candidates = null;
+			int count = 0;
+			for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+				final Postings postings = (Postings) this.fPostings.get(text
+						.substring(i, i + GRAM_LENGTH));
+				if (postings == null) {
+					candidates = new int[0];
+					count = 0;
+					break;
+				}
+				if (candidates == null || postings.size < count) {
+					candidates = postings.ids;
+					count = postings.size;
+				}
+			}
+			if (this.fLastQuery != null && text.indexOf(this.fLastQuery) >= 0
+					&& this.fLastResultSize < count) {
+				candidates = this.fLastResult;
+				count = this.fLastResultSize;
+			}
+
+			result = new int[count];
+			int matches = 0;
+			for (int i = 0; i < count; i++) {
+				if (matches(candidates[i], text)) {
+					result[matches++] = candidates[i];
+				}
+			}
+			size = matches;
+		}
+
+		final List elements = new ArrayList(size);
+		for (int i = 0; i < size; i++) {
+			elements.add(this.fElements.get(result != null ? result[i] : i));
+		}
+
+		if (result != null) {
+			this.fLastQuery = text;
+			this.fLastResult = result;
+			this.fLastResultSize = size;
+		} else {
+			this.fLastQuery = null;
+			this.fLastResult = null;
+		}
+		return elements;
+	}
+
+	/**
+	 * Tells whether the label of the element with the given id contains the
+	 * given lower case text.
+	 */
+	private boolean matches(final int id, final String text) {
+		return ((String) this.fLabels.get(id)).indexOf(text) >= 0;
+	}
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2012 TH4 SYSTEMS GmbH and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jens Reimann (TH4 SYSTEMS GmbH) - initial API and implementation
+ *******************************************************************************/
+package org.openscada.ui.breadcrumbs;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jface.viewers.ILazyTreePathContentProvider;
+import org.eclipse.jface.viewers.ITreePathContentProvider;
+import org.eclipse.jface.viewers.TreePath;
+import org.eclipse.jface.viewers.TreeViewer;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.swt.SWT;
+
+/**
+ * A lazy content provider for {@link SWT#VIRTUAL} breadcrumb drop-downs which
+ * serves the content of a regular tree path content provider.
+ * <p>
+ * The children of an element are fetched from the wrapped provider once, when
+ * the viewer asks for their number, and kept until the element is refreshed
+ * or the input changes. The viewer only asks for the rows which become
+ * visible, so only these are created and labeled, however many siblings they
+ * have. Whether a row has children is asked without fetching them.
+ * </p>
+ *
+ * @see TreeViewerDropDown#setVirtual(boolean)
+ */
+public class LazyTreePathContentProvider implements
+		ILazyTreePathContentProvider {
+
+	private final ITreePathContentProvider fContentProvider;
+
+	/**
+	 * The fetched children, keyed by the path of their parent. The elements
+	 * of the input are kept under the empty path.
+	 */
+	private final Map fChildren = new HashMap();
+
+	private TreeViewer fViewer;
+
+	private Object fInput;
+
+	/**
+	 * Creates a lazy provider for the given content provider.
+	 *
+	 * @param contentProvider
+	 *            the content provider of the drop-down
+	 */
+	public LazyTreePathContentProvider(
+			final ITreePathContentProvider contentProvider) {
+		this.fContentProvider = contentProvider;
+	}
+
+	@Override
+	public void updateElement(final TreePath parentPath, final int index) {
+		final Object[] children = getChildren(parentPath);
+		if (index >= children.length) {
+			return;
+		}
+
+		final Object child = children[index];
+		this.fViewer.replace(parentPath, index, child);
+		final TreePath childPath = parentPath.createChildPath(child);
+		this.fViewer.setHasChildren(childPath,
+				this.fContentProvider.hasChildren(childPath));
+	}
+
+	@Override
+	public void updateChildCount(final TreePath treePath,
+			final int currentChildCount) {
+		// the viewer asks again when the element is refreshed
+		this.fChildren.remove(treePath);
+		final int count = getChildren(treePath).length;
+		if (count != currentChildCount) {
+			this.fViewer.setChildCount(treePath, count);
+		}
+	}
+
+	@Override
+	public void updateHasChildren(final TreePath path) {
+		this.fViewer.setHasChildren(path,
+				this.fContentProvider.hasChildren(path));
+	}
+
+	@Override
+	public TreePath[] getParents(final Object element) {
+		return this.fContentProvider.getParents(element);
+	}
+
+	@Override
+	public void inputChanged(final Viewer viewer, final Object oldInput,
+			final Object newInput) {
+		this.fChildren.clear();
+		this.fViewer = (TreeViewer) viewer;
+		this.fInput = newInput;
+		this.fContentProvider.inputChanged(viewer, oldInput, newInput);
+	}
+
+	@Override
+	public void dispose() {
+		this.fChildren.clear();
+		this.fContentProvider.dispose();
+	}
+
+	/**
+	 * Returns the children of the given path, fetching them if they are not
+	 * known yet.
+	 */
+	private Object[] getChildren(final TreePath parentPath) {
+		Object[] children = (Object[]) this.fChildren.get(parentPath);
+		if (children == null) {
+			children = parentPath.getSegmentCount() == 0 ? this.fContentProvider
+					.getElements(this.fInput) : this.fContentProvider
+					.getChildren(parentPath);
+			if (children == null) {
+				children = new Object[0];
+			}
+			this.fChildren.put(parentPath, children);
+		}
+		return children;
+	}
+}
@@ -12,16 +12,30 @@
  *******************************************************************************/
 package org.openscada.ui.breadcrumbs;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.jface.util.OpenStrategy;
+import org.eclipse.jface.viewers.ILabelProvider;
+import org.eclipse.jface.viewers.ILazyTreePathContentProvider;
 import org.eclipse.jface.viewers.IOpenListener;
 import org.eclipse.jface.viewers.ISelection;
+import org.eclipse.jface.viewers.ITreePathContentProvider;
+import org.eclipse.jface.viewers.ITreePathLabelProvider;
 import org.eclipse.jface.viewers.ITreeSelection;
 import org.eclipse.jface.viewers.ITreeViewerListener;
 import org.eclipse.jface.viewers.OpenEvent;
@@ -29,16 +43,23 @@ import org.eclipse.jface.viewers.TreeExpansionEvent;
 import org.eclipse.jface.viewers.TreePath;
 import org.eclipse.jface.viewers.TreeSelection;
 import org.eclipse.jface.viewers.TreeViewer;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.jface.viewers.ViewerLabel;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.KeyEvent;
 import org.eclipse.swt.events.KeyListener;
+import org.eclipse.swt.events.ModifyEvent;
+import org.eclipse.swt.events.ModifyListener;
 import org.eclipse.swt.events.MouseEvent;
 import org.eclipse.swt.events.MouseListener;
 import org.eclipse.swt.events.MouseMoveListener;
 import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Item;
+import org.eclipse.swt.widgets.Text;
 import org.eclipse.swt.widgets.Tree;
 import org.eclipse.swt.widgets.TreeItem;
 import org.eclipse.ui.progress.UIJob;
@@ -77,6 +98,428 @@ public abstract class TreeViewerDropDown {
 	 */
 	private TreeViewer fDropDownViewer;
 
+	/**
+	 * Whether the tree viewer is created with the {@link SWT#VIRTUAL} style.
+	 */
+	private boolean fVirtual;
+
+	/**
+	 * Whether the children of expanded elements are fetched in the
+	 * background.
+	 */
+	private boolean fDeferredLoading;
+
+	/**
+	 * The deferred content provider created for the current drop-down, if
+	 * any.
+	 */
+	private DeferredTreePathContentProvider fDeferredContentProvider;
+
+	/**
+	 * Whether a filter field is shown above the tree.
+	 */
+	private boolean fFilterEnabled;
+
+	/**
+	 * The content provider which hides the top-level elements not matching
+	 * the filter field, if the current drop-down has one.
+	 */
+	private FilterContentProvider fFilterContentProvider;
+
+	/**
+	 * The index of the labels of the current drop-down, keyed by the paths of
+	 * the rows. Rows are added as they are labeled.
+	 */
+	private LabelIndex fLabelIndex;
+
+	/**
+	 * The labels last shown for the indexed paths.
+	 */
+	private Map fLabels;
+
+	/**
+	 * The top-level elements which have been labeled.
+	 */
+	private Set fLabeledElements;
+
+	/**
+	 * The top-level elements labeled since the filter was last applied.
+	 */
+	private List fNewlyLabeled;
+
+	/**
+	 * The text of the filter field.
+	 */
+	private String fFilterText = ""; //$NON-NLS-1$
+
+	/**
+	 * The top-level elements matching the text of the filter field,
+	 * <code>null</code> if all elements are shown.
+	 */
+	private Set fFilterMatches;
+
+	/**
+	 * Whether the filter is applied again once new top-level rows have been
+	 * labeled.
+	 */
+	private boolean fFilterUpdateScheduled;
+
+	/**
+	 * Passes the top-level elements matching the filter field on to the
+	 * viewer, and remembers all of them in their order together with the ones
+	 * which are hidden.
+	 */
+	private final class FilterContentProvider implements
+			ITreePathContentProvider {
+
+		private final ITreePathContentProvider fContentProvider;
+		private Object[] fElements = new Object[0];
+
+		/**
+		 * The positions of the elements in {@link #fElements}.
+		 */
+		private final Map fOrdinals = new HashMap();
+
+		private final Set fHidden = new HashSet();
+
+		/**
+		 * A binary indexed tree over the positions of the hidden elements,
+		 * which counts the hidden elements in front of an element.
+		 */
+		private int[] fHiddenCounts = new int[1];
+
+		public FilterContentProvider(
+				final ITreePathContentProvider contentProvider) {
+			this.fContentProvider = contentProvider;
+		}
+
+		/**
+		 * Returns all top-level elements, shown or not.
+		 */
+		Object[] getAllElements() {
+			return this.fElements;
+		}
+
+		/**
+		 * Returns the top-level elements which are hidden.
+		 */
+		Set getHiddenElements() {
+			return this.fHidden;
+		}
+
+		/**
+		 * Tells whether a top-level element is hidden.
+		 */
+		boolean isHidden(final Object element) {
+			return this.fHidden.contains(element);
+		}
+
+		/**
+		 * Hides or shows a top-level element.
+		 * 
+		 * @return <code>false</code> if the element is unknown or already in
+		 *         that state
+		 */
+		boolean setHidden(final Object element, final boolean hidden) {
+			final Integer ordinal = (Integer) this.fOrdinals.get(element);
+			if (ordinal == null
+					|| (hidden ? !this.fHidden.add(element) : !this.fHidden
+							.remove(element))) {
+				return false;
+			}
+			updateHiddenCount(ordinal.intValue(), hidden ? 1 : -1);
+			return true;
+		}
+
+		/**
+		 * Returns the position of a top-level element among the shown ones.
+		 */
+		int getPosition(final Object element) {
+			final int ordinal = getOrdinal(element);
+			int position = ordinal;
+			for (int i = ordinal; i > 0; i -= i & -i) {
+				position -= this.fHiddenCounts[i];
+			}
+			return position;
+		}
+
+		/**
+		 * Returns the position of a top-level element among all of them.
+		 */
+		int getOrdinal(final Object element) {
+			return ((Integer) this.fOrdinals.get(element)).intValue();
+		}
+
+		private void updateHiddenCount(final int ordinal, final int delta) {
+			for (int i = ordinal + 1; i < this.fHiddenCounts.length; i += i
+					& -i) {
+				this.fHiddenCounts[i] += delta;
+			}
+		}
+
+		@Override
+		public Object[] getElements(final Object inputElement) {
+			final Object[] elements = this.fContentProvider
+					.getElements(inputElement);
+			this.fElements = elements != null ? elements : new Object[0];
+			this.fOrdinals.clear();
+			this.fHidden.clear();
+			this.fHiddenCounts = new int[this.fElements.length + 1];
+
+			final List shown = new ArrayList(this.fElements.length);
+			for (int i = 0; i < this.fElements.length; i++) {
+				this.fOrdinals.put(this.fElements[i], Integer.valueOf(i));
+				if (isShown(this.fElements[i])) {
+					shown.add(this.fElements[i]);
+				} else {
+					this.fHidden.add(this.fElements[i]);
+					updateHiddenCount(i, 1);
+				}
+			}
+			return shown.toArray();
+		}
+
+		@Override
+		public Object[] getChildren(final TreePath parentPath) {
+			return this.fContentProvider.getChildren(parentPath);
+		}
+
+		@Override
+		public boolean hasChildren(final TreePath path) {
+			return this.fContentProvider.hasChildren(path);
+		}
+
+		@Override
+		public TreePath[] getParents(final Object element) {
+			return this.fContentProvider.getParents(element);
+		}
+
+		@Override
+		public void inputChanged(final Viewer viewer, final Object oldInput,
+				final Object newInput) {
+			this.fElements = new Object[0];
+			this.fOrdinals.clear();
+			this.fHidden.clear();
+			this.fHiddenCounts = new int[1];
+			this.fContentProvider.inputChanged(viewer, oldInput, newInput);
+		}
+
+		@Override
+		public void dispose() {
+			this.fContentProvider.dispose();
+		}
+	}
+
+	/**
+	 * Adds the label of every row to the index of the filter when the viewer
+	 * labels it, which includes rows added later by deferred loading.
+	 */
+	private final class FilterLabelProvider extends
+			DeferredTreePathContentProvider.PendingLabelProvider implements
+			ITreePathLabelProvider {
+
+		public FilterLabelProvider(final ILabelProvider labelProvider) {
+			super(labelProvider);
+		}
+
+		@Override
+		public void updateLabel(final ViewerLabel label,
+				final TreePath elementPath) {
+			final Object element = elementPath.getLastSegment();
+			final String text = getText(element);
+			label.setText(text);
+			label.setImage(getImage(element));
+
+			if (!(element instanceof DeferredTreePathContentProvider.PendingElement)) {
+				indexLabel(elementPath, text != null ? text : ""); //$NON-NLS-1$
+			}
+		}
+	}
+
+	/**
+	 * Sets whether the children of an expanded element are fetched in a
+	 * background job instead of the UI thread.
+	 * <p>
+	 * Implementations of {@link #createTreeViewer(Composite, int, TreePath)}
+	 * pass their content and label provider through
+	 * {@link #wrapContentProvider(ITreePathContentProvider)} and
+	 * {@link #wrapLabelProvider(ILabelProvider)}, which install the deferred
+	 * loading when it is enabled. Deferred loading is not available for virtual
+	 * drop-downs.
+	 * </p>
+	 * 
+	 * @param deferred
+	 *            <code>true</code> to fetch children in the background
+	 * @see DeferredTreePathContentProvider
+	 */
+	public void setDeferredLoading(final boolean deferred) {
+		this.fDeferredLoading = deferred;
+	}
+
+	/**
+	 * Tells whether the children of an expanded element are fetched in a
+	 * background job.
+	 * 
+	 * @return <code>true</code> if children are fetched in the background
+	 */
+	public boolean isDeferredLoading() {
+		return this.fDeferredLoading;
+	}
+
+	/**
+	 * Returns the content provider to set on the tree viewer. If deferred
+	 * loading is enabled and the drop-down is not virtual, the given provider
+	 * is wrapped into a {@link DeferredTreePathContentProvider}. If the
+	 * drop-down has a filter field, the provider is wrapped so that it only
+	 * passes matching top-level elements on.
+	 * 
+	 * @param contentProvider
+	 *            the content provider of the drop-down
+	 * @return the content provider to use for the tree viewer
+	 */
+	protected ITreePathContentProvider wrapContentProvider(
+			final ITreePathContentProvider contentProvider) {
+		ITreePathContentProvider provider = contentProvider;
+		if (hasDeferredLoading()) {
+			this.fDeferredContentProvider = new DeferredTreePathContentProvider(
+					contentProvider, this.fDropDownSite);
+			if (this.fDropDownSite instanceof BreadcrumbItemDropDown) {
+				this.fDeferredContentProvider
+						.setPrefetcher(((BreadcrumbItemDropDown) this.fDropDownSite)
+								.getPrefetcher());
+			}
+			provider = this.fDeferredContentProvider;
+		}
+
+		if (hasFilterField()) {
+			this.fFilterContentProvider = new FilterContentProvider(provider);
+			provider = this.fFilterContentProvider;
+		}
+		return provider;
+	}
+
+	/**
+	 * Returns the content provider to set on a virtual tree viewer. The given
+	 * provider is wrapped into a {@link LazyTreePathContentProvider}, so that
+	 * only the visible rows are created, however many children an element
+	 * has.
+	 * 
+	 * @param contentProvider
+	 *            the content provider of the drop-down
+	 * @return the lazy content provider to use for the tree viewer
+	 * @see #setVirtual(boolean)
+	 */
+	protected ILazyTreePathContentProvider wrapLazyContentProvider(
+			final ITreePathContentProvider contentProvider) {
+		return new LazyTreePathContentProvider(contentProvider);
+	}
+
+	/**
+	 * Returns the label provider to set on the tree viewer. If deferred
+	 * loading is enabled the given provider is wrapped, so that the
+	 * placeholder of elements whose children are being fetched is labeled. If
+	 * the drop-down has a filter field, the wrapper also indexes the labels of
+	 * the rows.
+	 * 
+	 * @param labelProvider
+	 *            the label provider of the drop-down
+	 * @return the label provider to use for the tree viewer
+	 */
+	protected ILabelProvider wrapLabelProvider(
+			final ILabelProvider labelProvider) {
+		if (hasFilterField()) {
+			return new FilterLabelProvider(labelProvider);
+		}
+		if (!hasDeferredLoading()) {
+			return labelProvider;
+		}
+		return new DeferredTreePathContentProvider.PendingLabelProvider(
+				labelProvider);
+	}
+
+	/**
+	 * Tells whether the children of drop-downs are fetched in the background.
+	 */
+	private boolean hasDeferredLoading() {
+		return this.fDeferredLoading && !this.fVirtual;
+	}
+
+	/**
+	 * Tells whether drop-downs are created with a filter field.
+	 */
+	private boolean hasFilterField() {
+		return this.fFilterEnabled && !this.fVirtual;
+	}
+
+	/**
+	 * Tells whether children are still being fetched in the background. The
+	 * size of the drop-down is updated once they have been added.
+	 */
+	private boolean isLoading() {
+		return this.fDeferredContentProvider != null
+				&& this.fDeferredContentProvider.isLoading();
+	}
+
+	/**
+	 * Sets whether the tree viewer of the drop-down is virtual. A virtual
+	 * drop-down only creates the rows which are visible, which keeps opening
+	 * elements with a huge number of children cheap.
+	 * <p>
+	 * When enabled, {@link #createTreeViewer(Composite, int, TreePath)} is
+	 * called with the {@link SWT#VIRTUAL} style. The viewer it creates must
+	 * enable hash lookup and use an {@link ILazyTreePathContentProvider}
+	 * before its input is set. A regular content provider can be passed
+	 * through {@link #wrapLazyContentProvider(ITreePathContentProvider)} for
+	 * this.
+	 * </p>
+	 * 
+	 * @param virtual
+	 *            <code>true</code> to create a virtual tree viewer
+	 */
+	public void setVirtual(final boolean virtual) {
+		this.fVirtual = virtual;
+	}
+
+	/**
+	 * Tells whether the tree viewer of the drop-down is virtual.
+	 * 
+	 * @return <code>true</code> if the tree viewer is created with the
+	 *         {@link SWT#VIRTUAL} style
+	 */
+	public boolean isVirtual() {
+		return this.fVirtual;
+	}
+
+	/**
+	 * Sets whether a filter field is shown above the tree. Typing into it
+	 * narrows the top-level elements of the drop-down to those whose label,
+	 * or the label of one of their loaded descendants, contains the text.
+	 * <p>
+	 * Every row is indexed when the viewer labels it, including the rows added
+	 * later by deferred loading, so that every keystroke only looks up the
+	 * index and shows or hides the top-level rows whose match changed. The
+	 * filter needs the content and label provider of the viewer to be passed
+	 * through {@link #wrapContentProvider(ITreePathContentProvider)} and
+	 * {@link #wrapLabelProvider(ILabelProvider)}, otherwise the field is not
+	 * shown. The filter field is not available for virtual drop-downs.
+	 * </p>
+	 * 
+	 * @param enabled
+	 *            <code>true</code> to show the filter field
+	 */
+	public void setFilterEnabled(final boolean enabled) {
+		this.fFilterEnabled = enabled;
+	}
+
+	/**
+	 * Tells whether a filter field is shown above the tree.
+	 * 
+	 * @return <code>true</code> if the filter field is shown
+	 */
+	public boolean isFilterEnabled() {
+		return this.fFilterEnabled;
+	}
+
 	/**
 	 * Creates the viewer and installs the listeners.
 	 * 
@@ -92,8 +535,39 @@ public abstract class TreeViewerDropDown {
 			final IBreadcrumbDropDownSite site, final TreePath path) {
 
 		this.fDropDownSite = site;
-		this.fDropDownViewer = createTreeViewer(composite, SWT.SINGLE
-				| SWT.H_SCROLL | SWT.V_SCROLL, path);
+		this.fDeferredContentProvider = null;
+		this.fFilterContentProvider = null;
+		this.fLabelIndex = new LabelIndex();
+		this.fLabels = new HashMap();
+		this.fLabeledElements = new HashSet();
+		this.fNewlyLabeled = new ArrayList();
+		this.fFilterText = ""; //$NON-NLS-1$
+		this.fFilterMatches = null;
+		this.fFilterUpdateScheduled = false;
+
+		int style = SWT.SINGLE | SWT.H_SCROLL | SWT.V_SCROLL;
+		if (this.fVirtual) {
+			style |= SWT.VIRTUAL;
+		}
+
+		final boolean filter = hasFilterField();
+		Composite parent = composite;
+		Text filterText = null;
+		if (filter) {
+			parent = new Composite(composite, SWT.NONE);
+			final GridLayout layout = new GridLayout(1, false);
+			layout.marginHeight = 0;
+			layout.marginWidth = 0;
+			layout.verticalSpacing = 0;
+			parent.setLayout(layout);
+
+			filterText = new Text(parent, SWT.SINGLE | SWT.SEARCH
+					| SWT.ICON_CANCEL);
+			filterText.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true,
+					false));
+		}
+
+		this.fDropDownViewer = createTreeViewer(parent, style, path);
 
 		this.fDropDownViewer.addOpenListener(new IOpenListener() {
 			@Override
@@ -132,6 +606,7 @@ public abstract class TreeViewerDropDown {
 
 				final List pathElements = new LinkedList();
 				while (item != null) {
+					// rows of a virtual tree may not be populated yet
 					final Object data = item.getData();
 					if (data == null) {
 						return;
@@ -272,8 +747,12 @@ public abstract class TreeViewerDropDown {
 					public IStatus runInUIThread(final IProgressMonitor monitor) {
 						if (!tree.isDisposed()) {
 							try {
-								TreeViewerDropDown.this.fDropDownSite
-										.updateSize();
+								// deferred children update the size once
+								// they have been added
+								if (!isLoading()) {
+									TreeViewerDropDown.this.fDropDownSite
+											.updateSize();
+								}
 							} finally {
 								tree.setRedraw(true);
 							}
@@ -285,9 +764,207 @@ public abstract class TreeViewerDropDown {
 
 		});
 
+		if (filter) {
+			tree.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
+			if (this.fDropDownViewer.getContentProvider() == this.fFilterContentProvider
+					&& this.fDropDownViewer.getLabelProvider() instanceof FilterLabelProvider) {
+				installFilter(filterText);
+			} else {
+				// the providers have not been wrapped, the rows can't be
+				// indexed
+				filterText.dispose();
+			}
+			return parent;
+		}
+
 		return tree;
 	}
 
+	/**
+	 * Narrows the top-level elements of the tree to those matching the text of
+	 * the filter field.
+	 */
+	private void installFilter(final Text filterText) {
+		final Tree tree = this.fDropDownViewer.getTree();
+
+		filterText.addModifyListener(new ModifyListener() {
+			@Override
+			public void modifyText(final ModifyEvent e) {
+				applyFilter(filterText.getText());
+			}
+		});
+
+		filterText.addKeyListener(new KeyListener() {
+			@Override
+			public void keyPressed(final KeyEvent e) {
+				if (e.keyCode == SWT.ARROW_DOWN && tree.getItemCount() > 0) {
+					e.doit = false;
+					tree.setSelection(tree.getItem(0));
+					tree.setFocus();
+				} else if (e.character == SWT.CR) {
+					if (tree.getItemCount() > 0) {
+						openElement(new TreeSelection(new TreePath(
+								new Object[] { tree.getItem(0).getData() })));
+					}
+				}
+			}
+
+			@Override
+			public void keyReleased(final KeyEvent e) {
+			}
+		});
+	}
+
+	/**
+	 * Adds the label of a row to the index, unless it is already indexed with
+	 * that label. A new top-level row which arrives while a filter is applied
+	 * is shown until it is labeled, then the filter is applied again.
+	 */
+	private void indexLabel(final TreePath path, final String label) {
+		final Object previous = this.fLabels.put(path, label);
+		if (label.equals(previous)) {
+			return;
+		}
+		this.fLabelIndex.add(path, label);
+
+		if (previous != null || path.getSegmentCount() != 1) {
+			return;
+		}
+		this.fLabeledElements.add(path.getFirstSegment());
+		if (this.fFilterMatches == null) {
+			return;
+		}
+
+		this.fNewlyLabeled.add(path.getFirstSegment());
+		if (!this.fFilterUpdateScheduled) {
+			this.fFilterUpdateScheduled = true;
+			final Tree tree = this.fDropDownViewer.getTree();
+			tree.getDisplay().asyncExec(new Runnable() {
+				@Override
+				public void run() {
+					TreeViewerDropDown.this.fFilterUpdateScheduled = false;
+					if (!tree.isDisposed()) {
+						applyFilter(TreeViewerDropDown.this.fFilterText);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Tells whether a top-level element passes the filter. Elements which
+	 * have not been labeled yet are shown.
+	 */
+	private boolean isShown(final Object element) {
+		return this.fFilterMatches == null
+				|| this.fFilterMatches.contains(element)
+				|| !this.fLabeledElements.contains(element);
+	}
+
+	/**
+	 * Returns the top-level elements whose label, or the label of a loaded
+	 * descendant, contains the given text.
+	 */
+	private Set findMatches(final String text) {
+		final String query = text.toLowerCase(Locale.ENGLISH);
+		final Set matches = new HashSet();
+		final Iterator iterator = this.fLabelIndex.find(text).iterator();
+		while (iterator.hasNext()) {
+			final TreePath path = (TreePath) iterator.next();
+			// the index keeps labels the row has been shown with before
+			final String label = (String) this.fLabels.get(path);
+			if (label.toLowerCase(Locale.ENGLISH).indexOf(query) >= 0) {
+				matches.add(path.getFirstSegment());
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * Shows the top-level elements matching the given text.
+	 * <p>
+	 * Only the elements whose match may have changed are looked at: those in
+	 * the difference of the previous and the new matches, and those labeled
+	 * since the last call. Turning the filter on looks at all elements,
+	 * turning it off at the hidden ones. Only the rows whose match changed
+	 * are removed from or inserted into the tree.
+	 * </p>
+	 */
+	private void applyFilter(final String text) {
+		final Tree tree = this.fDropDownViewer.getTree();
+		if (tree.isDisposed()) {
+			return;
+		}
+
+		final FilterContentProvider provider = this.fFilterContentProvider;
+		final Set previous = this.fFilterMatches;
+		final Set matches = text.length() == 0 ? null : findMatches(text);
+		this.fFilterText = text;
+		this.fFilterMatches = matches;
+
+		final List candidates = new ArrayList(this.fNewlyLabeled);
+		this.fNewlyLabeled.clear();
+		if (matches == null) {
+			candidates.addAll(provider.getHiddenElements());
+		} else if (previous == null) {
+			candidates.addAll(Arrays.asList(provider.getAllElements()));
+		} else {
+			addDifference(candidates, previous, matches);
+			addDifference(candidates, matches, previous);
+		}
+
+		final List hidden = new ArrayList();
+		final List shown = new ArrayList();
+		for (int i = 0, size = candidates.size(); i < size; i++) {
+			final Object element = candidates.get(i);
+			final boolean show = isShown(element);
+			if (provider.isHidden(element) == show
+					&& provider.setHidden(element, !show)) {
+				(show ? shown : hidden).add(element);
+			}
+		}
+		if (hidden.isEmpty() && shown.isEmpty()) {
+			return;
+		}
+
+		// inserted in their order, each one after the ones in front of it
+		Collections.sort(shown, new Comparator() {
+			@Override
+			public int compare(final Object a, final Object b) {
+				return provider.getOrdinal(a) - provider.getOrdinal(b);
+			}
+		});
+
+		final Object input = this.fDropDownViewer.getInput();
+		tree.setRedraw(false);
+		try {
+			if (!hidden.isEmpty()) {
+				this.fDropDownViewer.remove(input, hidden.toArray());
+			}
+			for (int i = 0, size = shown.size(); i < size; i++) {
+				final Object element = shown.get(i);
+				this.fDropDownViewer.insert(input, element,
+						provider.getPosition(element));
+			}
+		} finally {
+			tree.setRedraw(true);
+		}
+	}
+
+	/**
+	 * Adds the elements of one set which are not in the other set.
+	 */
+	private static void addDifference(final List result, final Set set,
+			final Set other) {
+		final Iterator iterator = set.iterator();
+		while (iterator.hasNext()) {
+			final Object element = iterator.next();
+			if (!other.contains(element)) {
+				result.add(element);
+			}
+		}
+	}
+
 	/**
 	 * Creates and returns the tree viewer.
 	 * 
@@ -317,6 +994,11 @@ public abstract class TreeViewerDropDown {
 			return;
 		}
 
+		// the placeholder of children which are still being fetched
+		if (((ITreeSelection) selection).getPaths()[0].getLastSegment() instanceof DeferredTreePathContentProvider.PendingElement) {
+			return;
+		}
+
 		// This might or might not open an editor
 		this.fDropDownSite.notifySelection(selection);
 
@@ -346,17 +1028,42 @@ public abstract class TreeViewerDropDown {
 
 	private void toggleExpansionState(final TreePath path) {
 		final Tree tree = this.fDropDownViewer.getTree();
+		// the path is the one of the selected item
+		final TreeItem[] selection = tree.getSelection();
+		final TreeItem item = selection.length == 1 ? selection[0] : null;
 		if (this.fDropDownViewer.getExpandedState(path)) {
 			this.fDropDownViewer.collapseToLevel(path, 1);
+			reportExpansion(item, false);
 		} else {
 			tree.setRedraw(false);
 			try {
 				this.fDropDownViewer.expandToLevel(path, 1);
-				this.fDropDownSite.updateSize();
+				reportExpansion(item, true);
+				if (!isLoading()) {
+					this.fDropDownSite.updateSize();
+				}
 			} finally {
 				tree.setRedraw(true);
 			}
 		}
 	}
 
+	/**
+	 * Reports an expansion in code to the drop-down, which tracks its size by
+	 * the expansions the tree reports for the user.
+	 */
+	private void reportExpansion(final TreeItem item, final boolean expanded) {
+		if (item == null
+				|| !(this.fDropDownSite instanceof BreadcrumbItemDropDown)) {
+			return;
+		}
+
+		final BreadcrumbItemDropDown dropDown = (BreadcrumbItemDropDown) this.fDropDownSite;
+		if (expanded) {
+			dropDown.itemExpanded(item);
+		} else {
+			dropDown.itemCollapsed(item);
+		}
+	}
+
 }
@@ -10,15 +10,27 @@
  *******************************************************************************/
 package org.openscada.ui.breadcrumbs.internal;
 
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
+import org.openscada.ui.breadcrumbs.BreadcrumbPathIndex;
 import org.osgi.framework.BundleContext;
 
 public class BreadcrumbsPlugin extends AbstractUIPlugin {
 
 	public static boolean DEBUG = false;
 
+	private static final String PATH_INDEX_EXTENSION = ".idx"; //$NON-NLS-1$
+
 	private static BreadcrumbsPlugin instance;
 
+	private final Map fPathIndexes = new HashMap();
+
 	public BreadcrumbsPlugin() {
 	}
 
@@ -30,6 +42,13 @@ public class BreadcrumbsPlugin extends AbstractUIPlugin {
 
 	@Override
 	public void stop(final BundleContext context) throws Exception {
+		synchronized (this.fPathIndexes) {
+			final Iterator iterator = this.fPathIndexes.values().iterator();
+			while (iterator.hasNext()) {
+				((BreadcrumbPathIndex) iterator.next()).close();
+			}
+			this.fPathIndexes.clear();
+		}
 		instance = null;
 		super.stop(context);
 	}
@@ -40,4 +59,52 @@ public class BreadcrumbsPlugin extends AbstractUIPlugin {
 	public static BreadcrumbsPlugin getDefault() {
 		return instance;
 	}
+
+	/**
+	 * Returns the persistent path index with the given name, stored in the
+	 * state location of the plug-in. The index is shared by all callers and
+	 * closed when the plug-in stops. Asking for an index with a different
+	 * validity token discards its content.
+	 * 
+	 * @param name
+	 *            the name of the index, used as file name
+	 * @param validityToken
+	 *            the token identifying the content the index was built from
+	 * @return the index, its file is only read on first use
+	 */
+	public BreadcrumbPathIndex getPathIndex(final String name,
+			final String validityToken) {
+		synchronized (this.fPathIndexes) {
+			BreadcrumbPathIndex index = (BreadcrumbPathIndex) this.fPathIndexes
+					.get(name);
+			if (index == null) {
+				final File file = getStateLocation().append(
+						name + PATH_INDEX_EXTENSION).toFile();
+				index = new BreadcrumbPathIndex(file, validityToken);
+				this.fPathIndexes.put(name, index);
+			} else {
+				// the instance is shared, it is cleared in place if the token
+				// changed
+				index.setValidityToken(validityToken);
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * Logs an exception to the log of the plug-in.
+	 * 
+	 * @param e
+	 *            the exception
+	 */
+	public static void log(final Throwable e) {
+		final BreadcrumbsPlugin plugin = getDefault();
+		if (plugin == null) {
+			e.printStackTrace();
+			return;
+		}
+		plugin.getLog().log(
+				new Status(IStatus.ERROR, plugin.getBundle().getSymbolicName(),
+						e.getMessage(), e));
+	}
 }
@@ -0,0 +1,370 @@
+/*******************************************************************************
+ * Copyright (c) 2012 TH4 SYSTEMS GmbH and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jens Reimann (TH4 SYSTEMS GmbH) - initial API and implementation
+ *******************************************************************************/
+package org.openscada.ui.breadcrumbs.internal;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The file of a persistent path index.
+ * <p>
+ * The file starts with a header made of a magic number, the format version
+ * and the validity token of the index. It is followed by a log of records,
+ * each of which either puts the label of a path or removes a path. Paths are
+ * arrays of segment ids, strings are stored as their length followed by their
+ * UTF-8 bytes.
+ * </p>
+ * <p>
+ * The file is read in one pass and replayed into a map, it is closed before
+ * it is rewritten. Changes are appended as new records, the file is rewritten
+ * when most of its records are obsolete or its header does not match. A record
+ * cut off at the end of the file, e.g. by a crash, is dropped. If the file
+ * cannot be rewritten, no records are appended to it until the next rewrite
+ * succeeds, the index then only lives in memory.
+ * </p>
+ */
+public final class PathIndexFile {
+
+	/**
+	 * The magic number at the start of the file, "BCPI".
+	 */
+	static final int MAGIC = 0x42435049;
+
+	/**
+	 * The version of the file format.
+	 */
+	static final int VERSION = 1;
+
+	private static final byte RECORD_PUT = 1;
+	private static final byte RECORD_REMOVE = 2;
+
+	private static final String ENCODING = "UTF-8"; //$NON-NLS-1$
+
+	private final File fFile;
+	private String fValidityToken;
+
+	private DataOutputStream fOutput;
+	private int fRecordCount;
+	private boolean fDamaged;
+
+	/**
+	 * Creates the file of an index. Nothing is read until {@link #load()} is
+	 * called.
+	 * 
+	 * @param file
+	 *            the file
+	 * @param validityToken
+	 *            the token which must match the one of the file for its
+	 *            content to be used
+	 */
+	public PathIndexFile(final File file, final String validityToken) {
+		this.fFile = file;
+		this.fValidityToken = validityToken != null ? validityToken : ""; //$NON-NLS-1$
+	}
+
+	/**
+	 * Sets the token written into the header by the next rewrite.
+	 * 
+	 * @param validityToken
+	 *            the token which must match the one of the file for its
+	 *            content to be used
+	 */
+	public void setValidityToken(final String validityToken) {
+		this.fValidityToken = validityToken != null ? validityToken : ""; //$NON-NLS-1$
+	}
+
+	/**
+	 * Reads the index. If the file does not exist, has a different version or
+	 * validity token, or cannot be read, the index is empty and the file is
+	 * replaced by an empty one.
+	 * 
+	 * @return the labels of the paths, keyed by the list of segment ids of the
+	 *         paths, in the order the paths were first put
+	 */
+	public Map load() {
+		final Map entries = new LinkedHashMap();
+		this.fRecordCount = 0;
+
+		boolean valid = false;
+		boolean truncated = false;
+		if (this.fFile.isFile()) {
+			try {
+				final ByteBuffer buffer = read();
+				valid = buffer != null && readHeader(buffer);
+				if (valid) {
+					truncated = !readRecords(buffer, entries);
+				}
+			} catch (final IOException e) {
+				BreadcrumbsPlugin.log(e);
+				valid = false;
+			}
+		}
+
+		if (!valid) {
+			entries.clear();
+		}
+		this.fDamaged = false;
+		if (!valid || truncated || this.fRecordCount > 2 * entries.size() + 64) {
+			rewrite(entries);
+		}
+		return entries;
+	}
+
+	/**
+	 * Appends a record which puts the label of a path.
+	 * 
+	 * @param path
+	 *            the segment ids of the path
+	 * @param label
+	 *            the label of the path
+	 */
+	public void put(final String[] path, final String label) {
+		if (this.fDamaged) {
+			return;
+		}
+		try {
+			final DataOutputStream output = getOutput();
+			output.writeByte(RECORD_PUT);
+			writePath(output, path);
+			writeString(output, label);
+			this.fRecordCount++;
+		} catch (final IOException e) {
+			BreadcrumbsPlugin.log(e);
+		}
+	}
+
+	/**
+	 * Appends a record which removes a path.
+	 * 
+	 * @param path
+	 *            the segment ids of the path
+	 */
+	public void remove(final String[] path) {
+		if (this.fDamaged) {
+			return;
+		}
+		try {
+			final DataOutputStream output = getOutput();
+			output.writeByte(RECORD_REMOVE);
+			writePath(output, path);
+			this.fRecordCount++;
+		} catch (final IOException e) {
+			BreadcrumbsPlugin.log(e);
+		}
+	}
+
+	/**
+	 * Replaces the file by one containing only the given entries. If that
+	 * fails, no records are appended until a rewrite succeeds.
+	 * 
+	 * @param entries
+	 *            the labels of the paths, keyed by the list of segment ids
+	 */
+	public void rewrite(final Map entries) {
+		close();
+
+		final File temp = new File(this.fFile.getPath() + ".tmp"); //$NON-NLS-1$
+		try {
+			final DataOutputStream output = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(temp)));
+			try {
+				writeHeader(output);
+				final Iterator iterator = entries.entrySet().iterator();
+				while (iterator.hasNext()) {
+					final Map.Entry entry = (Map.Entry) iterator.next();
+					final List path = (List) entry.getKey();
+					output.writeByte(RECORD_PUT);
+					writePath(output,
+							(String[]) path.toArray(new String[path.size()]));
+					writeString(output, (String) entry.getValue());
+				}
+			} finally {
+				output.close();
+			}
+
+			if (this.fFile.exists() && !this.fFile.delete()
+					|| !temp.renameTo(this.fFile)) {
+				throw new IOException("Failed to replace " + this.fFile); //$NON-NLS-1$
+			}
+			this.fRecordCount = entries.size();
+			this.fDamaged = false;
+		} catch (final IOException e) {
+			BreadcrumbsPlugin.log(e);
+			temp.delete();
+			// the file still holds the old header or records, appending to
+			// it would make the next load replay them
+			this.fDamaged = true;
+		}
+	}
+
+	/**
+	 * Writes the appended records to the file.
+	 */
+	public void flush() {
+		if (this.fOutput == null) {
+			return;
+		}
+		try {
+			this.fOutput.flush();
+		} catch (final IOException e) {
+			BreadcrumbsPlugin.log(e);
+		}
+	}
+
+	/**
+	 * Writes the appended records to the file and closes it.
+	 */
+	public void close() {
+		if (this.fOutput == null) {
+			return;
+		}
+		try {
+			this.fOutput.close();
+		} catch (final IOException e) {
+			BreadcrumbsPlugin.log(e);
+		}
+		this.fOutput = null;
+	}
+
+	private DataOutputStream getOutput() throws IOException {
+		if (this.fOutput == null) {
+			final boolean exists = this.fFile.isFile()
+					&& this.fFile.length() > 0;
+			this.fOutput = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(this.fFile, true)));
+			if (!exists) {
+				writeHeader(this.fOutput);
+			}
+		}
+		return this.fOutput;
+	}
+
+	/**
+	 * Reads the whole file, the file is closed when this returns.
+	 * 
+	 * @return the content, or <code>null</code> if the file is too large
+	 */
+	private ByteBuffer read() throws IOException {
+		final FileInputStream stream = new FileInputStream(this.fFile);
+		try {
+			final FileChannel channel = stream.getChannel();
+			final long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				return null;
+			}
+			final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer) < 0) {
+					break;
+				}
+			}
+			buffer.flip();
+			return buffer;
+		} finally {
+			stream.close();
+		}
+	}
+
+	private void writeHeader(final DataOutputStream output) throws IOException {
+		output.writeInt(MAGIC);
+		output.writeInt(VERSION);
+		writeString(output, this.fValidityToken);
+	}
+
+	private boolean readHeader(final ByteBuffer buffer) {
+		try {
+			return buffer.getInt() == MAGIC && buffer.getInt() == VERSION
+					&& this.fValidityToken.equals(readString(buffer));
+		} catch (final BufferUnderflowException e) {
+			return false;
+		} catch (final UnsupportedEncodingException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Replays the records of the file.
+	 * 
+	 * @return <code>false</code> if the last record was cut off
+	 */
+	private boolean readRecords(final ByteBuffer buffer,
+			final Map entries) throws UnsupportedEncodingException {
+		while (buffer.hasRemaining()) {
+			try {
+				final byte type = buffer.get();
+				final List path = Arrays.asList(readPath(buffer));
+				if (type == RECORD_PUT) {
+					entries.put(path, readString(buffer));
+				} else if (type == RECORD_REMOVE) {
+					entries.remove(path);
+				} else {
+					return false;
+				}
+				this.fRecordCount++;
+			} catch (final BufferUnderflowException e) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void writePath(final DataOutputStream output,
+			final String[] path) throws IOException {
+		output.writeInt(path.length);
+		for (int i = 0; i < path.length; i++) {
+			writeString(output, path[i]);
+		}
+	}
+
+	private static String[] readPath(final ByteBuffer buffer)
+			throws UnsupportedEncodingException {
+		final int length = buffer.getInt();
+		if (length < 0 || length > buffer.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		final String[] path = new String[length];
+		for (int i = 0; i < length; i++) {
+			path[i] = readString(buffer);
+		}
+		return path;
+	}
+
+	private static void writeString(final DataOutputStream output,
+			final String value) throws IOException {
+		final byte[] bytes = (value != null ? value : "").getBytes(ENCODING); //$NON-NLS-1$
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	private static String readString(final ByteBuffer buffer)
+			throws UnsupportedEncodingException {
+		final int length = buffer.getInt();
+		if (length < 0 || length > buffer.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		final byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, ENCODING);
+	}
+}